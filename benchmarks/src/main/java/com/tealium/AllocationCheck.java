@@ -0,0 +1,58 @@
+package com.tealium;
+
+import java.util.Collection;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Allocation regression check: runs {@link DispatchAllocationBenchmark} with
+ * pooled buffers under the GC profiler and exits with status 1 if track
+ * allocates more than the threshold per event.
+ *
+ *     java -cp target/benchmarks.jar com.tealium.AllocationCheck [max bytes per event]
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public final class AllocationCheck {
+    /**
+     * Bytes per pooled track call. Steady state measured about 1150 on JDK 8, most of it the
+     * event's own strings, its layer over the persistent data snapshot and jackson-jr's per call
+     * generator; the rest is headroom.
+     */
+    static final double DEFAULT_MAX_BYTES_PER_EVENT = 1280;
+
+    private AllocationCheck() {}
+
+    public static void main(String[] args) throws RunnerException {
+        double maxBytesPerEvent = args.length > 0 ? Double.parseDouble(args[0]) : DEFAULT_MAX_BYTES_PER_EVENT;
+
+        Options options = new OptionsBuilder()
+                .include(DispatchAllocationBenchmark.class.getSimpleName())
+                .param("pooled", "true")
+                .addProfiler(GCProfiler.class)
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        for (RunResult result : results) {
+            Result<?> allocation = result.getSecondaryResults().get("gc.alloc.rate.norm");
+            if (allocation == null) {
+                System.err.println("The GC profiler did not report gc.alloc.rate.norm.");
+                System.exit(1);
+            }
+
+            double bytesPerEvent = allocation.getScore();
+            System.out.printf("track allocates %.0f bytes per event with pooled buffers, limit %.0f%n",
+                    bytesPerEvent, maxBytesPerEvent);
+            if (bytesPerEvent > maxBytesPerEvent) {
+                System.err.println("Allocation regression: over the limit.");
+                System.exit(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.tealium;
+
+/**
+ * Shared fixtures for the benchmarks.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class BenchmarkSupport {
+    private BenchmarkSupport() {}
+
+    static LibraryContext libraryContext() {
+        return new LibraryContext("tealiummobile", "demo", "dev", null, new Logger(LogLevel.NONE));
+    }
+
+    /**
+     * @return persistent data that never touches the disk, so only the measured code does I/O
+     */
+    static PersistentUdo inMemoryPersistentUdo() {
+        return new PersistentUdo(null) {
+            private Udo udo;
+
+            @Override
+            public Udo readOrCreateUdo(Udo defaultData) {
+                if (this.udo == null) this.udo = defaultData;
+                return this.udo;
+            }
+
+            @Override
+            public void writeData(Udo data) {
+                this.udo = data;
+            }
+
+            @Override
+            public Boolean exists() {
+                return this.udo != null;
+            }
+        };
+    }
+}
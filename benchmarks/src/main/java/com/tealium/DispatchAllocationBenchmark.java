@@ -0,0 +1,87 @@
+package com.tealium;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Allocation of {@link Tealium#track} through serialization and dispatch,
+ * with and without pooled payload buffers. The transport answers every send
+ * on the spot without touching the network, so gc.alloc.rate.norm is what the
+ * library itself allocates per event. {@link AllocationCheck} holds the pooled
+ * case to a threshold.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchAllocationBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean pooled;
+
+    private Tealium tealium;
+    private Udo eventData;
+
+    @Setup
+    public void setUp() {
+        LibraryContext context = BenchmarkSupport.libraryContext();
+        CollectDispatcher dispatcher = new CollectDispatcher(CollectDispatcher.DEFAULT_URL, context, 5000,
+                new AcceptingTransport());
+        if (this.pooled) {
+            dispatcher.setBufferPool(new PayloadBufferPool(PayloadBufferPool.DEFAULT_POOLED_BUFFERS));
+        }
+
+        this.tealium = new Tealium.Builder("tealiummobile", "demo")
+                .setLogLevel(LogLevel.NONE)
+                .setJmxEnabled(false)
+                .setPersistentData(BenchmarkSupport.inMemoryPersistentUdo())
+                .setCollectDispatcher(dispatcher)
+                .build();
+
+        this.eventData = new Udo();
+        this.eventData.put("page_name", "checkout");
+        this.eventData.put("product_id", new String[] { "sku-1", "sku-2" });
+    }
+
+    @Benchmark
+    public void track() {
+        this.tealium.track(DataManager.EventType.VIEW, "checkout", this.eventData, null);
+    }
+
+    /**
+     * Accepts every payload without sending it.
+     */
+    private static final class AcceptingTransport implements BufferedCollectTransport {
+        private static final Map<String, List<String>> NO_HEADERS = Collections.emptyMap();
+
+        @Override
+        public void send(String endpoint, byte[] payload, int timeout, ResponseHandler handler) {
+            handler.onResponse(200, NO_HEADERS);
+        }
+
+        @Override
+        public void send(String endpoint, byte[] payload, int length, int timeout, ResponseHandler handler)
+                throws IOException {
+            handler.onResponse(200, NO_HEADERS);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.tealium;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Persistent data writes to a real file.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistentUdoBenchmark {
+
+    @Param({"10", "100"})
+    public int keys;
+
+    private Path directory;
+    private PersistentUdo persistentUdo;
+    private Udo data;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.directory = Files.createTempDirectory("tealium-bench");
+        this.persistentUdo = new PersistentUdo(new TextStorage(this.directory.resolve("bench.data")));
+        this.data = new Udo();
+        for (int i = 0; i < this.keys; i++) {
+            this.data.put("key_" + i, "value_" + i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.directory.resolve("bench.data"));
+        Files.deleteIfExists(this.directory);
+    }
+
+    @Benchmark
+    public void writeData() throws UdoSerializationException {
+        this.persistentUdo.writeData(this.data);
+    }
+}
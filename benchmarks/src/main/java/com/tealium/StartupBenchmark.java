@@ -0,0 +1,80 @@
+package com.tealium;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cold start latency of {@link Tealium.Builder#build()} with a persistent
+ * data file on disk. Each fork times a single build in a fresh JVM, so class
+ * loading, reading the file and seeding the SecureRandom are all counted;
+ * the spread across forks is the interesting part.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class StartupBenchmark {
+
+    @Param({"false", "true"})
+    public boolean lazy;
+
+    @Param({"100"})
+    public int keys;
+
+    private Path directory;
+    private Tealium tealium;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, UdoSerializationException {
+        this.directory = Files.createTempDirectory("tealium-bench");
+        Udo data = new Udo();
+        for (int i = 0; i < this.keys; i++) {
+            data.put("key_" + i, "value_" + i);
+        }
+        new PersistentUdo(new TextStorage(this.directory.resolve("bench.data"))).writeData(data);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        if (this.tealium != null) {
+            // a lazy load may still be writing defaults into the directory
+            while (!this.tealium.getDataManager().isLoaded()) {
+                Thread.sleep(1);
+            }
+            this.tealium.close();
+        }
+        Files.deleteIfExists(this.directory.resolve("bench.data"));
+        Files.deleteIfExists(this.directory);
+    }
+
+    @Benchmark
+    public Tealium build() {
+        this.tealium = new Tealium.Builder("tealiummobile", "demo")
+                .setPersistentData(new PersistentUdo(new TextStorage(this.directory.resolve("bench.data"))))
+                .setLogLevel(LogLevel.NONE)
+                .setJmxEnabled(false)
+                .setLazyInitialization(this.lazy)
+                .build();
+        return this.tealium;
+    }
+}
@@ -0,0 +1,63 @@
+package com.tealium;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End to end {@link Tealium#track} against an in-process collect stub, so the
+ * numbers include serialization and the HTTP round trip over loopback.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrackBenchmark {
+
+    private CollectStub stub;
+    private Tealium tealium;
+    private Udo eventData;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.stub = CollectStub.start();
+        LibraryContext context = BenchmarkSupport.libraryContext();
+
+        this.tealium = new Tealium.Builder("tealiummobile", "demo")
+                .setLogLevel(LogLevel.NONE)
+                .setJmxEnabled(false)
+                .setPersistentData(BenchmarkSupport.inMemoryPersistentUdo())
+                .setCollectDispatcher(new CollectDispatcher(this.stub.getEndpoint(), context, 5000))
+                .build();
+
+        this.eventData = new Udo();
+        this.eventData.put("page_name", "checkout");
+        this.eventData.put("product_id", new String[] { "sku-1", "sku-2" });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.stub.stop();
+    }
+
+    @Benchmark
+    public void track() {
+        this.tealium.track(DataManager.EventType.VIEW, "checkout", this.eventData, null);
+    }
+}
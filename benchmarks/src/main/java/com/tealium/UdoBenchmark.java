@@ -0,0 +1,132 @@
+package com.tealium;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Udo mutation and serialization.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UdoBenchmark {
+
+    private Udo udo;
+    private Map<String, Object> eventData;
+    private String[] arrayValue;
+    private List<String> listValue;
+    private String json;
+    private String percentEncoded;
+    private Udo largeSnapshot;
+    private String[] largeKeys;
+
+    @Setup
+    public void setUp() throws UdoSerializationException {
+        this.udo = new Udo();
+        this.arrayValue = new String[] { "sku-1", "sku-2", "sku-3", "sku-4" };
+        this.listValue = Arrays.asList(this.arrayValue);
+
+        this.eventData = new HashMap<String, Object>();
+        this.eventData.put("page_name", "checkout");
+        this.eventData.put("page_type", "cart");
+        this.eventData.put("customer_id", "612040730c8c11e6b4cb");
+        this.eventData.put("product_id", this.arrayValue);
+        this.eventData.put("product_price", new String[] { "9.99", "19.99", "4.50", "100.00" });
+
+        Udo payload = new Udo(this.eventData);
+        payload.put(DataManager.Key.TEALIUM_ACCOUNT, "tealiummobile");
+        payload.put(DataManager.Key.TEALIUM_PROFILE, "demo");
+        payload.put(DataManager.Key.TEALIUM_LIBRARY_NAME, "java");
+        payload.put(DataManager.Key.TEALIUM_LIBRARY_VERSION, LibraryContext.version);
+        this.json = payload.toJson();
+        this.percentEncoded = payload.toPercentEncoded();
+
+        // a udo well past the size where lookups stop scanning
+        Udo large = new Udo();
+        this.largeKeys = new String[300];
+        for (int i = 0; i < this.largeKeys.length; i++) {
+            this.largeKeys[i] = "custom_variable_" + i;
+            large.put(this.largeKeys[i], "value " + i);
+        }
+        this.largeSnapshot = large.readOnlyCopy();
+    }
+
+    @Benchmark
+    public Object putString() {
+        return this.udo.put("page_name", "checkout");
+    }
+
+    @Benchmark
+    public Object putArray() {
+        // goes through the reflective coerceArray path
+        return this.udo.put("product_id", this.arrayValue);
+    }
+
+    @Benchmark
+    public Object putCollection() {
+        return this.udo.put("product_id", this.listValue);
+    }
+
+    @Benchmark
+    public Udo putAll() {
+        Udo target = new Udo();
+        target.putAll(this.eventData);
+        return target;
+    }
+
+    @Benchmark
+    public String toJson() throws UdoSerializationException {
+        return new Udo(this.eventData).toJson();
+    }
+
+    @Benchmark
+    public Udo fromJson() throws UdoDeserializationException {
+        return Udo.fromJson(this.json);
+    }
+
+    @Benchmark
+    public String toPercentEncoded() throws UdoSerializationException {
+        return new Udo(this.eventData).toPercentEncoded();
+    }
+
+    @Benchmark
+    public Udo fromPercentEncoded() throws UdoDeserializationException {
+        return Udo.fromPercentEncoded(this.percentEncoded);
+    }
+
+    @Benchmark
+    public Udo layerLarge() {
+        // overrides a tenth of a large snapshot's variables and reads them all back
+        Udo layer = this.largeSnapshot.newLayer();
+        for (int i = 0; i < this.largeKeys.length; i += 10) {
+            layer.put(this.largeKeys[i], "changed");
+        }
+        int found = 0;
+        for (String key : this.largeKeys) {
+            if (layer.get(key) != null) {
+                found++;
+            }
+        }
+        layer.put("found", Integer.toString(found));
+        return layer;
+    }
+}
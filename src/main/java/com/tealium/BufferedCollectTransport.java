@@ -0,0 +1,31 @@
+package com.tealium;
+
+import java.io.IOException;
+
+/**
+ * A {@link CollectTransport} that can send the first part of a larger array,
+ * so pooled payload buffers don't need copying to an exactly sized one.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+interface BufferedCollectTransport extends CollectTransport {
+
+    /**
+     * Post the first length bytes of payload. The transport must be done reading payload by the
+     * time it calls the handler, since the array is reused afterwards.
+     *
+     * @param endpoint
+     *            The target url.
+     * @param payload
+     *            UTF-8 encoded JSON body, followed by bytes that aren't sent.
+     * @param length
+     *            Size of the body.
+     * @param timeout
+     *            Read timeout in milliseconds.
+     * @param handler
+     *            Receives the response or the failure.
+     * @throws IOException
+     *             If the request could not be created, e.g. a malformed url.
+     */
+    void send(String endpoint, byte[] payload, int length, int timeout, ResponseHandler handler) throws IOException;
+}
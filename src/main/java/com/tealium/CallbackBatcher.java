@@ -0,0 +1,157 @@
+package com.tealium;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.tealium.Tealium.BatchDispatchCallback;
+
+/**
+ * Gathers dispatch outcomes into batches for a {@link BatchDispatchCallback},
+ * so a listener that wants every event's outcome is called once per batch
+ * rather than once per event.
+ *
+ * A batch is delivered when it fills up, or when it has waited the maximum
+ * delay, whichever comes first. The delay is kept by a daemon thread that
+ * only wakes up once per delay.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class CallbackBatcher {
+    private final BatchDispatchCallback callback;
+    private final int batchSize;
+    private final Logger logger;
+    private final ScheduledThreadPoolExecutor timer;
+    private volatile Executor executor = null;
+    // guarded by this
+    private int succeeded = 0;
+    private List<String> errors = new ArrayList<String>();
+
+    /**
+     * @param callback
+     *            Called with each batch.
+     * @param batchSize
+     *            Outcomes per batch.
+     * @param maxDelayMillis
+     *            Longest an outcome waits for its batch to be delivered.
+     */
+    CallbackBatcher(BatchDispatchCallback callback, int batchSize, long maxDelayMillis, Logger logger) {
+        if (callback == null) {
+            throw new IllegalArgumentException("Invalid batch dispatch callback.");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size should be greater than zero.");
+        }
+        if (maxDelayMillis <= 0) {
+            throw new IllegalArgumentException("Max batch delay should be greater than zero.");
+        }
+
+        this.callback = callback;
+        this.batchSize = batchSize;
+        this.logger = logger;
+        this.timer = new ScheduledThreadPoolExecutor(1, new DispatchExecutors.DaemonThreadFactory("tealium-batch"));
+        this.timer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, maxDelayMillis, maxDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param executor
+     *            Delivers batches, or null to deliver on the thread that completes the batch.
+     */
+    void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Add an event's outcome to the current batch, delivering the batch if that fills it.
+     *
+     * @param success
+     * @param error
+     *            null if the event was sent.
+     */
+    void add(boolean success, String error) {
+        int succeeded;
+        List<String> errors;
+        synchronized (this) {
+            if (success) {
+                this.succeeded++;
+            } else {
+                this.errors.add(error);
+            }
+            if (this.succeeded + this.errors.size() < this.batchSize) {
+                return;
+            }
+            succeeded = this.succeeded;
+            errors = this.take();
+        }
+        this.deliver(succeeded, errors);
+    }
+
+    /**
+     * Deliver the current batch, if there is anything in it.
+     */
+    void flush() {
+        int succeeded;
+        List<String> errors;
+        synchronized (this) {
+            if (this.succeeded == 0 && this.errors.isEmpty()) {
+                return;
+            }
+            succeeded = this.succeeded;
+            errors = this.take();
+        }
+        this.deliver(succeeded, errors);
+    }
+
+    /**
+     * Stop the timer and deliver what is left.
+     */
+    void close() {
+        this.timer.shutdownNow();
+        this.flush();
+    }
+
+    // =========================================================================
+    // PRIVATE
+    // =========================================================================
+
+    private List<String> take() {
+        List<String> errors = this.errors;
+        this.succeeded = 0;
+        this.errors = new ArrayList<String>();
+        return Collections.unmodifiableList(errors);
+    }
+
+    private void deliver(final int succeeded, final List<String> errors) {
+        Runnable delivery = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    callback.batchComplete(succeeded, errors.size(), errors);
+                } catch (RuntimeException e) {
+                    // keep the timer thread alive
+                    logger.log(e, LogLevel.ERRORS);
+                }
+            }
+        };
+
+        Executor executor = this.executor;
+        if (executor != null) {
+            try {
+                executor.execute(delivery);
+                return;
+            } catch (RejectedExecutionException e) {
+                // the executor was shut down, deliver here rather than lose the batch
+            }
+        }
+        delivery.run();
+    }
+}
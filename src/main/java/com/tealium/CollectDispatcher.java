@@ -1,18 +1,29 @@
 package com.tealium;
 
 import java.io.IOException;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.ProtocolException;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.tealium.Tealium.DispatchCallback;
 import com.tealium.DataManager.InfoKey;
+import com.tealium.DataManager.Key;
+import com.tealium.DispatchQueue.QueuedEvent;
 
 
 /**
@@ -25,9 +36,33 @@ final class CollectDispatcher {
 
     public final static String DEFAULT_URL = "https://collect.tealiumiq.com/event";
 
+    static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    private static final long FLUSH_POLL_MILLIS = 5;
+    private static final long SENDER_JOIN_MILLIS = 1000;
+    // hedges block a thread each with a blocking transport
+    private static final int HEDGE_THREADS = 4;
+
     private final String endpoint;
     private final Logger logger;
+    private final DispatchMetrics metrics;
     private final int timeout;
+    private final CollectTransport transport;
+    private final Executor executor;
+    private final ConcurrencyLimiter limiter;
+    private final LaneScheduler queue;
+    private final Thread sender;
+    private final ConnectionTracker connections;
+    private volatile EndpointSelector endpoints;
+    private final AtomicInteger warmupsInFlight = new AtomicInteger();
+    private volatile ScheduledThreadPoolExecutor warmer = null;
+    private volatile HedgePolicy hedging = null;
+    private volatile ScheduledThreadPoolExecutor hedger = null;
+    private volatile boolean closed = false;
+    private volatile int maxBodySize = Integer.MAX_VALUE;
+    private volatile OversizedEventPolicy oversizedEventPolicy = OversizedEventPolicy.REJECT;
+    private volatile PayloadBufferPool bufferPool = null;
+    private volatile Executor callbackExecutor = null;
+    private volatile CallbackBatcher batcher = null;
 
     // =========================================================================
     // PUBLIC
@@ -42,14 +77,123 @@ final class CollectDispatcher {
      *            any ending query strings or "?" suffix.
      */
     public CollectDispatcher(String endpoint, LibraryContext context, int timeout) {
+        this(endpoint, context, timeout, new UrlConnectionTransport());
+    }
+
+    /**
+     * Constructor for creating an instance of the Tealium Collect Dispatch
+     * service on top of a specific transport
+     *
+     * @param endpoint
+     *            The target url to send track dispatches to. Should NOT include
+     *            any ending query strings or "?" suffix.
+     * @param transport
+     *            The HTTP client used to deliver payloads.
+     */
+    CollectDispatcher(String endpoint, LibraryContext context, int timeout, CollectTransport transport) {
+        this(endpoint, context, timeout, transport, null);
+    }
+
+    /**
+     * Constructor for creating an instance of the Tealium Collect Dispatch
+     * service that sends from an executor instead of the tracking thread
+     *
+     * @param endpoint
+     *            The target url to send track dispatches to. Should NOT include
+     *            any ending query strings or "?" suffix.
+     * @param transport
+     *            The HTTP client used to deliver payloads.
+     * @param executor
+     *            Runs the sends, or null to send on the calling thread.
+     */
+    CollectDispatcher(String endpoint, LibraryContext context, int timeout, CollectTransport transport, Executor executor) {
+        this(endpoint, context, timeout, transport, executor, null);
+    }
+
+    /**
+     * Constructor for creating an instance of the Tealium Collect Dispatch
+     * service that sends from an executor with an adaptive limit on sends in flight
+     *
+     * @param endpoint
+     *            The target url to send track dispatches to. Should NOT include
+     *            any ending query strings or "?" suffix.
+     * @param transport
+     *            The HTTP client used to deliver payloads.
+     * @param executor
+     *            Runs the sends, or null to send on the calling thread.
+     * @param limiter
+     *            Limits asynchronous sends in flight, or null for no limit.
+     */
+    CollectDispatcher(String endpoint, LibraryContext context, int timeout, CollectTransport transport,
+                      Executor executor, ConcurrencyLimiter limiter) {
+        this(endpoint, context, timeout, transport, executor, limiter,
+                new EnumMap<PriorityLane, LaneSettings>(PriorityLane.class));
+    }
+
+    /**
+     * Constructor for creating an instance of the Tealium Collect Dispatch
+     * service that queues events for an executor in priority lanes, each with
+     * its own capacity, weight and policy for when it fills up
+     *
+     * @param endpoint
+     *            The target url to send track dispatches to. Should NOT include
+     *            any ending query strings or "?" suffix.
+     * @param transport
+     *            The HTTP client used to deliver payloads.
+     * @param executor
+     *            Runs the sends, or null to send on the calling thread.
+     * @param limiter
+     *            Limits asynchronous sends in flight, or null for no limit.
+     * @param lanes
+     *            Queue settings by lane, lanes missing from the map get {@link LaneSettings#defaults}.
+     */
+    CollectDispatcher(String endpoint, LibraryContext context, int timeout, CollectTransport transport,
+                      Executor executor, ConcurrencyLimiter limiter, Map<PriorityLane, LaneSettings> lanes) {
         super();
         this.endpoint = endpoint;
         this.logger = context.getLogger();
+        this.metrics = context.getMetrics();
         this.timeout = timeout;
+        this.transport = transport;
+        this.executor = executor;
+        this.limiter = limiter;
+        this.endpoints = new EndpointSelector(Collections.singletonList(endpoint));
+        this.connections = transport instanceof WarmableCollectTransport
+                ? ((WarmableCollectTransport) transport).newConnectionTracker()
+                : null;
+
+        if (executor == null) {
+            this.queue = null;
+            this.sender = null;
+        } else {
+            this.queue = new LaneScheduler(lanes, context,
+                    new DispatchQueue.DropListener() {
+                        @Override
+                        public void dropped(QueuedEvent event, String reason) {
+                            callCallback(event.getCallback(),
+                                    false,
+                                    CollectDispatcher.this.endpoint,
+                                    null,
+                                    event.getData(),
+                                    new CollectDispatchException(reason).toString());
+                        }
+                    });
+            this.sender = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    drainQueue();
+                }
+            }, "tealium-queue");
+            this.sender.setDaemon(true);
+            this.sender.start();
+        }
     }
 
     /**
-     * Packages data sources into expected URL call format and sends.
+     * Packages data sources into expected URL call format and sends. With an
+     * executor the event is queued and this returns straight away, with a
+     * non-blocking transport it returns once the request is started; either
+     * way the callback is called on completion.
      * 
      * @param data
      *            Map of all key-values to be sent with dispatch.
@@ -60,25 +204,494 @@ final class CollectDispatcher {
      * @see{@link #CollectCallback}
      */
     public void dispatch(Udo data, DispatchCallback callback) throws CollectDispatchException {
-        String payloadJson = encodePayload(data, callback);
-        HttpURLConnection connection = this.getConnection(data, callback);
-        this.sendPayload(data, callback, payloadJson, connection);
+        if (this.closed
+                || (this.executor instanceof ExecutorService && ((ExecutorService) this.executor).isShutdown())) {
+            this.rejected(data, callback, null);
+            return;
+        }
+
+        if (this.queue == null) {
+            Serialized serialized = this.serialize(data, callback);
+            this.sendPayload(serialized, null);
+            return;
+        }
+
+        PriorityLane lane = PriorityLane.forEventType(data.get(Key.TEALIUM_EVENT_TYPE));
+        this.queue.offer(new QueuedEvent(data, callback, lane));
+    }
+
+    /**
+     * Serialize the payload and apply the body size limit, calling the callback if either fails.
+     *
+     * @param data
+     * @param callback
+     * @return the payload to send, truncated if it was oversized
+     * @throws CollectDispatchException
+     */
+    private Serialized serialize(Udo data, DispatchCallback callback) throws CollectDispatchException {
+        long serializationStart = System.nanoTime();
+        Object serializeEvent = JfrEvents.beginPhase();
+        Serialized serialized;
+        try {
+            serialized = this.limitSize(this.encodePayload(data, callback));
+        } catch (CollectDispatchException e) {
+            JfrEvents.commitPhase(serializeEvent, DispatchPhase.SERIALIZE, 0, DispatchPhase.OUTCOME_FAILURE);
+            this.metrics.eventFailed();
+            throw e;
+        }
+        this.metrics.serializationTime(System.nanoTime() - serializationStart);
+        JfrEvents.commitPhase(serializeEvent, DispatchPhase.SERIALIZE, serialized.length,
+                DispatchPhase.OUTCOME_SUCCESS);
+        return serialized;
+    }
+
+    /**
+     * Apply the oversized event policy to a payload over the maximum body size.
+     *
+     * @throws CollectDispatchException if the payload is rejected
+     */
+    private Serialized limitSize(Serialized encoded) throws CollectDispatchException {
+        int maxBodySize = this.maxBodySize;
+        if (encoded.length <= maxBodySize) {
+            return encoded;
+        }
+
+        Udo data = encoded.data;
+        byte[] payload = encoded.detach();
+        final DispatchCallback callback = encoded.callback;
+
+        this.metrics.eventOversized();
+        if (this.oversizedEventPolicy == OversizedEventPolicy.TRUNCATE) {
+            try {
+                final PayloadTruncator truncated = PayloadTruncator.truncate(data, payload, maxBodySize);
+                if (truncated != null) {
+                    this.logger.log(LogLevel.WARNINGS, "Truncated oversized payload keys {}.",
+                            truncated.getTruncatedKeys());
+                    return new Serialized(truncated.getData(), truncated.getPayload(),
+                            truncated.getPayload().length, null, callback == null ? null
+                            : new DispatchCallback() {
+                                @Override
+                                public void dispatchComplete(boolean success, Map<String, Object> info,
+                                                             String error) {
+                                    info.put(InfoKey.TRUNCATED_KEYS, truncated.getTruncatedKeys());
+                                    callback.dispatchComplete(success, info, error);
+                                }
+                            });
+                }
+            } catch (UdoSerializationException e) {
+                this.logger.log(e, LogLevel.ERRORS);
+            }
+        }
+
+        CollectDispatchException err = new CollectDispatchException("Dispatch failed because the payload is "
+                + payload.length + " bytes, over the maximum body size of " + maxBodySize + " bytes");
+        callCallback(callback,
+                false,
+                null,
+                null,
+                data,
+                err.toString());
+        throw err;
+    }
+
+    /**
+     * Body of the sender thread: take queued events one at a time, by lane weight, and hand them to
+     * the executor.
+     * Events stay in the queue until the concurrency limiter has room, so an overloaded collect
+     * service backs events up into the queue where the overflow policy deals with them. An event
+     * that still gets no room within the request timeout is dropped.
+     */
+    private void drainQueue() {
+        while (!this.closed) {
+            QueuedEvent event = this.queue.take(1, TimeUnit.SECONDS);
+            if (event != null) {
+                this.sendQueued(event);
+            }
+        }
+    }
+
+    private void sendQueued(final QueuedEvent event) {
+        if (this.limiter != null) {
+            boolean acquired;
+            while (true) {
+                try {
+                    acquired = this.limiter.acquire(this.timeout, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (InterruptedException e) {
+                    if (this.closed) {
+                        // close gave up waiting for a permit
+                        this.queue.done(event);
+                        this.rejected(event.getData(), event.getCallback(), null);
+                        return;
+                    }
+                }
+            }
+            if (!acquired) {
+                this.queue.done(event);
+                this.metrics.eventDropped(event.getLane());
+                callCallback(event.getCallback(),
+                        false,
+                        this.endpoint,
+                        null,
+                        event.getData(),
+                        new CollectDispatchException("Dispatch failed because no send finished within "
+                                + this.timeout + " ms to make room for it").toString());
+                return;
+            }
+        }
+
+        try {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Serialized serialized;
+                    try {
+                        serialized = serialize(event.getData(), event.getCallback());
+                    } catch (CollectDispatchException e) {
+                        releasePermit(0, false);
+                        queue.done(event);
+                        logger.log(e, LogLevel.ERRORS);
+                        return;
+                    } catch (RuntimeException e) {
+                        // thrown by the callback of an event that failed to serialize
+                        releasePermit(0, false);
+                        queue.done(event);
+                        throw e;
+                    }
+
+                    try {
+                        sendPayload(serialized, event);
+                    } catch (CollectDispatchException e) {
+                        // the event was marked done when the send was aborted
+                        logger.log(e, LogLevel.ERRORS);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.releasePermit(0, false);
+            this.queue.done(event);
+            this.rejected(event.getData(), event.getCallback(), e);
+        }
+    }
+
+    /**
+     * Fail the callback of an event that was discarded before dispatch, e.g. by sampling, through
+     * the callback executor and batcher like any other outcome.
+     *
+     * @param data
+     *            The event's data or payload, or null.
+     */
+    void discarded(Udo data, DispatchCallback callback, String error) {
+        callCallback(callback, false, null, null, data, error);
+    }
+
+    private void rejected(Udo data, DispatchCallback callback, RejectedExecutionException cause) {
+        this.metrics.eventDropped();
+        callCallback(callback,
+                false,
+                this.endpoint,
+                null,
+                data,
+                new CollectDispatchException("Dispatch failed because the dispatcher is shut down", cause).toString());
+    }
+
+    /**
+     * @return number of events accepted by {@link #dispatch} whose send hasn't finished yet
+     */
+    int getPendingCount() {
+        return this.queue == null ? (int) this.metrics.getInFlight() : this.queue.pending();
+    }
+
+    /**
+     * Wait for every pending event to finish sending.
+     *
+     * @return the number of events still pending at the deadline
+     * @throws InterruptedException
+     */
+    int flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int pending;
+        while ((pending = this.getPendingCount()) > 0 && System.nanoTime() - deadline < 0) {
+            Thread.sleep(FLUSH_POLL_MILLIS);
+        }
+        return pending;
+    }
+
+    /**
+     * Flush, then stop accepting events. Events still queued at the deadline are written to the
+     * spool if there is one, otherwise their callbacks fail. Sends already started are left to
+     * finish in the background.
+     *
+     * @return the number of events still pending at the deadline
+     * @throws InterruptedException
+     */
+    int close(long timeout, TimeUnit unit) throws InterruptedException {
+        int pending;
+        try {
+            pending = this.flush(timeout, unit);
+        } finally {
+            this.closed = true;
+        }
+
+        if (this.sender != null) {
+            this.sender.interrupt();
+            this.sender.join(SENDER_JOIN_MILLIS);
+            this.queue.drain();
+        }
+        if (this.executor instanceof ExecutorService) {
+            ((ExecutorService) this.executor).shutdown();
+        }
+        if (this.warmer != null) {
+            this.warmer.shutdownNow();
+        }
+        if (this.hedger != null) {
+            this.hedger.shutdownNow();
+        }
+        if (this.batcher != null) {
+            this.batcher.close();
+        }
+        return pending;
+    }
+
+    /**
+     * Keep connections to the endpoint open and ready, so sends don't pay for DNS, TCP and TLS
+     * handshakes. Connections are opened straight away with HEAD requests, then checked every
+     * keep-alive interval: when fewer than the requested number would still be open at the next
+     * check, they are all refreshed, which also replaces any the transport closed while idle.
+     * Busy dispatchers keep their connections warm with their own sends, and make no extra
+     * requests.
+     *
+     * @param connections
+     *            Connections to keep warm, at most as many as the transport keeps idle.
+     * @param keepAliveIntervalMillis
+     *            Time between checks, should be shorter than the server's keep-alive timeout.
+     * @throws IllegalStateException if the transport doesn't keep connections open
+     */
+    synchronized void startConnectionWarmup(int connections, long keepAliveIntervalMillis) {
+        if (connections <= 0) {
+            throw new IllegalArgumentException("Warm connections should be greater than zero.");
+        }
+        if (keepAliveIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Keep-alive interval should be greater than zero.");
+        }
+        if (this.connections == null) {
+            throw new IllegalStateException("Transport does not keep connections open.");
+        }
+        if (this.warmer != null) {
+            throw new IllegalStateException("Connection warmup already started.");
+        }
+
+        final int target = Math.min(connections, this.connections.getMaxIdle());
+        final long interval = keepAliveIntervalMillis;
+        final ScheduledThreadPoolExecutor warmer = new ScheduledThreadPoolExecutor(target,
+                new DispatchExecutors.DaemonThreadFactory("tealium-warmup"));
+        this.warmer = warmer;
+        warmer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                warmConnections(warmer, target, interval);
+            }
+        }, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Hedge slow sends: once a send has taken longer than the given percentile of collect latency
+     * so far, send a duplicate to another endpoint, or on another connection when there is only
+     * one, and take whichever answers first. Transports can't abandon a request, so the other one
+     * finishes in the background and its response is ignored. Hedges don't wait for the
+     * concurrency limiter, instead they are capped at a percentage of sends.
+     *
+     * @param percentile
+     *            Latency percentile after which a send is hedged, e.g. 95.
+     * @param maxHedgePercent
+     *            Most hedges as a percentage of sends, e.g. 5.
+     */
+    synchronized void setHedging(double percentile, double maxHedgePercent) {
+        HedgePolicy hedging = new HedgePolicy(percentile, maxHedgePercent, this.metrics.getHttpLatency());
+        if (this.hedger == null) {
+            ScheduledThreadPoolExecutor hedger = new ScheduledThreadPoolExecutor(HEDGE_THREADS,
+                    new DispatchExecutors.DaemonThreadFactory("tealium-hedge"));
+            // most hedges are cancelled, don't keep them queued until they would have run
+            hedger.setRemoveOnCancelPolicy(true);
+            this.hedger = hedger;
+        }
+        this.hedging = hedging;
+    }
+
+    /**
+     * @return idle connections to the endpoint that sends can use, as far as the dispatcher can tell
+     */
+    int getIdleConnections() {
+        return this.connections == null ? 0 : this.connections.idleAfter(0);
+    }
+
+    /**
+     * Send to other collect endpoints as well, such as regional ones or a relay. Each send goes to
+     * the healthy endpoint answering fastest, and a send that fails or finds an endpoint overloaded
+     * is retried on the others. Connection warmup only covers the endpoint given to the constructor.
+     *
+     * @param alternateEndpoints
+     *            Endpoints to use besides the constructor's, may be empty.
+     */
+    void setAlternateEndpoints(List<String> alternateEndpoints) {
+        if (alternateEndpoints == null) {
+            throw new IllegalArgumentException("Invalid endpoints.");
+        }
+        List<String> urls = new ArrayList<String>(alternateEndpoints.size() + 1);
+        urls.add(this.endpoint);
+        urls.addAll(alternateEndpoints);
+        this.endpoints = new EndpointSelector(urls);
+    }
+
+    EndpointSelector getEndpoints() {
+        return this.endpoints;
+    }
+
+    /**
+     * Call dispatch callbacks from an executor instead of the thread that finished the send, so
+     * slow callbacks don't hold up sending. Callbacks may then run out of order.
+     *
+     * @param callbackExecutor
+     *            Runs the callbacks, or null to call them on the sending thread.
+     */
+    void setCallbackExecutor(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+        if (this.batcher != null) {
+            this.batcher.setExecutor(callbackExecutor);
+        }
+    }
+
+    Executor getCallbackExecutor() {
+        return this.callbackExecutor;
+    }
+
+    /**
+     * Report the outcome of every event, in batches, on top of any callback the event has.
+     *
+     * @param batcher
+     *            Gathers the outcomes, or null to stop.
+     */
+    void setCallbackBatcher(CallbackBatcher batcher) {
+        if (batcher != null) {
+            batcher.setExecutor(this.callbackExecutor);
+        }
+        this.batcher = batcher;
+    }
+
+    /**
+     * Limit the size of request bodies.
+     *
+     * @param maxBodySize
+     *            In bytes.
+     * @param oversizedEventPolicy
+     *            What to do with events over the limit.
+     */
+    void setMaxBodySize(int maxBodySize, OversizedEventPolicy oversizedEventPolicy) {
+        if (maxBodySize <= 0) {
+            throw new IllegalArgumentException("Max body size should be greater than zero.");
+        }
+        if (oversizedEventPolicy == null) {
+            throw new IllegalArgumentException("Invalid oversized event policy.");
+        }
+        this.oversizedEventPolicy = oversizedEventPolicy;
+        this.maxBodySize = maxBodySize;
+    }
+
+    int getMaxBodySize() {
+        return this.maxBodySize;
+    }
+
+    /**
+     * Serialize payloads into pooled buffers that are reused once their send finishes, instead of
+     * allocating an array per event.
+     *
+     * @param bufferPool
+     *            Pool to take buffers from, or null to stop pooling.
+     * @throws IllegalStateException if the transport can't send part of an array
+     */
+    void setBufferPool(PayloadBufferPool bufferPool) {
+        if (bufferPool != null && !(this.transport instanceof BufferedCollectTransport)) {
+            throw new IllegalStateException("Transport does not support pooled buffers.");
+        }
+        this.bufferPool = bufferPool;
+    }
+
+    PayloadBufferPool getBufferPool() {
+        return this.bufferPool;
+    }
+
+    ConcurrencyLimiter getLimiter() {
+        return this.limiter;
+    }
+
+    /**
+     * @return number of events in the spool file, or 0 if this dispatcher doesn't spool
+     */
+    int getSpoolSize() {
+        return this.queue == null ? 0 : this.queue.spoolSize();
+    }
+
+    /**
+     * @return the size of the platform thread pool used for asynchronous sends, or 0 if this
+     *         dispatcher sends on the calling thread or on virtual threads
+     */
+    int getMaxDispatchThreads() {
+        if (this.executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) this.executor).getMaximumPoolSize();
+        }
+        return 0;
+    }
+
+    /**
+     * Resize the platform thread pool used for asynchronous sends.
+     *
+     * @param maxDispatchThreads
+     * @throws IllegalStateException if this dispatcher doesn't send from a platform thread pool
+     */
+    void setMaxDispatchThreads(int maxDispatchThreads) {
+        if (maxDispatchThreads <= 0) {
+            throw new IllegalArgumentException("Max dispatch threads should be greater than zero.");
+        }
+        if (!(this.executor instanceof ThreadPoolExecutor)) {
+            throw new IllegalStateException("Dispatcher does not send from a platform thread pool.");
+        }
+
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) this.executor;
+        // keep core <= max at every step
+        if (maxDispatchThreads > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(maxDispatchThreads);
+            pool.setCorePoolSize(maxDispatchThreads);
+        } else {
+            pool.setCorePoolSize(maxDispatchThreads);
+            pool.setMaximumPoolSize(maxDispatchThreads);
+        }
     }
 
     /**
-     * Encode payload data into JSON, call the callback if it fails
+     * Encode payload data into JSON, into a pooled buffer if there is a pool, call the callback if it fails
      *
      * @param data
      * @param callback
-     * @return The encoded data as a JSON string
+     * @return The encoded data as UTF-8 encoded JSON
      * @throws CollectDispatchException
      */
-    private static String encodePayload(Udo data, DispatchCallback callback) throws CollectDispatchException {
-        String payloadJson;
+    private Serialized encodePayload(Udo data, DispatchCallback callback) throws CollectDispatchException {
+        PayloadBufferPool pool = this.bufferPool;
+        PayloadBuffer buffer = null;
 
         try {
-            payloadJson = data.toJson();
+            if (pool == null) {
+                byte[] payloadJson = data.toJsonBytes();
+                return new Serialized(data, payloadJson, payloadJson.length, null, callback);
+            }
+
+            buffer = pool.acquire();
+            data.writeJson(buffer);
+            return new Serialized(data, buffer.array(), buffer.size(), buffer, callback);
         } catch (UdoSerializationException e) {
+            if (buffer != null) {
+                buffer.release();
+            }
             CollectDispatchException err =
                     new CollectDispatchException("Dispatch failed because of data serialization error", e);
 
@@ -90,107 +703,335 @@ final class CollectDispatcher {
                     err.toString());
             throw err;
         }
-
-        return payloadJson;
     }
 
     /**
-     * Create and return a new HttpURLConnection for making a collect call, calling the callback if the connection
-     * can't be created for some reason.
+     * Hand the payload to the transport, calling the callback if the request can't be created for some reason.
      *
-     * @param data
-     * @param callback
-     * @return The HttpURLConnection instance to be used to send data
+     * @param serialized
+     *            The payload, returned to its pool once the transport is done with it
+     * @param queued
+     *            The queued event being sent, holding a concurrency limiter permit if there is a limiter, or null
+     *            when sending on the calling thread
      * @throws CollectDispatchException
      */
-    private HttpURLConnection getConnection(Udo data, DispatchCallback callback) throws CollectDispatchException {
-        HttpURLConnection connection;
+    private void sendPayload(Serialized serialized, QueuedEvent queued) throws CollectDispatchException {
+        EndpointSelector endpoints = this.endpoints;
+        int index = endpoints.select(0);
+        SendGroup group = new SendGroup(index);
+        this.metrics.bytesSent(serialized.length);
+        HedgePolicy hedging = this.hedging;
+        if (hedging != null) {
+            this.scheduleHedge(hedging, serialized, queued, endpoints, group);
+        }
+        this.sendPayload(serialized, queued, endpoints, index, 0, group, false);
+    }
 
+    /**
+     * Send the payload to one endpoint, failing over to the next best on errors.
+     *
+     * @param index
+     *            Endpoint to send to.
+     * @param tried
+     *            Endpoints this line of attempts already failed on.
+     * @param group
+     *            Every attempt at sending the event.
+     * @param hedge
+     *            True if this line of attempts is a hedge.
+     */
+    private void sendPayload(final Serialized serialized, final QueuedEvent queued, final EndpointSelector endpoints,
+                             final int index, final long tried, final SendGroup group, final boolean hedge)
+            throws CollectDispatchException {
+        final Udo data = serialized.data;
+        final DispatchCallback callback = serialized.callback;
+        final String endpoint = endpoints.getUrl(index);
+        // the connection tracker follows the pool of the primary endpoint only
+        final boolean tracked = this.connections != null && index == 0;
+        final long sendStart = System.nanoTime();
+        final Object sendEvent = JfrEvents.beginPhase();
+        final int payloadBytes = serialized.length;
+        this.metrics.sendStarted();
+        if (tracked) {
+            this.metrics.connectionUsed(this.connections.acquire());
+        }
+        endpoints.started(index);
         try {
-            URL url = new URL(this.endpoint);
+            CollectTransport.ResponseHandler handler = new CollectTransport.ResponseHandler() {
+                @Override
+                public void onResponse(int responseCode, Map<String, List<String>> headers) {
+                    long elapsed = System.nanoTime() - sendStart;
+                    boolean overloaded = responseCode == 429 || responseCode >= 500;
+                    endpoints.finished(index, elapsed, !overloaded);
+                    if (tracked) {
+                        connections.release(headers);
+                    }
+                    metrics.httpLatency(responseCode, elapsed);
+                    metrics.sendFinished();
+                    JfrEvents.commitPhase(sendEvent, DispatchPhase.SEND, payloadBytes,
+                            responseCode == 200 ? DispatchPhase.OUTCOME_SUCCESS : DispatchPhase.OUTCOME_FAILURE);
+                    if (overloaded && failover(serialized, queued, endpoints, index, tried, group, hedge)) {
+                        return;
+                    }
 
-            connection = (HttpURLConnection) url.openConnection();
+                    if (decide(serialized, queued, group, !overloaded, overloaded)) {
+                        if (hedge) {
+                            metrics.hedgeWon();
+                        }
+                        try {
+                            handleResponse(endpoint, data, callback, responseCode, headers);
+                        } finally {
+                            if (queued != null) {
+                                queue.done(queued);
+                            }
+                        }
+                    }
+                }
 
-            connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
-            connection.setRequestProperty("Accept", "application/json; charset=UTF-8");
-            connection.setDoOutput(true);
-            connection.setRequestMethod("POST");
-            connection.setReadTimeout(this.timeout);
+                @Override
+                public void onFailure(FailedConnectionException e) {
+                    long elapsed = System.nanoTime() - sendStart;
+                    endpoints.finished(index, elapsed, false);
+                    metrics.httpLatency(DispatchMetrics.NO_RESPONSE, elapsed);
+                    metrics.sendFinished();
+                    JfrEvents.commitPhase(sendEvent, DispatchPhase.SEND, payloadBytes, DispatchPhase.OUTCOME_FAILURE);
+                    if (failover(serialized, queued, endpoints, index, tried, group, hedge)) {
+                        return;
+                    }
 
-        } catch (MalformedURLException e) {
-            CollectDispatchException err =
-                    new CollectDispatchException("Dispatch failed because connection url is malformed", e);
+                    if (decide(serialized, queued, group, false, true)) {
+                        metrics.eventFailed();
+                        try {
+                            callCallback(callback,
+                                    false,
+                                    endpoint,
+                                    null,
+                                    data,
+                                    e.toString());
+                        } finally {
+                            if (queued != null) {
+                                queue.done(queued);
+                            }
+                        }
+                    }
+                }
+            };
 
-            callCallback(callback,
-                    false,
-                    this.endpoint,
-                    null,
-                    data,
-                    err.toString());
-            throw err;
+            if (serialized.buffer != null) {
+                ((BufferedCollectTransport) this.transport).send(endpoint, serialized.payload, payloadBytes,
+                        this.timeout, handler);
+            } else {
+                this.transport.send(endpoint, serialized.payload, this.timeout, handler);
+            }
+        } catch (MalformedURLException e) {
+            throw this.sendAborted(sendEvent, serialized, queued, endpoints, index, group,
+                    new CollectDispatchException("Dispatch failed because connection url is malformed", e));
         } catch (ProtocolException e) {
-            CollectDispatchException err =
-                    new CollectDispatchException("Dispatch failed because connection does not support specified http protocol", e);
-
-            callCallback(callback,
-                    false,
-                    this.endpoint,
-                    null,
-                    data,
-                    err.toString());
-            throw err;
+            throw this.sendAborted(sendEvent, serialized, queued, endpoints, index, group,
+                    new CollectDispatchException("Dispatch failed because connection does not support specified http protocol", e));
         } catch (IOException e) {
-            CollectDispatchException err =
-                    new CollectDispatchException("Dispatch failed because connection could not be created", e);
+            throw this.sendAborted(sendEvent, serialized, queued, endpoints, index, group,
+                    new CollectDispatchException("Dispatch failed because connection could not be created", e));
+        }
+    }
 
-            callCallback(callback,
-                    false,
-                    this.endpoint,
-                    null,
-                    data,
-                    err.toString());
-            throw err;
+    /**
+     * Resend a payload that failed on one endpoint to the best endpoint its line of attempts hasn't
+     * tried yet.
+     *
+     * @return false if every endpoint has been tried or another attempt has already answered, and
+     *         the failure stands
+     */
+    private boolean failover(Serialized serialized, QueuedEvent queued, EndpointSelector endpoints, int index,
+                             long tried, SendGroup group, boolean hedge) {
+        long triedNow = tried | (1L << index);
+        int next = group.isDecided() ? -1 : endpoints.select(triedNow);
+        if (next < 0) {
+            return false;
         }
 
-        return connection;
+        this.metrics.failover();
+        this.logger.log(LogLevel.VERBOSE, "Failing over from {} to {}.", endpoints.getUrl(index),
+                endpoints.getUrl(next));
+        try {
+            this.sendPayload(serialized, queued, endpoints, next, triedNow, group, hedge);
+        } catch (CollectDispatchException e) {
+            // the callback has been told
+            this.logger.log(e, LogLevel.ERRORS);
+        }
+        return true;
     }
 
     /**
-     * Take the payload string and HttpURLConnection and make the collect call,
-     * calling the callback if something goes wrong.
-     *
-     * @param data
-     * @param callback
-     * @param payloadJson
-     * @param connection
+     * Send a duplicate of the payload once the hedge delay has passed, if the send is still going
+     * and the budget allows.
      */
-    private void sendPayload(Udo data, DispatchCallback callback, String payloadJson, HttpURLConnection connection) {
-        // Send data and get response
+    private void scheduleHedge(HedgePolicy hedging, final Serialized serialized, final QueuedEvent queued,
+                               final EndpointSelector endpoints, final SendGroup group) {
+        long delay = hedging.sent();
+        ScheduledThreadPoolExecutor hedger = this.hedger;
+        if (delay < 0 || hedger == null) {
+            return;
+        }
+
         try {
-            Map<String, List<String>> headers;
+            group.hedge = hedger.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    hedge(serialized, queued, endpoints, group);
+                }
+            }, delay, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // closed
+        }
+    }
+
+    private void hedge(Serialized serialized, QueuedEvent queued, EndpointSelector endpoints, SendGroup group) {
+        HedgePolicy hedging = this.hedging;
+        if (this.closed || hedging == null || group.isDecided() || !hedging.tryHedge() || !group.join()) {
+            return;
+        }
+
+        this.metrics.hedge();
+        // another endpoint if there is one, otherwise another connection to the same one
+        int index = endpoints.select(1L << group.firstIndex);
+        try {
+            this.sendPayload(serialized, queued, endpoints, index < 0 ? group.firstIndex : index, 0, group, true);
+        } catch (CollectDispatchException e) {
+            this.logger.log(e, LogLevel.VERBOSE);
+        }
+    }
+
+    /**
+     * A line of attempts at sending an event, the original or a hedge, has its outcome. The first
+     * response decides the event, a failure only once no other attempt is still going. The payload
+     * goes back to its pool when the last attempt is done with it.
+     *
+     * @return true if the outcome is the event's, and the caller should report it
+     */
+    private boolean decide(Serialized serialized, QueuedEvent queued, SendGroup group, boolean responded,
+                           boolean overloaded) {
+        int running = group.running.decrementAndGet();
+        boolean decides = (responded || running == 0) && group.decided.compareAndSet(false, true);
+        if (running == 0) {
+            serialized.release();
+        }
+        if (decides) {
+            Future<?> hedge = group.hedge;
+            if (hedge != null) {
+                hedge.cancel(false);
+            }
+            if (queued != null) {
+                this.releasePermit(System.nanoTime() - group.start, overloaded);
+            }
+        }
+        return decides;
+    }
 
-            int responseCode;
+    /**
+     * One keep-alive check: when fewer than target connections will last until the next one,
+     * send target HEAD requests at once. Each takes its own connection, so the idle ones are all
+     * refreshed and missing ones opened.
+     */
+    private void warmConnections(Executor warmer, int target, long intervalMillis) {
+        if (this.closed || this.warmupsInFlight.get() > 0 || this.connections.idleAfter(intervalMillis) >= target) {
+            return;
+        }
 
-            // send the data
+        this.warmupsInFlight.addAndGet(target);
+        for (int i = 0; i < target; i++) {
             try {
-                connection.connect();
-                OutputStream os = connection.getOutputStream();
-                os.write(payloadJson.getBytes(StandardCharsets.UTF_8));
-                os.close();
-            } catch (IOException e) {
-                throw new FailedConnectionException("Could not open connection with server.", e);
+                warmer.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        warmConnection();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                this.warmupsInFlight.decrementAndGet();
             }
+        }
+    }
+
+    private void warmConnection() {
+        this.connections.acquire();
+        this.metrics.connectionWarmup();
+        try {
+            ((WarmableCollectTransport) this.transport).warm(this.endpoint, this.timeout,
+                    new CollectTransport.ResponseHandler() {
+                        @Override
+                        public void onResponse(int responseCode, Map<String, List<String>> headers) {
+                            connections.release(headers);
+                            warmupsInFlight.decrementAndGet();
+                        }
+
+                        @Override
+                        public void onFailure(FailedConnectionException e) {
+                            warmupsInFlight.decrementAndGet();
+                            logger.log(e, LogLevel.VERBOSE);
+                        }
+                    });
+        } catch (IOException e) {
+            this.warmupsInFlight.decrementAndGet();
+            this.logger.log(e, LogLevel.VERBOSE);
+        }
+    }
+
+    /**
+     * Return the concurrency limiter permit of a queued send.
+     *
+     * @param rttNanos time the send took, or 0 if it never reached the network
+     * @param overloaded true if collect looked overloaded
+     */
+    private void releasePermit(long rttNanos, boolean overloaded) {
+        if (this.limiter != null) {
+            this.limiter.release(rttNanos, overloaded);
+        }
+    }
 
-            // get result
+    /**
+     * Account for a send that failed before reaching the network, calling the callback if that
+     * decides the event.
+     *
+     * @return the error to throw
+     */
+    private CollectDispatchException sendAborted(Object sendEvent, Serialized serialized, QueuedEvent queued,
+                                                 EndpointSelector endpoints, int index, SendGroup group,
+                                                 CollectDispatchException err) {
+        endpoints.finished(index, 0, false);
+        JfrEvents.commitPhase(sendEvent, DispatchPhase.SEND, serialized.length, DispatchPhase.OUTCOME_FAILURE);
+        this.metrics.sendFinished();
+        if (this.decide(serialized, queued, group, false, false)) {
+            this.metrics.eventFailed();
             try {
-                responseCode = connection.getResponseCode();
-            } catch (IOException e) {
-                throw new FailedConnectionException("Could not get response from server.", e);
+                callCallback(serialized.callback,
+                        false,
+                        endpoints.getUrl(index),
+                        null,
+                        serialized.data,
+                        err.toString());
+            } finally {
+                if (queued != null) {
+                    this.queue.done(queued);
+                }
             }
+        }
+        return err;
+    }
 
+    /**
+     * Check the collect response for errors and call the callback with the result.
+     *
+     * @param endpoint
+     * @param data
+     * @param callback
+     * @param responseCode
+     * @param headers
+     */
+    private void handleResponse(String endpoint, Udo data, DispatchCallback callback, int responseCode,
+                                Map<String, List<String>> headers) {
+        try {
             // check the response for serverside issues, including any complaints about the payload
-            String responseError = connection.getHeaderField("x-error");
-            headers = connection.getHeaderFields();
+            String responseError = getHeaderField(headers, "x-error");
 
             // see if there was an error defined with the "x-error" header in the response
             if (responseError != null) {
@@ -203,30 +1044,23 @@ final class CollectDispatcher {
                 throw new FailedRequestException(responseCode, responseError, headers);
             }
 
-            // disconnect if there is still a connection
-            if (connection != null) connection.disconnect();
+            this.metrics.eventDispatched();
 
             // call the dispatch callback
             callCallback(callback,
                     true,
-                    this.endpoint,
+                    endpoint,
                     headers,
                     data,
                     null);
         } catch (FailedRequestException e) {
+            this.metrics.eventFailed();
             callCallback(callback,
                     false,
-                    this.endpoint,
+                    endpoint,
                     e.headers,
                     data,
                     e.toString());
-        } catch (FailedConnectionException e) {
-            callCallback(callback,
-                    false,
-                    this.endpoint,
-                    null,
-                    data,
-                    e.toString());
         }
     }
 
@@ -235,7 +1069,30 @@ final class CollectDispatcher {
     // =========================================================================
 
     /**
-     * Call the dispatch callback with the results of the collect call, and call the callback.
+     * Case insensitive header lookup, since HTTP/2 responses report header names in lower case
+     * while HttpURLConnection keeps whatever case the server sent.
+     *
+     * @param headers Response headers
+     * @param name Header name
+     * @return the first value of the header, or null if not present
+     */
+    static String getHeaderField(Map<String, List<String>> headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Report the outcome of an event to the batch callback, and to the event's callback on the
+     * callback executor if there is one.
      *
      * @param callback The callback to call
      * @param success true if successful, false otherwise
@@ -244,17 +1101,49 @@ final class CollectDispatcher {
      * @param data data sent to endpoint
      * @param errorMessage message of what went wrong, null if nothing went wrong
      */
-    private static void callCallback(Tealium.DispatchCallback callback,
-                              boolean success,
-                              String encodedUrl,
-                              Map<String, List<String>> headerFields,
-                              Udo data,
-                              String errorMessage) {
+    private void callCallback(final Tealium.DispatchCallback callback,
+                              final boolean success,
+                              final String encodedUrl,
+                              final Map<String, List<String>> headerFields,
+                              final Udo data,
+                              final String errorMessage) {
+
+        CallbackBatcher batcher = this.batcher;
+        if (batcher != null) {
+            batcher.add(success, errorMessage);
+        }
 
         if (callback == null) {
             return;
         }
 
+        Executor callbackExecutor = this.callbackExecutor;
+        if (callbackExecutor != null) {
+            try {
+                callbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        completeCallback(callback, success, encodedUrl, headerFields, data, errorMessage);
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException e) {
+                // the executor was shut down, call it here rather than not at all
+            }
+        }
+        completeCallback(callback, success, encodedUrl, headerFields, data, errorMessage);
+    }
+
+    /**
+     * Call the dispatch callback with the results of the collect call.
+     */
+    private static void completeCallback(Tealium.DispatchCallback callback,
+                                         boolean success,
+                                         String encodedUrl,
+                                         Map<String, List<String>> headerFields,
+                                         Udo data,
+                                         String errorMessage) {
+
         // General
         Map<String, Object> info = new HashMap<>();
         info.put(InfoKey.DISPATCH_SERVICE, "collect");
@@ -267,18 +1156,87 @@ final class CollectDispatcher {
             info.put(InfoKey.PAYLOAD, data);
         }
 
-        // Headers
+        // Headers, flattened if the callback reads them
         if (headerFields != null) {
-            Map<String, Object> headers = new HashMap<>();
-            for (Map.Entry<String, List<String>> k : headerFields.entrySet()) {
-                for (String v : k.getValue()) {
-                    headers.put(k.getKey(), v);
+            info.put(DataManager.InfoKey.RESPONSE_HEADERS, new ResponseHeaders(headerFields));
+        }
+
+        callback.dispatchComplete(success, info, errorMessage);
+
+    }
+
+    /**
+     * Every attempt at sending one event: the original send, a hedge if it was slow, and the
+     * failovers of either.
+     */
+    private static final class SendGroup {
+        final long start = System.nanoTime();
+        final int firstIndex;
+        // lines of attempts still going
+        final AtomicInteger running = new AtomicInteger(1);
+        final AtomicBoolean decided = new AtomicBoolean();
+        volatile Future<?> hedge = null;
+
+        SendGroup(int firstIndex) {
+            this.firstIndex = firstIndex;
+        }
+
+        boolean isDecided() {
+            return this.decided.get();
+        }
+
+        /**
+         * Start another line of attempts, unless the event has already been decided.
+         */
+        boolean join() {
+            int running;
+            while ((running = this.running.get()) > 0 && !this.decided.get()) {
+                if (this.running.compareAndSet(running, running + 1)) {
+                    return true;
                 }
             }
-            info.put(DataManager.InfoKey.RESPONSE_HEADERS, headers);
+            return false;
         }
+    }
 
-        callback.dispatchComplete(success, info, errorMessage);
+    /**
+     * A payload ready to send, with the data and callback that go with it. The payload is the
+     * first length bytes of the array, which belongs to a pooled buffer if there is one.
+     */
+    private static final class Serialized {
+        final Udo data;
+        final byte[] payload;
+        final int length;
+        final PayloadBuffer buffer;
+        final DispatchCallback callback;
+
+        Serialized(Udo data, byte[] payload, int length, PayloadBuffer buffer, DispatchCallback callback) {
+            this.data = data;
+            this.payload = payload;
+            this.length = length;
+            this.buffer = buffer;
+            this.callback = callback;
+        }
 
+        /**
+         * @return the payload in an array of its own, returning any pooled buffer
+         */
+        byte[] detach() {
+            if (this.buffer == null) {
+                return this.payload;
+            }
+            byte[] copy = Arrays.copyOf(this.payload, this.length);
+            this.buffer.release();
+            return copy;
+        }
+
+        /**
+         * Return any pooled buffer once the payload has been sent.
+         */
+        void release() {
+            if (this.buffer != null) {
+                this.buffer.release();
+            }
+        }
     }
 }
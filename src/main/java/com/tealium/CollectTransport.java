@@ -0,0 +1,42 @@
+package com.tealium;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Abstraction over the HTTP client used to deliver collect payloads, so the
+ * dispatcher does not care whether a send blocks the calling thread or
+ * completes asynchronously.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+interface CollectTransport {
+
+    /**
+     * Post a JSON payload to the endpoint. The handler is called exactly once,
+     * either on the calling thread before this method returns, or later on a
+     * thread owned by the transport.
+     *
+     * @param endpoint
+     *            The target url.
+     * @param payload
+     *            UTF-8 encoded JSON body.
+     * @param timeout
+     *            Read timeout in milliseconds.
+     * @param handler
+     *            Receives the response or the failure.
+     * @throws IOException
+     *             If the request could not be created, e.g. a malformed url.
+     */
+    void send(String endpoint, byte[] payload, int timeout, ResponseHandler handler) throws IOException;
+
+    /**
+     * Receives the outcome of a single send.
+     */
+    interface ResponseHandler {
+        void onResponse(int responseCode, Map<String, List<String>> headers);
+
+        void onFailure(FailedConnectionException e);
+    }
+}
@@ -0,0 +1,24 @@
+package com.tealium;
+
+/**
+ * Factory for {@link CollectTransport} instances.
+ *
+ * This is the Java 7 implementation; the multi-release jar overrides it under
+ * META-INF/versions/11 with one that can also build the HttpClient transport.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class CollectTransports {
+    private CollectTransports() {}
+
+    /**
+     * Create the transport for the requested type, falling back to
+     * {@link TransportType#URL_CONNECTION} when the type isn't supported by the running JVM.
+     */
+    static CollectTransport create(TransportType type, int timeout, Logger logger) {
+        if (type == TransportType.HTTP_CLIENT) {
+            logger.log("HttpClient transport requires Java 11, falling back to HttpURLConnection.", LogLevel.WARNINGS);
+        }
+        return new UrlConnectionTransport();
+    }
+}
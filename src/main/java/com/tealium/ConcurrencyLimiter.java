@@ -0,0 +1,153 @@
+package com.tealium;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adaptive limit on the number of collect sends in flight.
+ *
+ * The limit follows AIMD driven by latency: while round trips stay within
+ * {@link #LATENCY_TOLERANCE} times the best recently observed round trip it
+ * grows by roughly one per limit's worth of completed sends; when latency
+ * climbs past that, or collect reports overload (429, 5xx, no response), it
+ * is cut by {@link #BACKOFF_RATIO}. That keeps throughput high without
+ * piling requests onto a struggling collect or egress proxy.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class ConcurrencyLimiter {
+    static final double LATENCY_TOLERANCE = 2.0;
+    static final double BACKOFF_RATIO = 0.9;
+    private static final int MIN_RTT_RESET_SAMPLES = 1000;
+
+    private final int minLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int maxLimit;
+    private volatile int currentLimit;
+    private double limit;
+    private long lastBackOffNanos = System.nanoTime();
+    private long minRttNanos = Long.MAX_VALUE;
+    private int samplesSinceReset = 0;
+
+    ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit <= 0 || minLimit > maxLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Concurrency limits should satisfy 0 < min <= initial <= max.");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.currentLimit = initialLimit;
+    }
+
+    /**
+     * Take a permit without waiting.
+     *
+     * @return false if the limit has been reached
+     */
+    boolean tryAcquire() {
+        int limit = this.getLimit();
+        while (true) {
+            int current = this.inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (this.inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Take a permit, waiting for an in-flight send to finish if the limit has been reached.
+     *
+     * @return false if no permit became available in time
+     */
+    boolean acquire(long timeout, TimeUnit unit) throws InterruptedException {
+        if (this.tryAcquire()) {
+            return true;
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            while (!this.tryAcquire()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return a permit and feed the outcome of the send into the limit.
+     *
+     * @param rttNanos time the send took, or 0 if the send never happened and only the permit is returned
+     * @param overloaded true if collect signalled overload or the send got no response
+     */
+    void release(long rttNanos, boolean overloaded) {
+        this.inFlight.decrementAndGet();
+
+        synchronized (this) {
+            if (rttNanos <= 0) {
+                this.notifyAll();
+                return;
+            }
+            if (overloaded) {
+                this.backOff();
+            } else {
+                if (++this.samplesSinceReset >= MIN_RTT_RESET_SAMPLES) {
+                    // forget the old baseline so the limiter adapts when the network path changes
+                    this.minRttNanos = rttNanos;
+                    this.samplesSinceReset = 0;
+                } else if (rttNanos < this.minRttNanos) {
+                    this.minRttNanos = rttNanos;
+                }
+
+                if (rttNanos > this.minRttNanos * LATENCY_TOLERANCE) {
+                    this.backOff();
+                } else {
+                    this.limit = Math.min(this.maxLimit, this.limit + 1.0 / this.limit);
+                }
+            }
+            this.currentLimit = (int) this.limit;
+            this.notifyAll();
+        }
+    }
+
+    int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    int getLimit() {
+        return this.currentLimit;
+    }
+
+    int getMaxLimit() {
+        return this.maxLimit;
+    }
+
+    synchronized void setMaxLimit(int maxLimit) {
+        if (maxLimit < this.minLimit) {
+            throw new IllegalArgumentException("Max concurrency limit should be at least " + this.minLimit + ".");
+        }
+        this.maxLimit = maxLimit;
+        this.limit = Math.min(this.limit, maxLimit);
+        this.currentLimit = (int) this.limit;
+        this.notifyAll();
+    }
+
+    /**
+     * Cut the limit, at most once per round trip so a burst of slow responses to requests sent
+     * under the old limit doesn't collapse it all the way to the minimum.
+     */
+    private void backOff() {
+        long now = System.nanoTime();
+        if (this.minRttNanos != Long.MAX_VALUE && now - this.lastBackOffNanos < this.minRttNanos) {
+            return;
+        }
+        this.lastBackOffNanos = now;
+        this.limit = Math.max(this.minLimit, this.limit * BACKOFF_RATIO);
+    }
+}
@@ -0,0 +1,156 @@
+package com.tealium;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Model of the idle keep-alive connections a transport holds for the collect
+ * host, so the dispatcher can tell whether a send will find a connection
+ * ready (warm) or has to pay for DNS, TCP and TLS first (cold), and how many
+ * connections need warming up.
+ *
+ * Transports don't expose their pools, so this follows the same rules they
+ * do: a connection goes idle when a response finishes, unless the server
+ * asked for it to be closed, and stays usable for the server's Keep-Alive
+ * timeout, or the transport's default when there isn't one. A pooled
+ * transport keeps up to a maximum number of idle connections and hands out
+ * the most recently used first; a multiplexed one shares a single connection
+ * between every request. The counts are estimates, other users of the same
+ * pool, such as another instance sending to the same host, aren't seen.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class ConnectionTracker {
+    private final int maxIdle;
+    private final boolean multiplexed;
+    private final long defaultKeepAliveNanos;
+    // deadlines of idle connections, most recently used last
+    private final ArrayDeque<Long> idle = new ArrayDeque<Long>();
+
+    /**
+     * @param maxIdle
+     *            Idle connections the transport keeps.
+     * @param multiplexed
+     *            True if every request shares one connection.
+     * @param defaultKeepAliveMillis
+     *            How long the transport keeps an idle connection when the server doesn't say.
+     */
+    ConnectionTracker(int maxIdle, boolean multiplexed, long defaultKeepAliveMillis) {
+        if (maxIdle <= 0 || defaultKeepAliveMillis <= 0) {
+            throw new IllegalArgumentException("Idle connections and keep-alive should be greater than zero.");
+        }
+        this.maxIdle = multiplexed ? 1 : maxIdle;
+        this.multiplexed = multiplexed;
+        this.defaultKeepAliveNanos = TimeUnit.MILLISECONDS.toNanos(defaultKeepAliveMillis);
+    }
+
+    /**
+     * @return the most connections worth warming up
+     */
+    int getMaxIdle() {
+        return this.maxIdle;
+    }
+
+    /**
+     * A request is starting.
+     *
+     * @return true if it gets an idle connection, false if it has to open one
+     */
+    boolean acquire() {
+        return this.acquire(System.nanoTime());
+    }
+
+    synchronized boolean acquire(long nowNanos) {
+        this.expire(nowNanos);
+        if (this.idle.isEmpty()) {
+            return false;
+        }
+        if (!this.multiplexed) {
+            this.idle.pollLast();
+        }
+        return true;
+    }
+
+    /**
+     * A request finished with a response and its connection went back to the pool, unless the
+     * headers say otherwise.
+     *
+     * @param headers
+     *            Response headers.
+     */
+    void release(Map<String, List<String>> headers) {
+        this.release(headers, System.nanoTime());
+    }
+
+    synchronized void release(Map<String, List<String>> headers, long nowNanos) {
+        this.expire(nowNanos);
+        if ("close".equalsIgnoreCase(CollectDispatcher.getHeaderField(headers, "Connection"))) {
+            return;
+        }
+
+        long deadline = nowNanos + this.keepAliveNanos(CollectDispatcher.getHeaderField(headers, "Keep-Alive"));
+        if (this.multiplexed) {
+            this.idle.clear();
+        } else if (this.idle.size() >= this.maxIdle) {
+            return;
+        }
+        this.idle.addLast(deadline);
+    }
+
+    /**
+     * @return idle connections that will still be usable after the given time
+     */
+    int idleAfter(long millis) {
+        return this.idleAfter(millis, System.nanoTime());
+    }
+
+    synchronized int idleAfter(long millis, long nowNanos) {
+        long at = nowNanos + TimeUnit.MILLISECONDS.toNanos(millis);
+        int count = 0;
+        for (Long deadline : this.idle) {
+            if (deadline - at > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // =========================================================================
+    // PRIVATE
+    // =========================================================================
+
+    private void expire(long nowNanos) {
+        for (Iterator<Long> it = this.idle.iterator(); it.hasNext(); ) {
+            if (it.next() - nowNanos <= 0) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @param keepAlive
+     *            Keep-Alive header, e.g. "timeout=5, max=100", or null.
+     */
+    private long keepAliveNanos(String keepAlive) {
+        if (keepAlive != null) {
+            for (String parameter : keepAlive.split(",")) {
+                String[] pair = parameter.trim().split("=", 2);
+                if (pair.length == 2 && "timeout".equals(pair[0].trim().toLowerCase(Locale.ROOT))) {
+                    try {
+                        long seconds = Long.parseLong(pair[1].trim());
+                        if (seconds > 0) {
+                            return TimeUnit.SECONDS.toNanos(seconds);
+                        }
+                    } catch (NumberFormatException e) {
+                        // fall back to the default
+                    }
+                }
+            }
+        }
+        return this.defaultKeepAliveNanos;
+    }
+}
@@ -0,0 +1,49 @@
+package com.tealium;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lets a single consumer thread park until producers have something for it,
+ * with producers only paying for an unpark when the consumer is actually
+ * parked.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class ConsumerSignal {
+    private final AtomicBoolean parked = new AtomicBoolean();
+    private volatile Thread consumer;
+
+    /**
+     * Called by producers after making work available.
+     */
+    void signal() {
+        Thread consumer = this.consumer;
+        if (consumer != null && this.parked.get()) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Called by the consumer to wait for a signal. The consumer must check for work after this
+     * returns, since wakeups can be spurious.
+     *
+     * @param nanos
+     *            Longest wait.
+     * @param stillIdle
+     *            Checked once the consumer is visible as parked, so a signal can't slip in between
+     *            the consumer's last check and parking.
+     */
+    void await(long nanos, Idle stillIdle) {
+        this.consumer = Thread.currentThread();
+        this.parked.set(true);
+        if (stillIdle.isIdle()) {
+            LockSupport.parkNanos(this, nanos);
+        }
+        this.parked.set(false);
+    }
+
+    interface Idle {
+        boolean isIdle();
+    }
+}
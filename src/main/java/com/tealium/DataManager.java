@@ -2,6 +2,10 @@ package com.tealium;
 
 import java.security.SecureRandom;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Tealium data manager object for processing generation of standardized
@@ -11,13 +15,22 @@ import java.util.Random;
  */
 public final class DataManager {
     private static final long RANDOM_MAX_PLUS_ONE = 10000000000000000L;
+    private static final int RANDOM_DIGITS = 16;
+    static final long DEFAULT_LOAD_WAIT_MILLIS = 250;
 
     private final LibraryContext libraryContext;
-    private final Random randomGenerator;
-    private final Udo volatileData;
+    // a plain Random until the SecureRandom is seeded, when loading in the background
+    private volatile Random randomGenerator;
     private String sessionId;
     private PersistentUdo persistentData = null;
-    private Udo persistentCache; // use this instead of reading from storage all the time
+    // read-only snapshot, use this instead of reading from storage all the time
+    private final AtomicReference<Udo> persistentCache = new AtomicReference<Udo>();
+    private final Object persistentWriteLock = new Object();
+    private volatile EpochSeconds epochSeconds = new EpochSeconds(-1);
+    private final CountDownLatch loaded;
+    private final long loadWaitMillis;
+    private volatile boolean loadWaitExpired = false;
+    private volatile SessionManager sessionManager = null;
 
     // =========================================================================
     // PUBLIC
@@ -27,20 +40,85 @@ public final class DataManager {
      * Constructor for new DataManager Object
      */
     public DataManager(LibraryContext libraryContext, PersistentUdo persistentData) {
+        this(libraryContext, persistentData, null, 0);
+    }
+
+    /**
+     * Constructor that can leave loading persistent data and seeding the
+     * SecureRandom, both of which can block, to a background thread.
+     *
+     * Until loading finishes, reading persistent data waits for it up to
+     * loadWaitMillis, once; if it still isn't done, reads get the default
+     * persistent data instead of waiting again. Adding persistent data always
+     * waits, so it never overwrites what's stored.
+     *
+     * @param libraryContext
+     * @param persistentData
+     * @param loader
+     *            Runs the load. Null to load before returning.
+     * @param loadWaitMillis
+     *            How long the first read waits for a background load.
+     */
+    DataManager(LibraryContext libraryContext, PersistentUdo persistentData, Executor loader, long loadWaitMillis) {
         super();
         this.libraryContext = libraryContext;
         this.sessionId = getTimestampInMilliseconds();
-        this.randomGenerator = new SecureRandom();
-        this.volatileData = new Udo();
         this.persistentData = persistentData;
+        this.loadWaitMillis = loadWaitMillis;
 
-        try {
-            this.persistentCache = this.persistentData.readOrCreateUdo(this.createNewPersistentData());
-        } catch (UdoSerializationException e) {
-            // File must be corrupt/unreadable etc
-            this.persistentCache = new Udo(); // persistent cache is empty when something goes wrong.
-            this.libraryContext.getLogger().log(e, LogLevel.ERRORS);
+        if (loader == null) {
+            this.randomGenerator = new SecureRandom();
+            this.loaded = new CountDownLatch(0);
+            this.loadPersistentData();
+            return;
         }
+
+        this.randomGenerator = new Random();
+        this.persistentCache.set(this.createNewPersistentData().readOnlyCopy());
+        this.loaded = new CountDownLatch(1);
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    SecureRandom secureRandom = new SecureRandom();
+                    // seeds it, which is the part that can block on entropy
+                    secureRandom.nextLong();
+                    randomGenerator = secureRandom;
+                    loadPersistentData();
+                } finally {
+                    loaded.countDown();
+                }
+            }
+        });
+    }
+
+    /**
+     * @return a daemon thread for each load
+     */
+    static Executor newLoader() {
+        final DispatchExecutors.DaemonThreadFactory threadFactory =
+                new DispatchExecutors.DaemonThreadFactory("tealium-init");
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                threadFactory.newThread(command).start();
+            }
+        };
+    }
+
+    /**
+     * @return true once persistent data has been loaded
+     */
+    boolean isLoaded() {
+        return this.loaded.getCount() == 0;
+    }
+
+    /**
+     * Release the persistent data's files. Adding persistent data afterwards
+     * still writes it to the text file.
+     */
+    void close() {
+        this.persistentData.close();
     }
 
     /**
@@ -55,23 +133,59 @@ public final class DataManager {
     /**
      * Retrieve persistent data map
      * 
+     * The map is a copy that can be changed freely. Changes to it aren't kept,
+     * use {@link #addPersistentData(Udo)} to add persistent data.
+     *
      * @return persistent data map
      */
     public Udo getPersistentData() {
-        return this.persistentCache;
+        return new Udo(this.getPersistentSnapshot());
+    }
+
+    /**
+     * The persistent data as a read-only snapshot: it never changes, so it's
+     * safe to read from any thread without locking, and
+     * {@link #addPersistentData(Udo)} publishes a new snapshot rather than
+     * changing this one.
+     *
+     * @return persistent data snapshot
+     */
+    Udo getPersistentSnapshot() {
+        if (!this.awaitLoad()) {
+            return this.persistentCache.get();
+        }
+        if (this.persistentData.hasNewerData()) {
+            this.refreshPersistentData();
+        }
+        return this.persistentCache.get();
     }
 
     /**
      * Convenience to add to persistent data map
      * 
+     * Concurrent additions are all kept: each builds a new snapshot from the
+     * latest one, sharing its unchanged entries, and publishes it only if no
+     * other addition got in first, trying again otherwise.
+     *
      * @param data
      *
      * @throws PersistentDataAccessException
      */
     public void addPersistentData(Udo data) throws UdoSerializationException {
-        Udo persistent = getPersistentData();
-        persistent.putAll(data);
-        this.persistentData.writeData(persistent);
+        this.awaitLoadUninterruptibly();
+        Udo current;
+        Udo updated;
+        do {
+            current = this.persistentCache.get();
+            updated = current.newLayer();
+            updated.putAll(data);
+            updated = updated.readOnlyCopy();
+        } while (!this.persistentCache.compareAndSet(current, updated));
+
+        // write whatever is latest, so a slower writer can't leave older data on disk
+        synchronized (this.persistentWriteLock) {
+            this.persistentData.writeData(this.persistentCache.get(), data);
+        }
     }
 
     /**
@@ -88,16 +202,134 @@ public final class DataManager {
     // =========================================================================
 
     protected Udo getVolatileData() {
-        volatileData.put(Key.TEALIUM_TIMESTAMP_EPOCH, getTimestampInSeconds());
-        volatileData.put(Key.TEALIUM_RANDOM, getRandom());
-        volatileData.put(Key.TEALIUM_SESSION_ID, getSessionId());
+        Udo volatileData = new Udo();
+        this.addVolatileData(volatileData);
         return volatileData;
     }
 
+    /**
+     * Put the data that changes with every event straight into an event's data.
+     *
+     * @param data
+     */
+    void addVolatileData(Udo data) {
+        this.addVolatileData(data, null);
+    }
+
+    /**
+     * Put the data that changes with every event straight into an event's data, with the session
+     * of the event's visitor when sessions are kept by visitor.
+     *
+     * @param data
+     * @param eventData
+     *            Data passed to track, checked for the visitor id before data is. May be null.
+     */
+    void addVolatileData(Udo data, Udo eventData) {
+        data.put(Key.TEALIUM_TIMESTAMP_EPOCH, getTimestampInSeconds());
+        data.put(Key.TEALIUM_RANDOM, getRandom());
+        data.put(Key.TEALIUM_SESSION_ID, getSessionId(data, eventData));
+    }
+
+    /**
+     * Keep a session for each visitor, identified by {@link Key#TEALIUM_VISITOR_ID}, instead of
+     * one for the whole instance. Events without a visitor id keep using the instance's session.
+     *
+     * @param sessionManager
+     *            Sessions by visitor, or null for one session.
+     */
+    void setSessionManager(SessionManager sessionManager) {
+        this.sessionManager = sessionManager;
+    }
+
+    SessionManager getSessionManager() {
+        return this.sessionManager;
+    }
+
     // =========================================================================
     // PRIVATE
     // =========================================================================
 
+    private String getSessionId(Udo data, Udo eventData) {
+        SessionManager sessions = this.sessionManager;
+        if (sessions == null) {
+            return getSessionId();
+        }
+
+        Object visitorId = eventData == null ? null : eventData.get(Key.TEALIUM_VISITOR_ID);
+        if (visitorId == null) {
+            visitorId = data.get(Key.TEALIUM_VISITOR_ID);
+        }
+        return visitorId == null ? getSessionId() : sessions.resolve(visitorId.toString());
+    }
+
+    private void loadPersistentData() {
+        Udo persistent;
+        try {
+            persistent = this.persistentData.readOrCreateUdo(this.createNewPersistentData());
+        } catch (UdoSerializationException e) {
+            // File must be corrupt/unreadable etc
+            persistent = new Udo(); // persistent cache is empty when something goes wrong.
+            this.libraryContext.getLogger().log(e, LogLevel.ERRORS);
+        }
+        this.persistentCache.set(persistent.readOnlyCopy());
+    }
+
+    /**
+     * Wait for a background load, only the first time it's needed.
+     *
+     * @return true if persistent data is loaded
+     */
+    private boolean awaitLoad() {
+        if (this.isLoaded()) {
+            return true;
+        }
+        if (this.loadWaitExpired) {
+            return false;
+        }
+        try {
+            if (this.loaded.await(this.loadWaitMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        this.loadWaitExpired = true;
+        this.libraryContext.getLogger().log("Persistent data is still loading, using defaults.", LogLevel.WARNINGS);
+        return false;
+    }
+
+    private void awaitLoadUninterruptibly() {
+        boolean interrupted = false;
+        while (!this.isLoaded()) {
+            try {
+                this.loaded.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Replace the snapshot with data another process stored. An addition from this process that
+     * hasn't been written yet can be missing from it until the next refresh after the write.
+     */
+    private void refreshPersistentData() {
+        synchronized (this.persistentWriteLock) {
+            try {
+                Udo newer = this.persistentData.readNewerData();
+                if (newer != null) {
+                    this.persistentCache.set(newer.readOnlyCopy());
+                }
+            } catch (UdoSerializationException e) {
+                this.libraryContext.getLogger().log(e, LogLevel.ERRORS);
+            }
+        }
+    }
+
     private Udo createNewPersistentData() {
         Udo data = new Udo();
         data.put(Key.TEALIUM_LIBRARY_NAME, "java");
@@ -111,8 +343,17 @@ public final class DataManager {
         return data;
     }
 
-    private static String getTimestampInSeconds() {
-        return String.valueOf(System.currentTimeMillis() / 1000);
+    /**
+     * @return the current epoch second, formatted once per second rather than once per event
+     */
+    private String getTimestampInSeconds() {
+        long seconds = System.currentTimeMillis() / 1000;
+        EpochSeconds cached = this.epochSeconds;
+        if (cached.seconds != seconds) {
+            cached = new EpochSeconds(seconds);
+            this.epochSeconds = cached;
+        }
+        return cached.formatted;
     }
 
     private static String getTimestampInMilliseconds() {
@@ -120,9 +361,24 @@ public final class DataManager {
     }
 
     private String getRandom() {
-        long randomNumber = randomGenerator.nextLong() % RANDOM_MAX_PLUS_ONE;
-        String stringRandom = String.format("%016d", Math.abs(randomNumber));
-        return stringRandom;
+        long randomNumber = Math.abs(randomGenerator.nextLong() % RANDOM_MAX_PLUS_ONE);
+        // zero padded to 16 digits, without the cost of String.format
+        char[] digits = new char[RANDOM_DIGITS];
+        for (int i = RANDOM_DIGITS - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + randomNumber % 10);
+            randomNumber /= 10;
+        }
+        return new String(digits);
+    }
+
+    private static final class EpochSeconds {
+        final long seconds;
+        final String formatted;
+
+        EpochSeconds(long seconds) {
+            this.seconds = seconds;
+            this.formatted = String.valueOf(seconds);
+        }
     }
 
     public static class Key {
@@ -162,6 +418,7 @@ public final class DataManager {
         public static final String ENCODED_URL = "encoded_url";
         public static final String RESPONSE_HEADERS = "response_headers";
         public static final String PAYLOAD = "payload";
+        public static final String TRUNCATED_KEYS = "truncated_keys";
 
     }
 }
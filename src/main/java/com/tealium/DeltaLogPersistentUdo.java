@@ -0,0 +1,279 @@
+package com.tealium;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Persistent data kept as a snapshot plus a log of what was added since.
+ *
+ * Each addition appends just the added variables to the log, one JSON
+ * object per line, so writing costs as much as the change rather than the
+ * whole udo. Once the log outgrows a threshold a background thread writes a
+ * new snapshot and drops the log entries it covers. Loading replays the log
+ * over the snapshot; a last line cut off by a crash is ignored.
+ *
+ * The snapshot is the same text file {@link PersistentUdo} writes, so
+ * switching modes keeps the data. Replaying an entry the snapshot already
+ * covers changes nothing, which is what makes a crash between writing a
+ * snapshot and trimming the log harmless.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+class DeltaLogPersistentUdo extends PersistentUdo {
+    static final long DEFAULT_COMPACTION_THRESHOLD = 64 * 1024;
+
+    private final Path logPath;
+    private final long compactionThreshold;
+    private final Executor compactor;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    // held while the snapshot is written, before this when both are needed
+    private final Object snapshotLock = new Object();
+    // guarded by this
+    private Udo latest = new Udo();
+    private long logBytes = 0;
+
+    /**
+     * @param snapshot
+     *            Where snapshots are written.
+     * @param logPath
+     *            Where additions are appended.
+     * @param compactionThreshold
+     *            Log size in bytes that triggers a new snapshot.
+     * @param compactor
+     *            Runs compactions.
+     */
+    DeltaLogPersistentUdo(TextStorage snapshot, Path logPath, long compactionThreshold, Executor compactor) {
+        super(snapshot);
+        if (compactionThreshold <= 0) {
+            throw new IllegalArgumentException("Compaction threshold should be greater than zero.");
+        }
+        this.logPath = logPath;
+        this.compactionThreshold = compactionThreshold;
+        this.compactor = compactor;
+    }
+
+    /**
+     * @return a single daemon thread that goes away when it has nothing to do
+     */
+    static Executor newCompactor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new DispatchExecutors.DaemonThreadFactory("tealium-compaction"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Override
+    public Udo readOrCreateUdo(Udo defaultData) throws UdoSerializationException {
+        synchronized (this.snapshotLock) {
+            synchronized (this) {
+                return this.load(defaultData);
+            }
+        }
+    }
+
+    /**
+     * Write a snapshot of everything and empty the log.
+     */
+    @Override
+    public void writeData(Udo data) throws UdoSerializationException {
+        synchronized (this.snapshotLock) {
+            synchronized (this) {
+                this.latest = data.readOnlyCopy();
+                if (this.writeStoredUdo(this.latest)) {
+                    try {
+                        Files.deleteIfExists(this.logPath);
+                        this.logBytes = 0;
+                    } catch (IOException e) {
+                        // replaying the old log over the new snapshot changes nothing
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Append the added variables to the log, and start a compaction if the log has grown too big.
+     */
+    @Override
+    void writeData(Udo data, Udo added) throws UdoSerializationException {
+        byte[] json = added.toJsonBytes();
+        byte[] entry = Arrays.copyOf(json, json.length + 1);
+        entry[json.length] = '\n';
+
+        boolean compact;
+        synchronized (this) {
+            try {
+                this.append(entry);
+            } catch (IOException e) {
+                // just use data in memory if can't write
+                return;
+            }
+            this.latest = data.readOnlyCopy();
+            this.logBytes += entry.length;
+            compact = this.logBytes >= this.compactionThreshold;
+        }
+
+        if (compact && this.compacting.compareAndSet(false, true)) {
+            try {
+                this.compactor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            compact();
+                        } finally {
+                            compacting.set(false);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                this.compacting.set(false);
+            }
+        }
+    }
+
+    /**
+     * Write a snapshot of the latest data, then drop the log entries it covers. Additions keep
+     * appending while the snapshot is written.
+     */
+    void compact() {
+        synchronized (this.snapshotLock) {
+            Udo snapshot;
+            long covered;
+            synchronized (this) {
+                snapshot = this.latest;
+                covered = this.logBytes;
+            }
+
+            try {
+                if (!this.writeStoredUdo(snapshot)) {
+                    return;
+                }
+                synchronized (this) {
+                    byte[] log = Files.readAllBytes(this.logPath);
+                    this.rewriteLog(Arrays.copyOfRange(log, (int) Math.min(covered, log.length), log.length));
+                    this.logBytes -= covered;
+                }
+            } catch (UdoSerializationException e) {
+                // the log still has everything
+            } catch (IOException e) {
+                // the log still has everything
+            }
+        }
+    }
+
+    /**
+     * @return bytes in the log
+     */
+    synchronized long getLogSize() {
+        return this.logBytes;
+    }
+
+    // =========================================================================
+    // PRIVATE
+    // =========================================================================
+
+    /**
+     * Replay the log over the snapshot. The caller must hold both locks.
+     */
+    private Udo load(Udo defaultData) throws UdoSerializationException {
+        Udo snapshot = this.readStoredUdo();
+        Udo loadedUdo = snapshot == null ? defaultData : snapshot;
+
+        byte[] log;
+        try {
+            log = Files.readAllBytes(this.logPath);
+        } catch (IOException e) {
+            log = new byte[0];
+        }
+
+        int start = 0;
+        for (int i = 0; i < log.length; i++) {
+            if (log[i] == '\n') {
+                try {
+                    loadedUdo.putAll(Udo.fromJson(new String(log, start, i - start, StandardCharsets.UTF_8)));
+                } catch (UdoDeserializationException e) {
+                    // skip an entry that can't be read rather than lose everything after it
+                }
+                start = i + 1;
+            }
+        }
+
+        if (snapshot == null) {
+            this.writeData(loadedUdo);
+            return loadedUdo;
+        }
+
+        this.latest = loadedUdo.readOnlyCopy();
+        this.logBytes = start;
+        if (start < log.length) {
+            // the last append was cut off, drop it so the next one starts on a line of its own
+            try {
+                this.rewriteLog(Arrays.copyOf(log, start));
+            } catch (IOException e) {
+                this.logBytes = log.length;
+            }
+        }
+        return loadedUdo;
+    }
+
+    /**
+     * Write the entry where the last whole one ended, over anything a failed append left behind.
+     * If this write fails too, the log is cut back so logBytes still matches it. The caller must
+     * hold this.
+     */
+    private void append(byte[] entry) throws IOException {
+        Files.createDirectories(this.logPath.getParent());
+        FileChannel channel = FileChannel.open(this.logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(entry);
+            long position = this.logBytes;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            if (channel.size() > position) {
+                channel.truncate(position);
+            }
+        } catch (IOException e) {
+            try {
+                channel.truncate(this.logBytes);
+            } catch (IOException truncateFailed) {
+                // the next append writes over it
+            }
+            throw e;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Replace the log in one step, so a crash leaves either the old or the new one.
+     */
+    private void rewriteLog(byte[] log) throws IOException {
+        Path temp = Files.createTempFile(this.logPath.getParent(), this.logPath.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, log);
+            try {
+                Files.move(temp, this.logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, this.logPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.tealium;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only overflow file for queued events, one JSON payload per line.
+ *
+ * Lines are read back from a remembered offset; once everything written has
+ * been read the file is truncated, so it only grows while the queue is
+ * actually overflowing. JSON never contains a raw line break, which makes
+ * newline framing safe.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class DiskSpool {
+    private final Path path;
+    private long readOffset = 0;
+    private int size = -1;
+
+    DiskSpool(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * @param json serialized payload
+     * @throws IOException if the spool file can't be written
+     */
+    synchronized void append(String json) throws IOException {
+        this.ensureSizeKnown();
+        Files.createDirectories(this.path.getParent());
+        OutputStream out = new FileOutputStream(this.path.toFile(), true);
+        try {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+            out.write('\n');
+        } finally {
+            out.close();
+        }
+        this.size++;
+    }
+
+    /**
+     * Read up to max payloads, oldest first.
+     */
+    synchronized List<String> poll(int max) throws IOException {
+        this.ensureSizeKnown();
+        List<String> lines = new ArrayList<String>();
+        if (!Files.isRegularFile(this.path)) {
+            this.size = 0;
+            this.readOffset = 0;
+            return lines;
+        }
+
+        FileInputStream file = new FileInputStream(this.path.toFile());
+        try {
+            FileChannel channel = file.getChannel();
+            channel.position(this.readOffset);
+            InputStream in = new BufferedInputStream(file);
+            ByteArrayOutputStream line = new ByteArrayOutputStream(512);
+            int b;
+            while (lines.size() < max && (b = in.read()) != -1) {
+                this.readOffset++;
+                if (b == '\n') {
+                    lines.add(new String(line.toByteArray(), StandardCharsets.UTF_8));
+                    line.reset();
+                } else {
+                    line.write(b);
+                }
+            }
+            // a partial line at the end is re-read next time
+            this.readOffset -= line.size();
+
+            if (this.readOffset >= channel.size()) {
+                this.truncate();
+            }
+        } finally {
+            file.close();
+        }
+
+        if (this.size > 0) {
+            this.size = Math.max(0, this.size - lines.size());
+        }
+        return lines;
+    }
+
+    /**
+     * @return the number of spooled events not yet read back
+     */
+    synchronized int size() {
+        try {
+            this.ensureSizeKnown();
+        } catch (IOException e) {
+            return 0;
+        }
+        return this.size;
+    }
+
+    private void truncate() throws IOException {
+        new FileOutputStream(this.path.toFile()).close();
+        this.readOffset = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Count lines left over from a previous run the first time the spool is used.
+     */
+    private void ensureSizeKnown() throws IOException {
+        if (this.size >= 0) {
+            return;
+        }
+        this.size = 0;
+        if (!Files.isRegularFile(this.path)) {
+            return;
+        }
+        InputStream in = new BufferedInputStream(new FileInputStream(this.path.toFile()));
+        try {
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') {
+                    this.size++;
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
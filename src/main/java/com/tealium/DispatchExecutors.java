@@ -0,0 +1,85 @@
+package com.tealium;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory for the executors that run asynchronous collect sends.
+ *
+ * On Java 21+ every send gets its own virtual thread, so the blocking
+ * HttpURLConnection code can have thousands of requests in flight without a
+ * platform thread each. The virtual thread API is looked up reflectively
+ * because the library is compiled for Java 7.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class DispatchExecutors {
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    private DispatchExecutors() {}
+
+    /**
+     * Create the executor for asynchronous sends.
+     *
+     * @param maxThreads
+     *            Size of the platform thread pool used when virtual threads aren't available.
+     * @param logger
+     * @return a virtual thread per task executor when supported, otherwise a bounded pool of daemon threads
+     */
+    static ExecutorService newDispatchExecutor(int maxThreads, Logger logger) {
+        ExecutorService virtualExecutor = newVirtualThreadExecutor();
+        if (virtualExecutor != null) {
+            logger.log("Dispatching on virtual threads.", LogLevel.VERBOSE);
+            return virtualExecutor;
+        }
+
+        logger.log(LogLevel.VERBOSE, "Dispatching on a pool of {} platform threads.", maxThreads);
+        return newPlatformExecutor(maxThreads);
+    }
+
+    /**
+     * @return a virtual thread per task executor, or null if the running JVM doesn't support virtual threads
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    static ThreadPoolExecutor newPlatformExecutor(int maxThreads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new DaemonThreadFactory("tealium-dispatch"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Names library threads and marks them as daemons so they never keep the host JVM alive.
+     */
+    static final class DaemonThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, this.prefix + "-" + this.count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.tealium;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Registry of counters and histograms describing track and dispatch activity
+ * for one Tealium instance.
+ *
+ * Everything is recorded with plain atomics so the hot path never locks;
+ * {@link #snapshot()} does the (comparatively) expensive copying when someone
+ * actually reads the numbers.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class DispatchMetrics {
+    /**
+     * Status code used for sends that never got an HTTP response.
+     */
+    static final int NO_RESPONSE = 0;
+
+    private final AtomicLong eventsTracked = new AtomicLong();
+    private final AtomicLong eventsDispatched = new AtomicLong();
+    private final AtomicLong eventsFailed = new AtomicLong();
+    private final AtomicLong eventsDropped = new AtomicLong();
+    private final AtomicLong eventsNotSampled = new AtomicLong();
+    private final AtomicLong eventsRateLimited = new AtomicLong();
+    private final AtomicLong duplicateHits = new AtomicLong();
+    private final AtomicLong duplicateMisses = new AtomicLong();
+    private final AtomicLong eventsOversized = new AtomicLong();
+    private final AtomicLong eventsBlocked = new AtomicLong();
+    private final AtomicLong eventsDroppedNewest = new AtomicLong();
+    private final AtomicLong eventsDroppedOldest = new AtomicLong();
+    private final AtomicLong eventsSampledOut = new AtomicLong();
+    private final AtomicLong eventsSpilled = new AtomicLong();
+    private final AtomicLong queueDepth = new AtomicLong();
+    private final AtomicLongArray laneQueued = new AtomicLongArray(PriorityLane.values().length);
+    private final AtomicLongArray laneDropped = new AtomicLongArray(PriorityLane.values().length);
+    private final AtomicLongArray laneDepth = new AtomicLongArray(PriorityLane.values().length);
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong warmConnectionSends = new AtomicLong();
+    private final AtomicLong coldConnectionSends = new AtomicLong();
+    private final AtomicLong connectionWarmups = new AtomicLong();
+    private final AtomicLong failovers = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final LatencyHistogram serializationTime = new LatencyHistogram();
+    private final LatencyHistogram httpLatency = new LatencyHistogram();
+    private final ConcurrentMap<Integer, LatencyHistogram> httpLatencyByStatus =
+            new ConcurrentHashMap<Integer, LatencyHistogram>();
+
+    void eventTracked() {
+        this.eventsTracked.incrementAndGet();
+    }
+
+    void eventDispatched() {
+        this.eventsDispatched.incrementAndGet();
+    }
+
+    void eventFailed() {
+        this.eventsFailed.incrementAndGet();
+    }
+
+    void eventDropped() {
+        this.eventsDropped.incrementAndGet();
+    }
+
+    void eventDropped(PriorityLane lane) {
+        this.eventsDropped.incrementAndGet();
+        this.laneDropped.incrementAndGet(lane.ordinal());
+    }
+
+    void eventNotSampled() {
+        this.eventsNotSampled.incrementAndGet();
+    }
+
+    void eventRateLimited() {
+        this.eventsRateLimited.incrementAndGet();
+    }
+
+    void duplicateHit() {
+        this.duplicateHits.incrementAndGet();
+    }
+
+    void duplicateMiss() {
+        this.duplicateMisses.incrementAndGet();
+    }
+
+    void eventOversized() {
+        this.eventsOversized.incrementAndGet();
+    }
+
+    void eventBlocked() {
+        this.eventsBlocked.incrementAndGet();
+    }
+
+    void eventDroppedNewest() {
+        this.eventsDroppedNewest.incrementAndGet();
+    }
+
+    void eventDroppedOldest() {
+        this.eventsDroppedOldest.incrementAndGet();
+    }
+
+    void eventSampledOut() {
+        this.eventsSampledOut.incrementAndGet();
+    }
+
+    void eventSpilled() {
+        this.eventsSpilled.incrementAndGet();
+    }
+
+    void queued(PriorityLane lane) {
+        this.queueDepth.incrementAndGet();
+        this.laneQueued.incrementAndGet(lane.ordinal());
+        this.laneDepth.incrementAndGet(lane.ordinal());
+    }
+
+    void dequeued(PriorityLane lane) {
+        this.queueDepth.decrementAndGet();
+        this.laneDepth.decrementAndGet(lane.ordinal());
+    }
+
+    void sendStarted() {
+        this.inFlight.incrementAndGet();
+    }
+
+    void sendFinished() {
+        this.inFlight.decrementAndGet();
+    }
+
+    /**
+     * @param warm true if the send found an idle connection, false if it had to open one
+     */
+    void connectionUsed(boolean warm) {
+        if (warm) {
+            this.warmConnectionSends.incrementAndGet();
+        } else {
+            this.coldConnectionSends.incrementAndGet();
+        }
+    }
+
+    void connectionWarmup() {
+        this.connectionWarmups.incrementAndGet();
+    }
+
+    /**
+     * A failed send is being retried on another endpoint.
+     */
+    void failover() {
+        this.failovers.incrementAndGet();
+    }
+
+    /**
+     * A slow send was duplicated.
+     */
+    void hedge() {
+        this.hedges.incrementAndGet();
+    }
+
+    /**
+     * A duplicate answered before the send it duplicated.
+     */
+    void hedgeWon() {
+        this.hedgeWins.incrementAndGet();
+    }
+
+    long getEventsTracked() {
+        return this.eventsTracked.get();
+    }
+
+    long getEventsDispatched() {
+        return this.eventsDispatched.get();
+    }
+
+    long getEventsFailed() {
+        return this.eventsFailed.get();
+    }
+
+    long getEventsDropped() {
+        return this.eventsDropped.get();
+    }
+
+    long getQueueDepth() {
+        return this.queueDepth.get();
+    }
+
+    long getInFlight() {
+        return this.inFlight.get();
+    }
+
+    long getWarmConnectionSends() {
+        return this.warmConnectionSends.get();
+    }
+
+    long getColdConnectionSends() {
+        return this.coldConnectionSends.get();
+    }
+
+    /**
+     * @param bytes size of the payload of one event, counted once however many attempts sent it
+     */
+    void bytesSent(long bytes) {
+        this.bytesSent.addAndGet(bytes);
+    }
+
+    void serializationTime(long nanos) {
+        this.serializationTime.record(nanos / 1000);
+    }
+
+    /**
+     * @param statusCode HTTP status, or {@link #NO_RESPONSE}
+     * @param nanos time from starting the send until the response or failure
+     */
+    void httpLatency(int statusCode, long nanos) {
+        long micros = nanos / 1000;
+        this.httpLatency.record(micros);
+        histogramForStatus(statusCode).record(micros);
+    }
+
+    LatencyHistogram getHttpLatency() {
+        return this.httpLatency;
+    }
+
+    MetricsSnapshot snapshot() {
+        Map<Integer, HistogramSnapshot> byStatus = new TreeMap<Integer, HistogramSnapshot>();
+        for (Map.Entry<Integer, LatencyHistogram> entry : this.httpLatencyByStatus.entrySet()) {
+            byStatus.put(entry.getKey(), entry.getValue().snapshot());
+        }
+
+        Map<PriorityLane, LaneSnapshot> lanes = new EnumMap<PriorityLane, LaneSnapshot>(PriorityLane.class);
+        for (PriorityLane lane : PriorityLane.values()) {
+            int i = lane.ordinal();
+            lanes.put(lane, new LaneSnapshot(this.laneQueued.get(i), this.laneDropped.get(i), this.laneDepth.get(i)));
+        }
+
+        return new MetricsSnapshot(
+                this.eventsTracked.get(),
+                this.eventsDispatched.get(),
+                this.eventsFailed.get(),
+                this.eventsDropped.get(),
+                this.eventsNotSampled.get(),
+                this.eventsRateLimited.get(),
+                this.duplicateHits.get(),
+                this.duplicateMisses.get(),
+                this.eventsOversized.get(),
+                this.eventsBlocked.get(),
+                this.eventsDroppedNewest.get(),
+                this.eventsDroppedOldest.get(),
+                this.eventsSampledOut.get(),
+                this.eventsSpilled.get(),
+                this.queueDepth.get(),
+                this.inFlight.get(),
+                this.bytesSent.get(),
+                this.warmConnectionSends.get(),
+                this.coldConnectionSends.get(),
+                this.connectionWarmups.get(),
+                this.failovers.get(),
+                this.hedges.get(),
+                this.hedgeWins.get(),
+                this.serializationTime.snapshot(),
+                this.httpLatency.snapshot(),
+                Collections.unmodifiableMap(byStatus),
+                Collections.unmodifiableMap(lanes));
+    }
+
+    private LatencyHistogram histogramForStatus(int statusCode) {
+        Integer key = statusCode;
+        LatencyHistogram histogram = this.httpLatencyByStatus.get(key);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = this.httpLatencyByStatus.putIfAbsent(key, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+}
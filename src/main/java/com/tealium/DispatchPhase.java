@@ -0,0 +1,21 @@
+package com.tealium;
+
+/**
+ * Names of the track and dispatch phases and outcomes reported to
+ * {@link JfrEvents}.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class DispatchPhase {
+    private DispatchPhase() {}
+
+    static final String ASSEMBLE = "assemble";
+    static final String SERIALIZE = "toJson";
+    static final String GET_CONNECTION = "getConnection";
+    static final String CONNECT = "connect";
+    static final String GET_RESPONSE_CODE = "getResponseCode";
+    static final String SEND = "send";
+
+    static final String OUTCOME_SUCCESS = "success";
+    static final String OUTCOME_FAILURE = "failure";
+}
@@ -0,0 +1,321 @@
+package com.tealium;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import com.tealium.Tealium.DispatchCallback;
+
+/**
+ * Bounded queue of tracked events in one {@link PriorityLane}, waiting for
+ * asynchronous dispatch.
+ *
+ * Events sit in a lock-free {@link BoundedRingBuffer}, so enqueueing on the
+ * tracking thread is a CAS rather than a lock. When producers outrun the
+ * network the {@link OverflowPolicy} decides which events give way, and
+ * every affected event is counted in {@link DispatchMetrics}.
+ *
+ * Offers may come from any thread; {@link #poll()} must only be called from
+ * the single sender thread, which waits on the {@link ConsumerSignal} for
+ * work.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class DispatchQueue {
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final int UNSPOOL_BATCH = 256;
+
+    private final PriorityLane lane;
+    private final BoundedRingBuffer<QueuedEvent> ring;
+    private final OverflowPolicy policy;
+    private final long blockTimeoutNanos;
+    private final DiskSpool spool;
+    private final DispatchMetrics metrics;
+    private final Logger logger;
+    private final DropListener dropListener;
+    private final ConsumerSignal signal;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * @param lane
+     *            The lane this queue holds.
+     * @param settings
+     *            Capacity, overflow policy and spool.
+     * @param dropListener
+     *            Told about every event the queue gives up on.
+     * @param signal
+     *            Signalled whenever an event becomes available.
+     */
+    DispatchQueue(PriorityLane lane, LaneSettings settings, LibraryContext context, DropListener dropListener,
+                  ConsumerSignal signal) {
+        if (settings.getOverflowPolicy() == OverflowPolicy.SPILL_TO_DISK && settings.getSpool() == null) {
+            throw new IllegalArgumentException("Spilling to disk requires a spool.");
+        }
+        this.lane = lane;
+        this.ring = new BoundedRingBuffer<QueuedEvent>(settings.getCapacity());
+        this.policy = settings.getOverflowPolicy();
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(settings.getBlockTimeoutMillis());
+        this.spool = settings.getSpool();
+        this.metrics = context.getMetrics();
+        this.logger = context.getLogger();
+        this.dropListener = dropListener;
+        this.signal = signal;
+        // events spooled by a previous run are owed a send too
+        this.pending.set(this.spoolSize());
+    }
+
+    /**
+     * Queue an event, applying the overflow policy if the queue is full.
+     *
+     * @return true if the event was queued or spooled
+     */
+    boolean offer(QueuedEvent event) {
+        if (this.policy == OverflowPolicy.SAMPLE && !this.sampleIn()) {
+            this.metrics.eventSampledOut();
+            this.drop(event, "Dispatch failed because the queue is shedding load");
+            return false;
+        }
+
+        if (this.enqueue(event)) {
+            return true;
+        }
+
+        switch (this.policy) {
+            case BLOCK:
+                this.metrics.eventBlocked();
+                long deadline = System.nanoTime() + this.blockTimeoutNanos;
+                while (System.nanoTime() - deadline < 0) {
+                    LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                    if (this.enqueue(event)) {
+                        return true;
+                    }
+                }
+                break;
+            case DROP_OLDEST:
+                QueuedEvent oldest;
+                while ((oldest = this.ring.poll()) != null) {
+                    this.pending.decrementAndGet();
+                    this.metrics.dequeued(this.lane);
+                    this.metrics.eventDroppedOldest();
+                    this.drop(oldest, "Dispatch failed because the queue was full and the event was the oldest");
+                    if (this.enqueue(event)) {
+                        return true;
+                    }
+                }
+                break;
+            case SPILL_TO_DISK:
+                if (this.spill(event)) {
+                    this.signal.signal();
+                    return true;
+                }
+                break;
+            default:
+                break;
+        }
+
+        this.metrics.eventDroppedNewest();
+        this.drop(event, "Dispatch failed because the queue is full");
+        return false;
+    }
+
+    /**
+     * Take the next event, reading back spooled events once memory is empty.
+     *
+     * @return the event, or null if there is none
+     */
+    QueuedEvent poll() {
+        QueuedEvent event = this.ring.poll();
+        if (event == null && this.unspool()) {
+            event = this.ring.poll();
+        }
+        if (event != null) {
+            this.metrics.dequeued(this.lane);
+        }
+        return event;
+    }
+
+    /**
+     * Mark a taken event as finished, whether it was delivered or not.
+     */
+    void done() {
+        this.pending.decrementAndGet();
+    }
+
+    /**
+     * @return events queued, spooled or taken and not yet {@link #done()}
+     */
+    int pending() {
+        return this.pending.get();
+    }
+
+    /**
+     * Empty the in-memory queue at shutdown. With a spool the events are written to it for the
+     * next run, otherwise they are dropped.
+     *
+     * @return the number of events removed
+     */
+    int drain() {
+        int drained = 0;
+        QueuedEvent event;
+        while ((event = this.ring.poll()) != null) {
+            drained++;
+            this.metrics.dequeued(this.lane);
+            this.pending.decrementAndGet();
+            if (!this.spill(event)) {
+                this.drop(event, "Dispatch failed because the dispatcher was closed");
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * @return events held in memory
+     */
+    int size() {
+        return this.ring.size();
+    }
+
+    /**
+     * @return events waiting in the spool file
+     */
+    int spoolSize() {
+        return this.spool == null ? 0 : this.spool.size();
+    }
+
+    boolean isEmpty() {
+        return this.ring.isEmpty() && this.spoolSize() == 0;
+    }
+
+    PriorityLane getLane() {
+        return this.lane;
+    }
+
+    // =========================================================================
+    // PRIVATE
+    // =========================================================================
+
+    private boolean enqueue(QueuedEvent event) {
+        if (!this.ring.offer(event)) {
+            return false;
+        }
+        this.pending.incrementAndGet();
+        this.metrics.queued(this.lane);
+        this.signal.signal();
+        return true;
+    }
+
+    /**
+     * @return true if the event was written to the spool
+     */
+    private boolean spill(QueuedEvent event) {
+        if (this.spool == null) {
+            return false;
+        }
+        try {
+            this.spool.append(event.getData().toJson());
+            this.pending.incrementAndGet();
+            this.metrics.eventSpilled();
+            return true;
+        } catch (IOException e) {
+            this.logger.log(e, LogLevel.ERRORS);
+        } catch (UdoSerializationException e) {
+            this.logger.log(e, LogLevel.ERRORS);
+        }
+        return false;
+    }
+
+    /**
+     * Random early drop: below half capacity everything is admitted, above it the chance of
+     * admission falls linearly to zero at full capacity.
+     */
+    private boolean sampleIn() {
+        int capacity = this.ring.capacity();
+        int half = capacity / 2;
+        int size = this.ring.size();
+        if (size <= half) {
+            return true;
+        }
+        return ThreadLocalRandom.current().nextInt(capacity - half) >= size - half;
+    }
+
+    /**
+     * Move a batch of spooled events back into memory, as long as there is room for them.
+     *
+     * @return true if any event was moved
+     */
+    private boolean unspool() {
+        if (this.spool == null || this.ring.size() > this.ring.capacity() / 2 || this.spool.size() == 0) {
+            return false;
+        }
+
+        List<String> payloads;
+        try {
+            payloads = this.spool.poll(Math.min(UNSPOOL_BATCH, this.ring.capacity() / 2 + 1));
+        } catch (IOException e) {
+            this.logger.log(e, LogLevel.ERRORS);
+            return false;
+        }
+
+        boolean moved = false;
+        for (String payload : payloads) {
+            try {
+                QueuedEvent event = new QueuedEvent(Udo.fromJson(payload), null, this.lane);
+                if (this.ring.offer(event)) {
+                    this.metrics.queued(this.lane);
+                    moved = true;
+                } else {
+                    this.spool.append(payload);
+                }
+            } catch (UdoDeserializationException e) {
+                this.pending.decrementAndGet();
+                this.logger.log(e, LogLevel.ERRORS);
+            } catch (IOException e) {
+                this.pending.decrementAndGet();
+                this.logger.log(e, LogLevel.ERRORS);
+            }
+        }
+        return moved;
+    }
+
+    private void drop(QueuedEvent event, String reason) {
+        this.metrics.eventDropped(this.lane);
+        this.dropListener.dropped(event, reason);
+    }
+
+    /**
+     * A tracked event, its callback and the lane it's queued in.
+     */
+    static final class QueuedEvent {
+        private final Udo data;
+        private final DispatchCallback callback;
+        private final PriorityLane lane;
+
+        QueuedEvent(Udo data, DispatchCallback callback, PriorityLane lane) {
+            this.data = data;
+            this.callback = callback;
+            this.lane = lane;
+        }
+
+        PriorityLane getLane() {
+            return lane;
+        }
+
+        Udo getData() {
+            return data;
+        }
+
+        DispatchCallback getCallback() {
+            return callback;
+        }
+    }
+
+    /**
+     * Told about events the queue gives up on, so their callbacks can be failed.
+     */
+    interface DropListener {
+        void dropped(QueuedEvent event, String reason);
+    }
+}
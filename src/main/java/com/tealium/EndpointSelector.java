@@ -0,0 +1,184 @@
+package com.tealium;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Health and latency of each collect endpoint, for routing sends to the
+ * best one and failing over when one goes down.
+ *
+ * Each endpoint keeps an exponentially weighted moving average of its
+ * response times. A send goes to the healthy endpoint with the lowest
+ * average, scaled by the sends it already has in flight so that load spreads
+ * out as an endpoint slows down. An endpoint that hasn't answered yet counts
+ * as the fastest, so every endpoint gets measured.
+ *
+ * After a run of failed sends an endpoint is ejected for a backoff period,
+ * doubling each time it fails again straight after coming back, up to a
+ * limit. Once the backoff is over the next send tries it again, and one
+ * success makes it healthy. When every endpoint is ejected, sends go to the
+ * one coming back soonest rather than nowhere.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class EndpointSelector {
+    // most endpoints that fit in the tried mask
+    static final int MAX_ENDPOINTS = 64;
+    static final int FAILURES_TO_EJECT = 3;
+    static final long MIN_EJECTION = TimeUnit.SECONDS.toNanos(1);
+    static final long MAX_EJECTION = TimeUnit.SECONDS.toNanos(60);
+    // weight of the newest response time in the average
+    private static final double ALPHA = 0.2;
+
+    private final Endpoint[] endpoints;
+
+    /**
+     * @param urls
+     *            Collect endpoints, the first one preferred while nothing is known about the others.
+     */
+    EndpointSelector(List<String> urls) {
+        if (urls == null || urls.isEmpty() || urls.size() > MAX_ENDPOINTS) {
+            throw new IllegalArgumentException("Invalid endpoints.");
+        }
+
+        this.endpoints = new Endpoint[urls.size()];
+        for (int i = 0; i < this.endpoints.length; i++) {
+            if (urls.get(i) == null) {
+                throw new IllegalArgumentException("Invalid endpoints.");
+            }
+            this.endpoints[i] = new Endpoint(urls.get(i));
+        }
+    }
+
+    int size() {
+        return this.endpoints.length;
+    }
+
+    String getUrl(int index) {
+        return this.endpoints[index].url;
+    }
+
+    /**
+     * Pick the endpoint for a send.
+     *
+     * @param tried
+     *            Mask of the endpoints this event already failed on, bit i for endpoint i.
+     * @return index of the endpoint, or -1 if every endpoint has been tried
+     */
+    int select(long tried) {
+        return this.select(tried, System.nanoTime());
+    }
+
+    int select(long tried, long nowNanos) {
+        if (this.endpoints.length == 1) {
+            return tried == 0 ? 0 : -1;
+        }
+
+        int best = -1;
+        double bestScore = Double.MAX_VALUE;
+        int soonest = -1;
+        long soonestBack = Long.MAX_VALUE;
+        for (int i = 0; i < this.endpoints.length; i++) {
+            if ((tried & (1L << i)) != 0) {
+                continue;
+            }
+
+            Endpoint endpoint = this.endpoints[i];
+            if (ejected(endpoint, nowNanos)) {
+                long back = endpoint.ejectedUntil - nowNanos;
+                if (back < soonestBack) {
+                    soonest = i;
+                    soonestBack = back;
+                }
+                continue;
+            }
+
+            double score = endpoint.latency * (endpoint.inFlight.get() + 1);
+            if (score < bestScore) {
+                best = i;
+                bestScore = score;
+            }
+        }
+        return best >= 0 ? best : soonest;
+    }
+
+    /**
+     * A send to the endpoint is starting.
+     */
+    void started(int index) {
+        this.endpoints[index].inFlight.incrementAndGet();
+    }
+
+    /**
+     * A send to the endpoint finished.
+     *
+     * @param latencyNanos
+     *            Time the send took.
+     * @param healthy
+     *            False if the endpoint failed or looked overloaded.
+     */
+    void finished(int index, long latencyNanos, boolean healthy) {
+        this.finished(index, latencyNanos, healthy, System.nanoTime());
+    }
+
+    void finished(int index, long latencyNanos, boolean healthy, long nowNanos) {
+        Endpoint endpoint = this.endpoints[index];
+        endpoint.inFlight.decrementAndGet();
+        synchronized (endpoint) {
+            if (healthy) {
+                endpoint.latency = endpoint.latency == 0
+                        ? latencyNanos
+                        : endpoint.latency + ALPHA * (latencyNanos - endpoint.latency);
+                endpoint.failures = 0;
+                endpoint.ejection = 0;
+                return;
+            }
+
+            if (++endpoint.failures >= FAILURES_TO_EJECT && !ejected(endpoint, nowNanos)) {
+                long ejection = endpoint.ejection == 0
+                        ? MIN_EJECTION
+                        : Math.min(MAX_EJECTION, endpoint.ejection * 2);
+                endpoint.ejectedUntil = nowNanos + ejection;
+                endpoint.ejection = ejection;
+            }
+        }
+    }
+
+    /**
+     * @return false if the endpoint is ejected
+     */
+    boolean isHealthy(int index) {
+        return this.isHealthy(index, System.nanoTime());
+    }
+
+    boolean isHealthy(int index, long nowNanos) {
+        return !ejected(this.endpoints[index], nowNanos);
+    }
+
+    /**
+     * @return moving average of the endpoint's response times in nanoseconds, 0 before it has answered
+     */
+    long getLatency(int index) {
+        return (long) this.endpoints[index].latency;
+    }
+
+    private static boolean ejected(Endpoint endpoint, long nowNanos) {
+        return endpoint.ejection != 0 && endpoint.ejectedUntil - nowNanos > 0;
+    }
+
+    private static final class Endpoint {
+        final String url;
+        final AtomicInteger inFlight = new AtomicInteger();
+        // written while holding the endpoint
+        volatile double latency = 0;
+        volatile long ejectedUntil = 0;
+        // current backoff, 0 while healthy
+        volatile long ejection = 0;
+        int failures = 0;
+
+        Endpoint(String url) {
+            this.url = url;
+        }
+    }
+}
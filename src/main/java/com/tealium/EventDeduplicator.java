@@ -0,0 +1,108 @@
+package com.tealium;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Suppresses repeated track calls for the same business event, e.g. when an
+ * upstream retry calls track twice.
+ *
+ * An event's fingerprint is a 64-bit hash of the values of a chosen set of
+ * keys, and fingerprints seen within the window are remembered in a
+ * {@link RotatingBloomFilter}, so memory stays fixed however many events
+ * are tracked. Events with none of the keys are never suppressed.
+ *
+ * A fingerprint is only remembered once its event was delivered, so the retry
+ * of an event whose send failed still goes out. The flip side is that a
+ * repeat tracked while the first send is still in flight isn't caught.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class EventDeduplicator {
+    // fingerprint of an event with none of the keys
+    static final long NONE = 0;
+
+    private final List<String> keys;
+    private final RotatingBloomFilter seen;
+
+    /**
+     * @param keys
+     *            Keys whose values identify an event.
+     * @param windowMillis
+     *            How long a fingerprint is remembered. Repeats are caught for at least half of it.
+     * @param expectedPerWindow
+     *            Events expected per window.
+     * @param falsePositiveRate
+     *            Chance of suppressing an event that wasn't a repeat, while the expected rate holds.
+     */
+    EventDeduplicator(Collection<String> keys, long windowMillis, int expectedPerWindow, double falsePositiveRate) {
+        this.keys = Collections.unmodifiableList(new ArrayList<String>(keys));
+        this.seen = new RotatingBloomFilter(windowMillis * 1000000L, expectedPerWindow, falsePositiveRate);
+    }
+
+    /**
+     * @param payload
+     *            The assembled payload.
+     * @return the event's fingerprint, or {@link #NONE} if it has none of the keys
+     */
+    long fingerprint(Udo payload) {
+        long hash = Hash64.SEED;
+        boolean found = false;
+        for (String key : this.keys) {
+            Object value = payload.get(key);
+            hash = Hash64.separator(Hash64.update(hash, key));
+            if (value == null) {
+                continue;
+            }
+            found = true;
+            if (value instanceof List) {
+                for (Object element : (List<?>) value) {
+                    hash = Hash64.separator(Hash64.update(hash, String.valueOf(element)));
+                }
+            } else {
+                hash = Hash64.update(hash, value.toString());
+            }
+            hash = Hash64.separator(hash);
+        }
+
+        // the rare event hashing to NONE is just never suppressed
+        return found ? Hash64.mix(hash) : NONE;
+    }
+
+    /**
+     * @return true if an event with the fingerprint was delivered within the window
+     */
+    boolean isDuplicate(long fingerprint) {
+        return fingerprint != NONE && this.seen.contains(fingerprint);
+    }
+
+    /**
+     * Remember the fingerprint once an event with it is delivered.
+     */
+    void delivered(long fingerprint) {
+        if (fingerprint != NONE) {
+            this.seen.add(fingerprint);
+        }
+    }
+
+    /**
+     * @return a callback that remembers the fingerprint if the event is delivered, then calls the
+     *         given one
+     */
+    Tealium.DispatchCallback whenDelivered(final long fingerprint, final Tealium.DispatchCallback callback) {
+        return new Tealium.DispatchCallback() {
+            @Override
+            public void dispatchComplete(boolean success, Map<String, Object> info, String error) {
+                if (success) {
+                    delivered(fingerprint);
+                }
+                if (callback != null) {
+                    callback.dispatchComplete(success, info, error);
+                }
+            }
+        };
+    }
+}
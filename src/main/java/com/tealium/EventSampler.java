@@ -0,0 +1,88 @@
+package com.tealium;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.tealium.DataManager.EventType;
+import com.tealium.DataManager.Key;
+
+/**
+ * Decides, before a payload is assembled, whether a tracked event is sent at
+ * all: first by a per event type sampling rate, then by a per event type
+ * {@link TokenBucket}. Conversion events are never sampled or rate limited.
+ *
+ * Sampling hashes tealium_visitor_id, so a visitor is either in or out of the
+ * sample for every event of a type. Events without a visitor id are sampled
+ * at random.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class EventSampler {
+    /**
+     * Result of {@link #admit}.
+     */
+    enum Decision {
+        ADMITTED,
+        NOT_SAMPLED,
+        RATE_LIMITED
+    }
+
+    private static final double UNIT = 1.0 / (1L << 53);
+
+    private final Map<String, Double> samplingRates;
+    private final Map<String, TokenBucket> rateLimits;
+
+    /**
+     * @param samplingRates
+     *            Share of visitors to keep per event type, 0 to 1.
+     * @param rateLimits
+     *            Rate limit per event type.
+     */
+    EventSampler(Map<String, Double> samplingRates, Map<String, TokenBucket> rateLimits) {
+        this.samplingRates = Collections.unmodifiableMap(new HashMap<String, Double>(samplingRates));
+        this.rateLimits = Collections.unmodifiableMap(new HashMap<String, TokenBucket>(rateLimits));
+    }
+
+    /**
+     * @param eventType
+     * @param eventData
+     *            Data passed to track, checked first for the visitor id. May be null.
+     * @param persistentData
+     *            Persistent data, checked for the visitor id if the event data has none.
+     */
+    Decision admit(String eventType, Udo eventData, Udo persistentData) {
+        if (EventType.CONVERSION.equals(eventType)) {
+            return Decision.ADMITTED;
+        }
+
+        Double rate = this.samplingRates.get(eventType);
+        if (rate != null) {
+            Object visitorId = eventData == null ? null : eventData.get(Key.TEALIUM_VISITOR_ID);
+            if (visitorId == null) {
+                visitorId = persistentData.get(Key.TEALIUM_VISITOR_ID);
+            }
+            double position = visitorId == null
+                    ? ThreadLocalRandom.current().nextDouble()
+                    : samplePosition(visitorId.toString());
+            if (position >= rate) {
+                return Decision.NOT_SAMPLED;
+            }
+        }
+
+        TokenBucket bucket = this.rateLimits.get(eventType);
+        if (bucket != null && !bucket.tryAcquire()) {
+            return Decision.RATE_LIMITED;
+        }
+
+        return Decision.ADMITTED;
+    }
+
+    /**
+     * Map a visitor id uniformly onto [0, 1).
+     */
+    static double samplePosition(String visitorId) {
+        return (Hash64.hash(visitorId) >>> 11) * UNIT;
+    }
+}
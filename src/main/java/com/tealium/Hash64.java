@@ -0,0 +1,54 @@
+package com.tealium;
+
+/**
+ * 64-bit FNV-1a hashing with a final avalanche mix, for fingerprints that
+ * need to be stable across runs and JVMs (unlike {@link String#hashCode()}
+ * they are 64 bits wide, and similar inputs land far apart).
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class Hash64 {
+    static final long SEED = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Hash64() {
+    }
+
+    /**
+     * Hash the UTF-16 code units of a string into a running hash.
+     */
+    static long update(long hash, CharSequence value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash ^= c & 0xff;
+            hash *= FNV_PRIME;
+            hash ^= c >>> 8;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Hash a separator into a running hash, so ("ab", "c") and ("a", "bc") differ.
+     */
+    static long separator(long hash) {
+        hash ^= 0xff;
+        return hash * FNV_PRIME;
+    }
+
+    /**
+     * Final mix (MurmurHash3's fmix64), so every input bit affects every output bit.
+     */
+    static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    static long hash(CharSequence value) {
+        return mix(update(SEED, value));
+    }
+}
@@ -0,0 +1,103 @@
+package com.tealium;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * When to hedge a send, and how many hedges are allowed.
+ *
+ * A send still going after a high percentile of recent collect latency is
+ * likely stuck on a bad connection or a slow server, and a duplicate sent
+ * then usually answers first. The delay is read from the live latency
+ * histogram, at most once a second since reading it copies the buckets, and
+ * there is no hedging until the histogram has enough samples to say.
+ *
+ * Hedges are paid for from a budget: each send adds its share of the
+ * allowed percentage, and each hedge takes a whole one. The budget holds
+ * a few hedges at most, so a slow spell after a quiet one can't set off a
+ * burst of duplicates.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class HedgePolicy {
+    static final long MIN_SAMPLES = 100;
+    private static final long REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // budget units per hedge
+    private static final long HEDGE_COST = 1000000;
+    private static final long MAX_BUDGET = 10 * HEDGE_COST;
+
+    private final double percentile;
+    private final long sendCredit;
+    private final LatencyHistogram latency;
+    private final AtomicLong budget = new AtomicLong();
+    private final AtomicLong nextRefresh;
+    // -1 until there are enough samples
+    private volatile long delayNanos = -1;
+
+    /**
+     * @param percentile
+     *            Latency percentile after which a send is hedged, e.g. 95.
+     * @param maxHedgePercent
+     *            Most hedges as a percentage of sends.
+     * @param latency
+     *            Collect latency in microseconds.
+     */
+    HedgePolicy(double percentile, double maxHedgePercent, LatencyHistogram latency) {
+        this(percentile, maxHedgePercent, latency, System.nanoTime());
+    }
+
+    HedgePolicy(double percentile, double maxHedgePercent, LatencyHistogram latency, long nowNanos) {
+        if (!(percentile > 0 && percentile < 100)) {
+            throw new IllegalArgumentException("Hedge percentile should be between 0 and 100.");
+        }
+        if (!(maxHedgePercent > 0 && maxHedgePercent <= 100)) {
+            throw new IllegalArgumentException("Max hedge percent should be between 0 and 100.");
+        }
+
+        this.percentile = percentile;
+        this.sendCredit = (long) (maxHedgePercent / 100 * HEDGE_COST);
+        this.latency = latency;
+        this.nextRefresh = new AtomicLong(nowNanos);
+    }
+
+    /**
+     * Count a send towards the hedge budget.
+     *
+     * @return how long to wait before hedging the send, or -1 not to hedge it
+     */
+    long sent() {
+        return this.sent(System.nanoTime());
+    }
+
+    long sent(long nowNanos) {
+        long budget;
+        while ((budget = this.budget.get()) < MAX_BUDGET) {
+            if (this.budget.compareAndSet(budget, Math.min(MAX_BUDGET, budget + this.sendCredit))) {
+                break;
+            }
+        }
+
+        long next = this.nextRefresh.get();
+        if (nowNanos - next >= 0 && this.nextRefresh.compareAndSet(next, nowNanos + REFRESH_NANOS)) {
+            this.delayNanos = this.latency.getCount() < MIN_SAMPLES
+                    ? -1
+                    : TimeUnit.MICROSECONDS.toNanos(this.latency.snapshot().getValueAtPercentile(this.percentile));
+        }
+        return this.delayNanos;
+    }
+
+    /**
+     * Take a hedge from the budget.
+     *
+     * @return false if the budget is spent
+     */
+    boolean tryHedge() {
+        long budget;
+        while ((budget = this.budget.get()) >= HEDGE_COST) {
+            if (this.budget.compareAndSet(budget, budget - HEDGE_COST)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
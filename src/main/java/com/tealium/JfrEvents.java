@@ -0,0 +1,37 @@
+package com.tealium;
+
+/**
+ * Java Flight Recorder instrumentation for the track and dispatch hot paths.
+ *
+ * JFR events need Java 11, so this Java 7 implementation does nothing; the
+ * multi-release jar overrides it under META-INF/versions/11 with one that
+ * emits com.tealium.Track, com.tealium.DispatchPhase and
+ * com.tealium.PersistentWrite events. Each begin method returns an opaque
+ * handle (null here) that must be passed to the matching commit method.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class JfrEvents {
+    private JfrEvents() {}
+
+    static Object beginTrack() {
+        return null;
+    }
+
+    static void commitTrack(Object event, String eventType, int payloadKeys, String outcome) {
+    }
+
+    static Object beginPhase() {
+        return null;
+    }
+
+    static void commitPhase(Object event, String phase, long payloadBytes, String outcome) {
+    }
+
+    static Object beginPersistentWrite() {
+        return null;
+    }
+
+    static void commitPersistentWrite(Object event, long payloadBytes, String outcome) {
+    }
+}
@@ -0,0 +1,44 @@
+package com.tealium;
+
+import java.util.logging.Level;
+
+/**
+ * {@link LogHandler} that forwards library logging to java.util.logging,
+ * and from there to whatever the host application has bridged it to.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public final class JulLogHandler implements LogHandler {
+    private final java.util.logging.Logger logger;
+
+    /**
+     * Log to the "com.tealium" java.util.logging logger.
+     */
+    public JulLogHandler() {
+        this(java.util.logging.Logger.getLogger("com.tealium"));
+    }
+
+    public JulLogHandler(java.util.logging.Logger logger) {
+        if (logger == null) {
+            throw new IllegalArgumentException("Invalid logger.");
+        }
+        this.logger = logger;
+    }
+
+    @Override
+    public void publish(LogLevel level, String message, Throwable thrown) {
+        Level julLevel;
+        switch (level) {
+            case ERRORS:
+                julLevel = Level.SEVERE;
+                break;
+            case WARNINGS:
+                julLevel = Level.WARNING;
+                break;
+            default:
+                julLevel = Level.FINE;
+                break;
+        }
+        this.logger.log(julLevel, message, thrown);
+    }
+}
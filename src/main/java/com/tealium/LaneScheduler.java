@@ -0,0 +1,184 @@
+package com.tealium;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.tealium.DispatchQueue.DropListener;
+import com.tealium.DispatchQueue.QueuedEvent;
+
+/**
+ * One {@link DispatchQueue} per {@link PriorityLane}, drained by weight.
+ *
+ * Lanes are picked with smooth weighted round robin: every pick each lane with
+ * events waiting earns its weight in credit, the richest lane is taken and
+ * pays back the total. With weights 8, 4 and 1 and every lane backed up, 8 of
+ * every 13 sends are high priority, spread out rather than in bursts, and no
+ * lane with events is ever starved. Lanes without events earn nothing, so an
+ * idle lane can't save up credit and burst later.
+ *
+ * Offers may come from any thread; {@link #take(long, TimeUnit)} must only be
+ * called from the single sender thread.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class LaneScheduler {
+    private final DispatchQueue[] queues;
+    private final int[] weights;
+    private final int[] credits;
+    private final ConsumerSignal signal = new ConsumerSignal();
+    private final ConsumerSignal.Idle idle = new ConsumerSignal.Idle() {
+        @Override
+        public boolean isIdle() {
+            for (DispatchQueue queue : queues) {
+                if (!queue.isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    };
+
+    /**
+     * @param settings
+     *            Settings for each lane, lanes missing from the map get {@link LaneSettings#defaults}.
+     * @param dropListener
+     *            Told about every event a lane gives up on.
+     */
+    LaneScheduler(Map<PriorityLane, LaneSettings> settings, LibraryContext context, DropListener dropListener) {
+        PriorityLane[] lanes = PriorityLane.values();
+        this.queues = new DispatchQueue[lanes.length];
+        this.weights = new int[lanes.length];
+        this.credits = new int[lanes.length];
+        for (PriorityLane lane : lanes) {
+            LaneSettings laneSettings = settings == null ? null : settings.get(lane);
+            if (laneSettings == null) {
+                laneSettings = LaneSettings.defaults(lane);
+            }
+            this.queues[lane.ordinal()] = new DispatchQueue(lane, laneSettings, context, dropListener, this.signal);
+            this.weights[lane.ordinal()] = laneSettings.getWeight();
+        }
+    }
+
+    /**
+     * Queue an event in its lane, applying that lane's overflow policy if it's full.
+     *
+     * @return true if the event was queued or spooled
+     */
+    boolean offer(QueuedEvent event) {
+        return this.queues[event.getLane().ordinal()].offer(event);
+    }
+
+    /**
+     * Wait for the next event, picking between lanes with events by weight.
+     *
+     * @return the event, or null if none arrived within the timeout or the thread was interrupted
+     */
+    QueuedEvent take(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            QueuedEvent event = this.next();
+            if (event != null) {
+                return event;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            this.signal.await(remaining, this.idle);
+        }
+    }
+
+    /**
+     * Mark a taken event as finished, whether it was delivered or not.
+     */
+    void done(QueuedEvent event) {
+        this.queues[event.getLane().ordinal()].done();
+    }
+
+    /**
+     * @return events queued, spooled or taken and not yet {@link #done} across all lanes
+     */
+    int pending() {
+        int pending = 0;
+        for (DispatchQueue queue : this.queues) {
+            pending += queue.pending();
+        }
+        return pending;
+    }
+
+    /**
+     * Empty every lane at shutdown, see {@link DispatchQueue#drain()}.
+     *
+     * @return the number of events removed
+     */
+    int drain() {
+        int drained = 0;
+        for (DispatchQueue queue : this.queues) {
+            drained += queue.drain();
+        }
+        return drained;
+    }
+
+    /**
+     * @return events held in memory across all lanes
+     */
+    int size() {
+        int size = 0;
+        for (DispatchQueue queue : this.queues) {
+            size += queue.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return events waiting in spool files across all lanes
+     */
+    int spoolSize() {
+        int size = 0;
+        for (DispatchQueue queue : this.queues) {
+            size += queue.spoolSize();
+        }
+        return size;
+    }
+
+    DispatchQueue getQueue(PriorityLane lane) {
+        return this.queues[lane.ordinal()];
+    }
+
+    // =========================================================================
+    // PRIVATE
+    // =========================================================================
+
+    /**
+     * @return an event from the lane owed the most sends, or null if every lane is empty
+     */
+    private QueuedEvent next() {
+        int remaining = this.queues.length;
+        while (remaining-- > 0) {
+            int total = 0;
+            int best = -1;
+            for (int i = 0; i < this.queues.length; i++) {
+                if (this.queues[i].isEmpty()) {
+                    this.credits[i] = 0;
+                    continue;
+                }
+                this.credits[i] += this.weights[i];
+                total += this.weights[i];
+                if (best < 0 || this.credits[i] > this.credits[best]) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                return null;
+            }
+
+            this.credits[best] -= total;
+            QueuedEvent event = this.queues[best].poll();
+            if (event != null) {
+                return event;
+            }
+            // a producer dropped the lane's oldest events first, try the others
+        }
+        return null;
+    }
+}
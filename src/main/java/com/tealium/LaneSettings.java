@@ -0,0 +1,65 @@
+package com.tealium;
+
+/**
+ * Queue settings for one {@link PriorityLane} of asynchronous dispatch.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class LaneSettings {
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutMillis;
+    private final int weight;
+    private final DiskSpool spool;
+
+    /**
+     * @param capacity
+     *            Maximum number of events held in memory.
+     * @param overflowPolicy
+     *            What to do when full.
+     * @param blockTimeoutMillis
+     *            How long {@link OverflowPolicy#BLOCK} waits for room.
+     * @param weight
+     *            Share of sends while other lanes have events waiting.
+     * @param spool
+     *            Overflow file for {@link OverflowPolicy#SPILL_TO_DISK}, otherwise null.
+     */
+    LaneSettings(int capacity, OverflowPolicy overflowPolicy, long blockTimeoutMillis, int weight, DiskSpool spool) {
+        if (capacity <= 0 || weight <= 0) {
+            throw new IllegalArgumentException("Lane capacity and weight should be greater than zero.");
+        }
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        this.weight = weight;
+        this.spool = spool;
+    }
+
+    /**
+     * @return settings for a lane with the default capacity and weight, dropping new events when full
+     */
+    static LaneSettings defaults(PriorityLane lane) {
+        return new LaneSettings(CollectDispatcher.DEFAULT_QUEUE_CAPACITY, OverflowPolicy.DROP_NEWEST, 0,
+                lane.getDefaultWeight(), null);
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    long getBlockTimeoutMillis() {
+        return blockTimeoutMillis;
+    }
+
+    int getWeight() {
+        return weight;
+    }
+
+    DiskSpool getSpool() {
+        return spool;
+    }
+}
@@ -0,0 +1,47 @@
+package com.tealium;
+
+/**
+ * Point in time copy of the queue metrics of one {@link PriorityLane}.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public final class LaneSnapshot {
+    private final long eventsQueued;
+    private final long eventsDropped;
+    private final long queueDepth;
+
+    LaneSnapshot(long eventsQueued, long eventsDropped, long queueDepth) {
+        this.eventsQueued = eventsQueued;
+        this.eventsDropped = eventsDropped;
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * @return number of events that entered the lane's in-memory queue, including ones read back
+     *         from its spool
+     */
+    public long getEventsQueued() {
+        return eventsQueued;
+    }
+
+    /**
+     * @return number of events the lane gave up on without a send attempt
+     */
+    public long getEventsDropped() {
+        return eventsDropped;
+    }
+
+    /**
+     * @return number of events waiting in the lane's in-memory queue
+     */
+    public long getQueueDepth() {
+        return queueDepth;
+    }
+
+    @Override
+    public String toString() {
+        return "queued=" + eventsQueued
+                + " dropped=" + eventsDropped
+                + " queueDepth=" + queueDepth;
+    }
+}
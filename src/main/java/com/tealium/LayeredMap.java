@@ -0,0 +1,343 @@
+package com.tealium;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Map of udo variables made of immutable entries, which are shared rather
+ * than copied between maps built from one another.
+ *
+ * A frozen map can't be changed, so it's safe to share between threads
+ * without locking. A layer starts out with a frozen map's entries and keeps
+ * its own changes in a small array in front of them, so making one costs the
+ * same however many variables it starts with. Freezing a layer builds a new
+ * array out of the same entry objects. Lookups are linear scans, which for
+ * the dozen or so variables an event carries is as quick as hashing and
+ * allocates far less. Past INDEX_THRESHOLD entries a base or a layer gets a
+ * hashed index of its keys, so large udos don't pay a scan per lookup; a
+ * base's index is built with it and shared along with its entries.
+ *
+ * Keys and values are never null; an entry with a null value in a layer hides
+ * a removed variable.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class LayeredMap extends AbstractMap<String, Object> {
+    private static final int INITIAL_LAYER_CAPACITY = 12;
+    // entries past which lookups go through a hashed index instead of a scan
+    static final int INDEX_THRESHOLD = 16;
+    private static final Entry<String, Object>[] NO_ENTRIES = newEntries(0);
+
+    private final boolean frozen;
+    private Entry<String, Object>[] base;
+    // key to position in base, null while base is small enough to scan
+    private Map<String, Integer> baseIndex;
+    private Entry<String, Object>[] layer;
+    // key to position in layer, null while layer is small enough to scan
+    private Map<String, Integer> layerIndex;
+    private int layerSize = 0;
+    private int size;
+    private Set<Entry<String, Object>> entrySet;
+
+    private LayeredMap(Entry<String, Object>[] base, Map<String, Integer> baseIndex, boolean frozen) {
+        this.frozen = frozen;
+        this.base = base;
+        this.baseIndex = baseIndex;
+        this.layer = frozen ? NO_ENTRIES : newEntries(INITIAL_LAYER_CAPACITY);
+        this.size = base.length;
+    }
+
+    /**
+     * @param map
+     *            Variables to copy, none of them null.
+     * @return a frozen map with the same variables
+     */
+    static LayeredMap frozenCopyOf(Map<String, Object> map) {
+        if (map instanceof LayeredMap) {
+            return ((LayeredMap) map).freeze();
+        }
+
+        Entry<String, Object>[] entries = newEntries(map.size());
+        int count = 0;
+        for (Entry<String, Object> entry : map.entrySet()) {
+            entries[count++] = frozenEntry(entry.getKey(), entry.getValue());
+        }
+        return new LayeredMap(entries, indexOf(entries), true);
+    }
+
+    /**
+     * @return true if this map can't be changed
+     */
+    boolean isFrozen() {
+        return this.frozen;
+    }
+
+    /**
+     * @return a frozen map with the same variables, or this map if it's already frozen
+     */
+    LayeredMap freeze() {
+        if (this.frozen) {
+            return this;
+        }
+
+        Entry<String, Object>[] entries = newEntries(this.size);
+        int count = 0;
+        for (int i = 0; i < this.layerSize; i++) {
+            Entry<String, Object> entry = this.layer[i];
+            if (entry.getValue() != null) {
+                entries[count++] = frozenEntry(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Entry<String, Object> entry : this.base) {
+            if (this.layerIndex(entry.getKey()) < 0) {
+                entries[count++] = entry;
+            }
+        }
+        return new LayeredMap(entries, indexOf(entries), true);
+    }
+
+    /**
+     * @return a new changeable map that starts out with this map's variables
+     */
+    LayeredMap layer() {
+        LayeredMap frozen = this.freeze();
+        return new LayeredMap(frozen.base, frozen.baseIndex, false);
+    }
+
+    @Override
+    public Object get(Object key) {
+        int index = this.layerIndex(key);
+        if (index >= 0) {
+            return this.layer[index].getValue();
+        }
+        index = this.baseIndex(key);
+        return index < 0 ? null : this.base[index].getValue();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return this.get(key) != null;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        return this.set(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        return key instanceof String ? this.set((String) key, null) : null;
+    }
+
+    @Override
+    public void clear() {
+        this.checkNotFrozen();
+        this.base = NO_ENTRIES;
+        this.baseIndex = null;
+        Arrays.fill(this.layer, 0, this.layerSize, null);
+        this.layerSize = 0;
+        this.layerIndex = null;
+        this.size = 0;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (this.entrySet == null) {
+            this.entrySet = new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return LayeredMap.this.size;
+                }
+            };
+        }
+        return this.entrySet;
+    }
+
+    // =========================================================================
+    // PRIVATE
+    // =========================================================================
+
+    /**
+     * Set a variable in the layer, or hide it if the value is null.
+     *
+     * @return the previous value, or null if there wasn't one
+     */
+    private Object set(String key, Object value) {
+        this.checkNotFrozen();
+
+        Object previous;
+        int index = this.layerIndex(key);
+        if (index >= 0) {
+            previous = this.layer[index].getValue();
+            if (previous == null && value == null) {
+                return null;
+            }
+            // replaced rather than shifted out, so removing through an iterator doesn't move it
+            this.layer[index] = new SimpleImmutableEntry<String, Object>(key, value);
+        } else {
+            index = this.baseIndex(key);
+            previous = index < 0 ? null : this.base[index].getValue();
+            if (previous == null && value == null) {
+                return null;
+            }
+            if (this.layerSize == this.layer.length) {
+                this.layer = Arrays.copyOf(this.layer, Math.max(INITIAL_LAYER_CAPACITY, this.layerSize * 2));
+            }
+            this.layer[this.layerSize] = new SimpleImmutableEntry<String, Object>(key, value);
+            if (this.layerIndex != null) {
+                this.layerIndex.put(key, this.layerSize);
+            }
+            this.layerSize++;
+            if (this.layerIndex == null && this.layerSize > INDEX_THRESHOLD) {
+                this.layerIndex = indexOf(this.layer, this.layerSize);
+            }
+        }
+
+        if (previous == null) {
+            this.size++;
+        } else if (value == null) {
+            this.size--;
+        }
+        return previous;
+    }
+
+    private int layerIndex(Object key) {
+        if (this.layerIndex != null) {
+            Integer index = this.layerIndex.get(key);
+            return index == null ? -1 : index;
+        }
+        for (int i = 0; i < this.layerSize; i++) {
+            if (this.layer[i].getKey().equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int baseIndex(Object key) {
+        if (this.baseIndex != null) {
+            Integer index = this.baseIndex.get(key);
+            return index == null ? -1 : index;
+        }
+        for (int i = 0; i < this.base.length; i++) {
+            if (this.base[i].getKey().equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void checkNotFrozen() {
+        if (this.frozen) {
+            throw new UnsupportedOperationException("Map is frozen");
+        }
+    }
+
+    /**
+     * @return an entry that can be shared, with lists copied into unmodifiable ones
+     */
+    private static Entry<String, Object> frozenEntry(String key, Object value) {
+        if (value instanceof List) {
+            String[] copy = ((List<?>) value).toArray(new String[0]);
+            value = Collections.unmodifiableList(Arrays.asList(copy));
+        }
+        return new SimpleImmutableEntry<String, Object>(key, value);
+    }
+
+    /**
+     * @return key to position of the entries, or null if there are few enough to scan
+     */
+    private static Map<String, Integer> indexOf(Entry<String, Object>[] entries) {
+        return entries.length > INDEX_THRESHOLD ? indexOf(entries, entries.length) : null;
+    }
+
+    private static Map<String, Integer> indexOf(Entry<String, Object>[] entries, int count) {
+        Map<String, Integer> index = new HashMap<String, Integer>(count * 2);
+        for (int i = 0; i < count; i++) {
+            index.put(entries[i].getKey(), i);
+        }
+        return index;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Entry<String, Object>[] newEntries(int length) {
+        return (Entry<String, Object>[]) new Entry<?, ?>[length];
+    }
+
+    /**
+     * Visits the layer's variables, then the base's that the layer doesn't hide.
+     */
+    private final class EntryIterator implements Iterator<Entry<String, Object>> {
+        private int layerNext = 0;
+        private int baseNext = 0;
+        private Entry<String, Object> next;
+        private Entry<String, Object> last;
+
+        EntryIterator() {
+            this.advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next != null;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (this.next == null) {
+                throw new NoSuchElementException();
+            }
+            this.last = this.next;
+            this.advance();
+            return this.last;
+        }
+
+        @Override
+        public void remove() {
+            if (this.last == null) {
+                throw new IllegalStateException();
+            }
+            LayeredMap.this.remove(this.last.getKey());
+            this.last = null;
+        }
+
+        private void advance() {
+            this.next = null;
+            while (this.layerNext < layerSize) {
+                Entry<String, Object> entry = layer[this.layerNext++];
+                if (entry.getValue() != null) {
+                    this.next = entry;
+                    return;
+                }
+            }
+            while (this.baseNext < base.length) {
+                Entry<String, Object> entry = base[this.baseNext++];
+                if (layerIndex(entry.getKey()) < 0) {
+                    this.next = entry;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -17,6 +17,7 @@ class LibraryContext {
     private final String environment;
     private final String datasource;
     private final Logger logger;
+    private final DispatchMetrics metrics;
 
     LibraryContext(String account, String profile, String environment, String datasource, Logger logger) {
         super();
@@ -25,6 +26,7 @@ class LibraryContext {
         this.environment = environment;
         this.datasource = datasource;
         this.logger = logger;
+        this.metrics = new DispatchMetrics();
     }
 
     final String getAccount() {
@@ -47,6 +49,10 @@ class LibraryContext {
         return logger;
     }
 
+    final DispatchMetrics getMetrics() {
+        return metrics;
+    }
+
     final Path getPersistentFilePath() {
         return Paths.get(System.getProperty("user.home"), ".tealium",
                 String.format(Locale.ROOT, "%s.%s.data", this.getAccount(), this.getProfile()));
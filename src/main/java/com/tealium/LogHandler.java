@@ -0,0 +1,23 @@
+package com.tealium;
+
+/**
+ * Receives the library's log output, so it can be bridged to the host
+ * application's logging framework with {@link Tealium.Builder#setLogHandler(LogHandler)}.
+ *
+ * Only messages at or above the configured {@link LogLevel} are published.
+ * With asynchronous logging enabled, publish is called from a single
+ * background thread.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public interface LogHandler {
+    /**
+     * @param level
+     *            Level of message.
+     * @param message
+     *            Formatted message.
+     * @param thrown
+     *            Associated error, or null.
+     */
+    void publish(LogLevel level, String message, Throwable thrown);
+}
@@ -1,26 +1,83 @@
 package com.tealium;
 
 import java.io.PrintStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 // Java convention for loggers is to expose methods based off of level, so logger.error(...), logger.warn(...), logger.debug(...)
 /**
  * Tealium logger for debugging.
  *
+ * Messages go to a {@link LogHandler}, System.out unless the host application
+ * supplies one. In asynchronous mode they are queued in a ring buffer and
+ * published by a single daemon thread, so tracking threads never contend on
+ * the handler (or on the process wide System.out lock). Format-style methods
+ * only build the message once the level check passes, and identical errors
+ * repeated within {@link #REPEAT_WINDOW_MILLIS} are counted instead of logged.
+ *
  * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
  */
 final class Logger {
+    static final long REPEAT_WINDOW_MILLIS = 10000L;
+    private static final int RING_CAPACITY = 1024;
+    private static final int MAX_TRACKED_REPEATS = 256;
 
-    private final LogLevel level;
-    private final PrintStream out;
+    private volatile LogLevel level;
+    private final LogHandler handler;
+    private final BoundedRingBuffer<Entry> ring;
+    private final Thread writer;
+    private final AtomicBoolean writerParked = new AtomicBoolean();
+    private final AtomicLong dropped = new AtomicLong();
+    private final ConcurrentMap<String, Repeat> repeats = new ConcurrentHashMap<String, Repeat>();
+    private volatile boolean closed = false;
 
     public LogLevel getLevel() {
         return level;
     }
 
+    public void setLevel(LogLevel level) {
+        if (level == null) {
+            throw new IllegalArgumentException("Invalid log level.");
+        }
+        this.level = level;
+    }
+
     public Logger(LogLevel level) {
+        this(level, new PrintStreamHandler(System.out), false);
+    }
+
+    /**
+     * @param level
+     *            Lowest level that is published.
+     * @param handler
+     *            Destination of log output.
+     * @param async
+     *            Publish from a background thread instead of the logging thread.
+     */
+    public Logger(LogLevel level, LogHandler handler, boolean async) {
         super();
         this.level = level;
-        out = System.out;
+        this.handler = handler;
+
+        if (async) {
+            this.ring = new BoundedRingBuffer<Entry>(RING_CAPACITY);
+            this.writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            }, "tealium-logger");
+            this.writer.setDaemon(true);
+            this.writer.start();
+        } else {
+            this.ring = null;
+            this.writer = null;
+        }
     }
 
     public boolean isLogging(LogLevel level) {
@@ -37,16 +94,268 @@ final class Logger {
      */
     public String log(String message, LogLevel level) {
         if (isLogging(level)) {
-            out.println(message);
+            submit(level, message, false, message, null, null, null);
             return message;
         }
         return null;
     };
 
     public void log(Throwable t, LogLevel level) {
+        if (!isLogging(level)) {
+            return;
+        }
+        String message = t.toString();
+        submit(level, message, false, message, null, null, t);
+    }
+
+    /**
+     * Log a message built from a template, where each "{}" is replaced by the next argument.
+     * Nothing is formatted or allocated when the level is disabled. Errors are formatted
+     * straight away, so that only identical messages count as repeats.
+     *
+     * @param level
+     *            Level of message.
+     * @param format
+     *            Message template.
+     * @param arg
+     */
+    public void log(LogLevel level, String format, Object arg) {
+        if (isLogging(level)) {
+            submit(level, format, true, format, arg, null, null);
+        }
+    }
+
+    public void log(LogLevel level, String format, Object arg1, Object arg2) {
         if (isLogging(level)) {
-            out.println(t);
-            t.printStackTrace(out);
+            submit(level, format, true, format, arg1, arg2, null);
+        }
+    }
+
+    /**
+     * Wait for queued messages to be published.
+     *
+     * @param timeout
+     * @param unit
+     * @return true if everything queued before the call was published in time
+     */
+    public boolean flush(long timeout, TimeUnit unit) {
+        if (this.ring == null) {
+            return true;
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!this.ring.isEmpty()) {
+            if (System.nanoTime() - deadline >= 0 || !this.writer.isAlive()) {
+                return false;
+            }
+            LockSupport.unpark(this.writer);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return true;
+    }
+
+    /**
+     * Flush and stop the background writer. Later messages are published synchronously.
+     */
+    public void close(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        flush(timeout, unit);
+        this.closed = true;
+        if (this.writer != null) {
+            LockSupport.unpark(this.writer);
+            try {
+                this.writer.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // messages queued by threads that hadn't seen the closed flag yet
+            this.publishQueued();
+        }
+    }
+
+    // =========================================================================
+    // PRIVATE
+    // =========================================================================
+
+    /**
+     * @param repeatKey identifies identical messages for rate limiting errors
+     * @param template true if format contains "{}" placeholders for the arguments
+     */
+    private void submit(LogLevel level, String repeatKey, boolean template, String format, Object arg1, Object arg2,
+                        Throwable thrown) {
+        int repeated = 0;
+        if (level == LogLevel.ERRORS || thrown != null) {
+            if (template) {
+                format = format(format, arg1, arg2);
+                repeatKey = format;
+                template = false;
+            }
+            repeated = this.admit(repeatKey);
+            if (repeated < 0) {
+                return;
+            }
+        }
+
+        Entry entry = new Entry(level, template, format, arg1, arg2, thrown, repeated);
+        if (this.ring == null || this.closed) {
+            publish(entry);
+            return;
+        }
+
+        if (!this.ring.offer(entry)) {
+            this.dropped.incrementAndGet();
+            return;
+        }
+        if (this.closed) {
+            // closed after the check above, the writer may already be gone
+            this.publishQueued();
+        } else if (this.writerParked.get()) {
+            LockSupport.unpark(this.writer);
+        }
+    }
+
+    private void publishQueued() {
+        Entry entry;
+        while ((entry = this.ring.poll()) != null) {
+            publish(entry);
+        }
+    }
+
+    /**
+     * @return -1 to suppress the message, otherwise the number of identical messages
+     *         suppressed since it was last logged
+     */
+    private int admit(String key) {
+        long now = System.currentTimeMillis();
+        Repeat repeat = this.repeats.get(key);
+        if (repeat == null) {
+            if (this.repeats.size() >= MAX_TRACKED_REPEATS) {
+                this.repeats.clear();
+            }
+            Repeat created = new Repeat(now);
+            repeat = this.repeats.putIfAbsent(key, created);
+            if (repeat == null) {
+                return 0;
+            }
+        }
+
+        long windowStart = repeat.windowStart.get();
+        if (now - windowStart >= REPEAT_WINDOW_MILLIS && repeat.windowStart.compareAndSet(windowStart, now)) {
+            return repeat.suppressed.getAndSet(0);
+        }
+        repeat.suppressed.incrementAndGet();
+        return -1;
+    }
+
+    private void drain() {
+        while (true) {
+            Entry entry = this.ring.poll();
+            if (entry != null) {
+                publish(entry);
+                continue;
+            }
+
+            long lost = this.dropped.getAndSet(0);
+            if (lost > 0) {
+                safePublish(LogLevel.WARNINGS, lost + " log messages dropped, log buffer full.", null);
+            }
+
+            if (this.closed) {
+                return;
+            }
+
+            this.writerParked.set(true);
+            if (this.ring.isEmpty()) {
+                LockSupport.parkNanos(this, TimeUnit.SECONDS.toNanos(1));
+            }
+            this.writerParked.set(false);
+        }
+    }
+
+    private void publish(Entry entry) {
+        if (entry.repeated > 0) {
+            safePublish(entry.level, "Previous message repeated " + entry.repeated + " times.", null);
+        }
+        String message = entry.template ? format(entry.format, entry.arg1, entry.arg2) : entry.format;
+        safePublish(entry.level, message, entry.thrown);
+    }
+
+    private void safePublish(LogLevel level, String message, Throwable thrown) {
+        try {
+            this.handler.publish(level, message, thrown);
+        } catch (RuntimeException e) {
+            // a broken handler must never break tracking
+        }
+    }
+
+    static String format(String format, Object arg1, Object arg2) {
+        int first = format.indexOf("{}");
+        if (first < 0) {
+            return format;
+        }
+
+        StringBuilder builder = new StringBuilder(format.length() + 32);
+        builder.append(format, 0, first).append(arg1);
+        int second = format.indexOf("{}", first + 2);
+        if (second < 0) {
+            return builder.append(format, first + 2, format.length()).toString();
+        }
+        return builder.append(format, first + 2, second)
+                .append(arg2)
+                .append(format, second + 2, format.length())
+                .toString();
+    }
+
+    private static final class Entry {
+        final LogLevel level;
+        final boolean template;
+        final String format;
+        final Object arg1;
+        final Object arg2;
+        final Throwable thrown;
+        final int repeated;
+
+        Entry(LogLevel level, boolean template, String format, Object arg1, Object arg2, Throwable thrown, int repeated) {
+            this.level = level;
+            this.template = template;
+            this.format = format;
+            this.arg1 = arg1;
+            this.arg2 = arg2;
+            this.thrown = thrown;
+            this.repeated = repeated;
+        }
+    }
+
+    private static final class Repeat {
+        final AtomicLong windowStart;
+        final AtomicInteger suppressed = new AtomicInteger();
+
+        Repeat(long windowStart) {
+            this.windowStart = new AtomicLong(windowStart);
+        }
+    }
+
+    /**
+     * Default handler, printing to a stream the way the library always has.
+     */
+    static final class PrintStreamHandler implements LogHandler {
+        private final PrintStream out;
+
+        PrintStreamHandler(PrintStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void publish(LogLevel level, String message, Throwable thrown) {
+            if (thrown == null) {
+                out.println(message);
+            } else {
+                // the stack trace starts with the exception itself
+                if (message != null && !message.equals(thrown.toString())) {
+                    out.println(message);
+                }
+                thrown.printStackTrace(out);
+            }
         }
     }
 }
@@ -0,0 +1,33 @@
+package com.tealium;
+
+/**
+ * Memory fences for the sequence lock in {@link SharedRegion}, whose sequence
+ * number and data live in a mapped file rather than in Java fields, so the
+ * memory model's guarantees for volatile fields don't cover them.
+ *
+ * Java 7 has no fence API, so this implementation writes a volatile field,
+ * which HotSpot compiles to a full fence that neither the JIT nor the
+ * processor moves other memory accesses across. The multi-release jar
+ * overrides it under META-INF/versions/11 with VarHandle fences.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class MemoryFences {
+    private static volatile int fence;
+
+    private MemoryFences() {}
+
+    /**
+     * Keep loads before the fence ahead of loads and stores after it.
+     */
+    static void acquire() {
+        fence = 0;
+    }
+
+    /**
+     * Keep loads and stores before the fence ahead of stores after it.
+     */
+    static void release() {
+        fence = 0;
+    }
+}
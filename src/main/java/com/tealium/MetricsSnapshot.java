@@ -0,0 +1,284 @@
+package com.tealium;
+
+import java.util.Map;
+
+/**
+ * Point in time copy of the dispatch metrics of a Tealium instance, for
+ * exporting to whatever monitoring system the host application uses.
+ *
+ * Times are in microseconds, sizes in bytes.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public final class MetricsSnapshot {
+    private final long eventsTracked;
+    private final long eventsDispatched;
+    private final long eventsFailed;
+    private final long eventsDropped;
+    private final long eventsNotSampled;
+    private final long eventsRateLimited;
+    private final long duplicateHits;
+    private final long duplicateMisses;
+    private final long eventsOversized;
+    private final long eventsBlocked;
+    private final long eventsDroppedNewest;
+    private final long eventsDroppedOldest;
+    private final long eventsSampledOut;
+    private final long eventsSpilled;
+    private final long queueDepth;
+    private final long inFlight;
+    private final long bytesSent;
+    private final long warmConnectionSends;
+    private final long coldConnectionSends;
+    private final long connectionWarmups;
+    private final long failovers;
+    private final long hedges;
+    private final long hedgeWins;
+    private final HistogramSnapshot serializationTime;
+    private final HistogramSnapshot httpLatency;
+    private final Map<Integer, HistogramSnapshot> httpLatencyByStatus;
+    private final Map<PriorityLane, LaneSnapshot> lanes;
+
+    MetricsSnapshot(long eventsTracked, long eventsDispatched, long eventsFailed, long eventsDropped,
+                    long eventsNotSampled, long eventsRateLimited,
+                    long duplicateHits, long duplicateMisses, long eventsOversized,
+                    long eventsBlocked, long eventsDroppedNewest, long eventsDroppedOldest,
+                    long eventsSampledOut, long eventsSpilled,
+                    long queueDepth, long inFlight, long bytesSent,
+                    long warmConnectionSends, long coldConnectionSends, long connectionWarmups,
+                    long failovers, long hedges, long hedgeWins,
+                    HistogramSnapshot serializationTime, HistogramSnapshot httpLatency,
+                    Map<Integer, HistogramSnapshot> httpLatencyByStatus,
+                    Map<PriorityLane, LaneSnapshot> lanes) {
+        this.eventsTracked = eventsTracked;
+        this.eventsDispatched = eventsDispatched;
+        this.eventsFailed = eventsFailed;
+        this.eventsDropped = eventsDropped;
+        this.eventsNotSampled = eventsNotSampled;
+        this.eventsRateLimited = eventsRateLimited;
+        this.duplicateHits = duplicateHits;
+        this.duplicateMisses = duplicateMisses;
+        this.eventsOversized = eventsOversized;
+        this.eventsBlocked = eventsBlocked;
+        this.eventsDroppedNewest = eventsDroppedNewest;
+        this.eventsDroppedOldest = eventsDroppedOldest;
+        this.eventsSampledOut = eventsSampledOut;
+        this.eventsSpilled = eventsSpilled;
+        this.queueDepth = queueDepth;
+        this.inFlight = inFlight;
+        this.bytesSent = bytesSent;
+        this.warmConnectionSends = warmConnectionSends;
+        this.coldConnectionSends = coldConnectionSends;
+        this.connectionWarmups = connectionWarmups;
+        this.failovers = failovers;
+        this.hedges = hedges;
+        this.hedgeWins = hedgeWins;
+        this.serializationTime = serializationTime;
+        this.httpLatency = httpLatency;
+        this.httpLatencyByStatus = httpLatencyByStatus;
+        this.lanes = lanes;
+    }
+
+    /**
+     * @return number of events passed to track
+     */
+    public long getEventsTracked() {
+        return eventsTracked;
+    }
+
+    /**
+     * @return number of events collect accepted
+     */
+    public long getEventsDispatched() {
+        return eventsDispatched;
+    }
+
+    /**
+     * @return number of events that could not be delivered
+     */
+    public long getEventsFailed() {
+        return eventsFailed;
+    }
+
+    /**
+     * @return number of events discarded without a send attempt
+     */
+    public long getEventsDropped() {
+        return eventsDropped;
+    }
+
+    /**
+     * @return number of tracked events left out by their event type's sampling rate
+     */
+    public long getEventsNotSampled() {
+        return eventsNotSampled;
+    }
+
+    /**
+     * @return number of tracked events over their event type's rate limit
+     */
+    public long getEventsRateLimited() {
+        return eventsRateLimited;
+    }
+
+    /**
+     * @return number of tracked events suppressed as repeats of an event seen within the deduplication window
+     */
+    public long getDuplicateHits() {
+        return duplicateHits;
+    }
+
+    /**
+     * @return number of tracked events the deduplication window hadn't seen before
+     */
+    public long getDuplicateMisses() {
+        return duplicateMisses;
+    }
+
+    /**
+     * @return number of events whose payload was over the maximum body size, truncated or rejected
+     */
+    public long getEventsOversized() {
+        return eventsOversized;
+    }
+
+    /**
+     * @return number of events that found the queue full and waited for room
+     */
+    public long getEventsBlocked() {
+        return eventsBlocked;
+    }
+
+    /**
+     * @return number of new events dropped because the queue was full
+     */
+    public long getEventsDroppedNewest() {
+        return eventsDroppedNewest;
+    }
+
+    /**
+     * @return number of queued events dropped to make room for newer ones
+     */
+    public long getEventsDroppedOldest() {
+        return eventsDroppedOldest;
+    }
+
+    /**
+     * @return number of events shed by sampling while the queue was filling up
+     */
+    public long getEventsSampledOut() {
+        return eventsSampledOut;
+    }
+
+    /**
+     * @return number of events written to the spool file because the queue was full
+     */
+    public long getEventsSpilled() {
+        return eventsSpilled;
+    }
+
+    /**
+     * @return number of events waiting for a send to start
+     */
+    public long getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return number of sends currently waiting on the network
+     */
+    public long getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return total size of the payloads of events sent, not counting failovers or hedges resending them
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return number of sends that found an idle connection open
+     */
+    public long getWarmConnectionSends() {
+        return warmConnectionSends;
+    }
+
+    /**
+     * @return number of sends that had to open a new connection
+     */
+    public long getColdConnectionSends() {
+        return coldConnectionSends;
+    }
+
+    /**
+     * @return number of requests made only to open or refresh a connection
+     */
+    public long getConnectionWarmups() {
+        return connectionWarmups;
+    }
+
+    /**
+     * @return number of failed sends retried on another endpoint
+     */
+    public long getFailovers() {
+        return failovers;
+    }
+
+    /**
+     * @return number of slow sends duplicated
+     */
+    public long getHedges() {
+        return hedges;
+    }
+
+    /**
+     * @return number of duplicates that answered first
+     */
+    public long getHedgeWins() {
+        return hedgeWins;
+    }
+
+    public HistogramSnapshot getSerializationTime() {
+        return serializationTime;
+    }
+
+    /**
+     * @return latency of all collect calls
+     */
+    public HistogramSnapshot getHttpLatency() {
+        return httpLatency;
+    }
+
+    /**
+     * @return latency of collect calls keyed by HTTP status code, 0 for calls without a response
+     */
+    public Map<Integer, HistogramSnapshot> getHttpLatencyByStatus() {
+        return httpLatencyByStatus;
+    }
+
+    /**
+     * @return queue metrics of each priority lane
+     */
+    public Map<PriorityLane, LaneSnapshot> getLanes() {
+        return lanes;
+    }
+
+    @Override
+    public String toString() {
+        return "tracked=" + eventsTracked
+                + " dispatched=" + eventsDispatched
+                + " failed=" + eventsFailed
+                + " dropped=" + eventsDropped
+                + " queueDepth=" + queueDepth
+                + " inFlight=" + inFlight
+                + " bytesSent=" + bytesSent
+                + " warmConnections=" + warmConnectionSends
+                + " coldConnections=" + coldConnectionSends
+                + " failovers=" + failovers
+                + " hedges=" + hedges
+                + " serialization=[" + serializationTime + "]"
+                + " http=[" + httpLatency + "]";
+    }
+}
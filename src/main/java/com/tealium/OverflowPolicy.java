@@ -0,0 +1,36 @@
+package com.tealium;
+
+/**
+ * Data class for what asynchronous dispatch does with a tracked event when
+ * its queue is full
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public enum OverflowPolicy {
+    /**
+     * Make track wait for room, up to the block timeout, then drop the new event.
+     */
+    BLOCK,
+
+    /**
+     * Drop the event being tracked.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Drop the oldest queued event to make room.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Start dropping a growing share of new events once the queue is half full, so load is shed
+     * gradually instead of all at once.
+     */
+    SAMPLE,
+
+    /**
+     * Append the event to a spool file next to the persistent data, delivered once the queue
+     * drains. Spooled events are delivered without their callback.
+     */
+    SPILL_TO_DISK
+}
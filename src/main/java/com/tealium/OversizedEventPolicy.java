@@ -0,0 +1,20 @@
+package com.tealium;
+
+/**
+ * Data class for what dispatch does with an event whose payload is over the
+ * maximum body size
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public enum OversizedEventPolicy {
+    /**
+     * Fail the event's callback without sending it.
+     */
+    REJECT,
+
+    /**
+     * Shorten the largest values until the payload fits, and send it. The callback info lists
+     * the shortened keys under {@link DataManager.InfoKey#TRUNCATED_KEYS}.
+     */
+    TRUNCATE
+}
@@ -0,0 +1,37 @@
+package com.tealium;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Growable output buffer for serialized payloads that exposes its backing
+ * array, so a payload can be sent without copying it out and the buffer
+ * reused for the next one. See {@link PayloadBufferPool}.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class PayloadBuffer extends ByteArrayOutputStream {
+    private final PayloadBufferPool pool;
+
+    PayloadBuffer(PayloadBufferPool pool, int initialCapacity) {
+        super(initialCapacity);
+        this.pool = pool;
+    }
+
+    /**
+     * Return this buffer to its pool. It must not be touched, nor its array, afterwards.
+     */
+    void release() {
+        this.pool.release(this);
+    }
+
+    /**
+     * @return the backing array, valid from 0 to {@link #size()} until the buffer is written to or reset
+     */
+    byte[] array() {
+        return this.buf;
+    }
+
+    int capacity() {
+        return this.buf.length;
+    }
+}
@@ -0,0 +1,63 @@
+package com.tealium;
+
+/**
+ * Pool of {@link PayloadBuffer}s, so steady state dispatch serializes into
+ * the same few arrays instead of allocating a new one per event.
+ *
+ * A buffer is taken when an event is serialized and returned once the
+ * transport has finished with the request body, which may be on another
+ * thread, so the pool is a lock-free {@link BoundedRingBuffer} rather than a
+ * thread local. When the pool is empty a new buffer is made; when it's full,
+ * or a buffer grew past the retained size for an unusually large payload, the
+ * returned buffer is left to the garbage collector.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class PayloadBufferPool {
+    /**
+     * Buffers kept by default, enough for the default concurrency limit.
+     */
+    static final int DEFAULT_POOLED_BUFFERS = 64;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private final BoundedRingBuffer<PayloadBuffer> buffers;
+
+    /**
+     * @param maxPooled
+     *            Most buffers kept for reuse.
+     */
+    PayloadBufferPool(int maxPooled) {
+        if (maxPooled <= 0) {
+            throw new IllegalArgumentException("Pooled buffers should be greater than zero.");
+        }
+        this.buffers = new BoundedRingBuffer<PayloadBuffer>(maxPooled);
+    }
+
+    /**
+     * @return an empty buffer
+     */
+    PayloadBuffer acquire() {
+        PayloadBuffer buffer = this.buffers.poll();
+        return buffer == null ? new PayloadBuffer(this, INITIAL_CAPACITY) : buffer;
+    }
+
+    /**
+     * Return a buffer for reuse, see {@link PayloadBuffer#release()}.
+     */
+    void release(PayloadBuffer buffer) {
+        if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            return;
+        }
+        buffer.reset();
+        this.buffers.offer(buffer);
+    }
+
+    /**
+     * @return buffers waiting for reuse
+     */
+    int size() {
+        return this.buffers.size();
+    }
+}
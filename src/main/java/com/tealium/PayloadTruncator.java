@@ -0,0 +1,130 @@
+package com.tealium;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shrinks an oversized payload to fit a body size limit by shortening its
+ * largest values, string values from the end and list values by dropping
+ * their last elements.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class PayloadTruncator {
+    /**
+     * Values this small aren't worth shortening; a payload that only has these left is rejected.
+     */
+    private static final int MIN_TRUNCATED_LENGTH = 16;
+
+    /**
+     * Extra characters cut on each pass, covering JSON escapes and multi-byte characters that make
+     * the encoded size larger than the character count.
+     */
+    private static final int SLACK = 16;
+
+    private static final int MAX_PASSES = 64;
+
+    private final Udo data;
+    private final byte[] payload;
+    private final List<String> truncatedKeys;
+
+    private PayloadTruncator(Udo data, byte[] payload, List<String> truncatedKeys) {
+        this.data = data;
+        this.payload = payload;
+        this.truncatedKeys = truncatedKeys;
+    }
+
+    /**
+     * @param data
+     *            The oversized payload, which is left unchanged.
+     * @param payload
+     *            Its serialized form.
+     * @param maxBodySize
+     *            Limit in bytes.
+     * @return the shortened payload, or null if it can't be made to fit
+     * @throws UdoSerializationException
+     */
+    static PayloadTruncator truncate(Udo data, byte[] payload, int maxBodySize) throws UdoSerializationException {
+        Udo truncated = new Udo(data);
+        List<String> keys = new ArrayList<String>();
+
+        for (int pass = 0; payload.length > maxBodySize && pass < MAX_PASSES; pass++) {
+            String largest = null;
+            int largestLength = 0;
+            for (Map.Entry<String, Object> entry : truncated.entrySet()) {
+                int length = length(entry.getValue());
+                if (length > largestLength) {
+                    largest = entry.getKey();
+                    largestLength = length;
+                }
+            }
+            if (largest == null || largestLength <= MIN_TRUNCATED_LENGTH) {
+                return null;
+            }
+
+            int cut = payload.length - maxBodySize + SLACK;
+            truncated.put(largest, shorten(truncated.get(largest), Math.max(MIN_TRUNCATED_LENGTH, largestLength - cut)));
+            if (!keys.contains(largest)) {
+                keys.add(largest);
+            }
+            payload = truncated.toJsonBytes();
+        }
+
+        return payload.length > maxBodySize ? null : new PayloadTruncator(truncated, payload, keys);
+    }
+
+    Udo getData() {
+        return this.data;
+    }
+
+    byte[] getPayload() {
+        return this.payload;
+    }
+
+    List<String> getTruncatedKeys() {
+        return this.truncatedKeys;
+    }
+
+    /**
+     * @return characters in a string value, or in all elements of a list value
+     */
+    private static int length(Object value) {
+        if (value instanceof List) {
+            int length = 0;
+            for (Object element : (List<?>) value) {
+                length += element.toString().length() + 3;
+            }
+            return length;
+        }
+        return value.toString().length();
+    }
+
+    private static Object shorten(Object value, int length) {
+        if (!(value instanceof List)) {
+            String string = value.toString();
+            int end = length;
+            // don't split a surrogate pair
+            if (end > 0 && Character.isHighSurrogate(string.charAt(end - 1))) {
+                end--;
+            }
+            return string.substring(0, end);
+        }
+
+        List<?> list = (List<?>) value;
+        List<String> kept = new ArrayList<String>();
+        int used = 0;
+        for (Object element : list) {
+            String string = element.toString();
+            if (used + string.length() + 3 > length) {
+                break;
+            }
+            kept.add(string);
+            used += string.length() + 3;
+        }
+        if (kept.isEmpty() && !list.isEmpty()) {
+            kept.add((String) shorten(list.get(0), Math.max(0, length - 3)));
+        }
+        return kept;
+    }
+}
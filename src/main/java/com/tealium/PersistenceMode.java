@@ -0,0 +1,27 @@
+package com.tealium;
+
+/**
+ * Data class for the ways persistent data can be kept on disk
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public enum PersistenceMode {
+    /**
+     * The whole udo is rewritten to a text file on every change.
+     */
+    TEXT_FILE,
+
+    /**
+     * Shared with other processes on this host that use the same account and profile, through a
+     * memory-mapped file next to the text file. Data each process adds is merged rather than
+     * overwritten, and shows up in the others' events without them re-reading the file.
+     */
+    SHARED_MEMORY,
+
+    /**
+     * Only the added variables are appended to a log next to the text file, which a background
+     * thread folds back into the text file once the log grows. Cheaper when the udo is large and
+     * changes often.
+     */
+    DELTA_LOG
+}
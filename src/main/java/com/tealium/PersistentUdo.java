@@ -1,6 +1,7 @@
 package com.tealium;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Tealium data object for processing generation of standardized universal data
@@ -28,6 +29,21 @@ class PersistentUdo {
      *             If the file doesn't exist or the map is malformed.
      */
     public Udo readOrCreateUdo(Udo defaultData) throws UdoSerializationException {
+        Udo loadedUdo = this.readStoredUdo();
+
+        // If unable to load existing udo, use the default.
+        if(loadedUdo == null) {
+            loadedUdo = defaultData;
+            this.writeData(loadedUdo);
+        }
+
+        return loadedUdo;
+    }
+
+    /**
+     * @return the udo in storage, or null if there isn't one or it can't be read
+     */
+    Udo readStoredUdo() {
         Udo loadedUdo = null;
 
         try {
@@ -44,12 +60,6 @@ class PersistentUdo {
             }
         } catch(IOException e) {}
 
-        // If unable to load existing udo, use the default.
-        if(loadedUdo == null) {
-            loadedUdo = defaultData;
-            this.writeData(loadedUdo);
-        }
-
         return loadedUdo;
     }
 
@@ -67,9 +77,68 @@ class PersistentUdo {
      *             If ~/.tealium/ does not exist or cannot be created.
      */
     public void writeData(Udo data) throws UdoSerializationException {
+        this.writeStoredUdo(data); // just use data in memory if can't write
+    }
+
+    /**
+     * @return false if the udo couldn't be written
+     */
+    boolean writeStoredUdo(Udo data) throws UdoSerializationException {
+        Object writeEvent = JfrEvents.beginPersistentWrite();
+        String json = null;
         try {
-            this.textStorage.writeText(data.toJson());
-        } catch(IOException e) {} // just use data in memory if can't write
+            json = data.toJson();
+            this.textStorage.writeText(json);
+            JfrEvents.commitPersistentWrite(writeEvent, encodedLength(writeEvent, json), DispatchPhase.OUTCOME_SUCCESS);
+            return true;
+        } catch(IOException e) {
+            JfrEvents.commitPersistentWrite(writeEvent, encodedLength(writeEvent, json), DispatchPhase.OUTCOME_FAILURE);
+            return false;
+        } catch(UdoSerializationException e) {
+            JfrEvents.commitPersistentWrite(writeEvent, 0, DispatchPhase.OUTCOME_FAILURE);
+            throw e;
+        }
+    }
+
+    /**
+     * @return size of the json as written to storage, or 0 when no write event is recorded and nobody reads it
+     */
+    private static long encodedLength(Object writeEvent, String json) {
+        return writeEvent == null ? 0 : json.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Serialize Map to storage after data was added to it. Storage shared with
+     * other processes merges the added data into theirs rather than
+     * overwriting it.
+     *
+     * @param data
+     *            Everything this process has, including the added data.
+     * @param added
+     *            The data just added.
+     */
+    void writeData(Udo data, Udo added) throws UdoSerializationException {
+        this.writeData(data);
+    }
+
+    /**
+     * @return true if another process may have stored data since this one last read it
+     */
+    boolean hasNewerData() {
+        return false;
+    }
+
+    /**
+     * @return data stored since this process last read it, or null if there isn't any
+     */
+    Udo readNewerData() throws UdoSerializationException {
+        return null;
+    }
+
+    /**
+     * Release files held open. Writing afterwards still goes to the text file.
+     */
+    void close() {
     }
 
     /**
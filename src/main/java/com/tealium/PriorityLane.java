@@ -0,0 +1,56 @@
+package com.tealium;
+
+import com.tealium.DataManager.EventType;
+
+/**
+ * Data class for the lanes asynchronous dispatch queues events in, chosen by
+ * tealium_event_type. Lanes are drained by weight, so under load high
+ * priority events go first and low priority ones back up and overflow.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public enum PriorityLane {
+    /**
+     * Conversion and derived events.
+     */
+    HIGH(8),
+
+    /**
+     * Views, activities and any other event type.
+     */
+    NORMAL(4),
+
+    /**
+     * Interaction events.
+     */
+    LOW(1);
+
+    private final int defaultWeight;
+
+    PriorityLane(int defaultWeight) {
+        this.defaultWeight = defaultWeight;
+    }
+
+    /**
+     * @return the share of sends this lane gets while every lane has events waiting, relative to
+     *         the other lanes' weights
+     */
+    public int getDefaultWeight() {
+        return defaultWeight;
+    }
+
+    /**
+     * @param eventType
+     *            Value of tealium_event_type, may be null.
+     * @return the lane for events of the type
+     */
+    public static PriorityLane forEventType(Object eventType) {
+        if (EventType.CONVERSION.equals(eventType) || EventType.DERIVED.equals(eventType)) {
+            return HIGH;
+        }
+        if (EventType.INTERACTION.equals(eventType)) {
+            return LOW;
+        }
+        return NORMAL;
+    }
+}
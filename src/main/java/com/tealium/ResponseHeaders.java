@@ -0,0 +1,73 @@
+package com.tealium;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Response headers as the callback info map reports them, one value per
+ * header. The transport's headers are only flattened the first time the map
+ * is read, so callbacks that don't look at them don't pay for it.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class ResponseHeaders extends AbstractMap<String, Object> {
+    private final Map<String, List<String>> headerFields;
+    private volatile Map<String, Object> flattened = null;
+
+    /**
+     * @param headerFields
+     *            Response headers as the transport reports them.
+     */
+    ResponseHeaders(Map<String, List<String>> headerFields) {
+        this.headerFields = headerFields;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return this.flattened().entrySet();
+    }
+
+    @Override
+    public Object get(Object key) {
+        return this.flattened().get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return this.flattened().containsKey(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        return this.flattened().put(key, value);
+    }
+
+    // =========================================================================
+    // PRIVATE
+    // =========================================================================
+
+    /**
+     * Flatten the headers, keeping the last value of any that repeat.
+     */
+    private Map<String, Object> flattened() {
+        Map<String, Object> flattened = this.flattened;
+        if (flattened == null) {
+            synchronized (this) {
+                flattened = this.flattened;
+                if (flattened == null) {
+                    flattened = new HashMap<String, Object>();
+                    for (Map.Entry<String, List<String>> k : this.headerFields.entrySet()) {
+                        for (String v : k.getValue()) {
+                            flattened.put(k.getKey(), v);
+                        }
+                    }
+                    this.flattened = flattened;
+                }
+            }
+        }
+        return flattened;
+    }
+}
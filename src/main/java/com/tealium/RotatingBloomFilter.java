@@ -0,0 +1,165 @@
+package com.tealium;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Fixed-memory, time-windowed set of 64-bit fingerprints.
+ *
+ * Two Bloom filters take turns: fingerprints go into the current one and are
+ * looked up in both, and every half window the older one is replaced by an
+ * empty one. A fingerprint is therefore remembered for at least half a window
+ * and at most a whole one. Bits are set with CAS, so adding never locks.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class RotatingBloomFilter {
+    private static final double LN2 = Math.log(2);
+
+    private final int bitCount;
+    private final int hashCount;
+    private final long halfWindowNanos;
+    private final AtomicReference<Generations> generations;
+
+    /**
+     * @param windowNanos
+     *            How long a fingerprint is remembered, at most.
+     * @param expectedPerWindow
+     *            Fingerprints expected per window, which the false positive bound assumes.
+     * @param falsePositiveRate
+     *            Chance that a fingerprint never seen is reported as seen.
+     */
+    RotatingBloomFilter(long windowNanos, int expectedPerWindow, double falsePositiveRate) {
+        if (windowNanos <= 0 || expectedPerWindow <= 0 || !(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("Window, expected count and false positive rate are out of range.");
+        }
+
+        // a lookup checks both filters, so each gets half the false positive budget
+        double perFilterRate = falsePositiveRate / 2;
+        long bits = (long) Math.ceil(-expectedPerWindow * Math.log(perFilterRate) / (LN2 * LN2));
+        bits = Math.max(Long.SIZE, Math.min(bits, Integer.MAX_VALUE - Long.SIZE));
+        this.bitCount = (int) bits;
+        this.hashCount = Math.max(1, (int) Math.round((double) bits / expectedPerWindow * LN2));
+        this.halfWindowNanos = Math.max(1, windowNanos / 2);
+
+        long now = System.nanoTime();
+        this.generations = new AtomicReference<Generations>(
+                new Generations(this.newFilter(), this.newFilter(), now + this.halfWindowNanos));
+    }
+
+    /**
+     * Add a fingerprint.
+     *
+     * @return false if it was (probably) already present
+     */
+    boolean add(long fingerprint) {
+        return this.add(fingerprint, System.nanoTime());
+    }
+
+    boolean add(long fingerprint, long nowNanos) {
+        Generations current = this.rotate(nowNanos);
+
+        long h1 = fingerprint;
+        long h2 = Hash64.mix(fingerprint) | 1;
+        boolean inPrevious = true;
+        boolean added = false;
+        for (int i = 0; i < this.hashCount; i++) {
+            int bit = (int) (((h1 + i * h2) & Long.MAX_VALUE) % this.bitCount);
+            if (inPrevious && !isSet(current.previous, bit)) {
+                inPrevious = false;
+            }
+            added |= set(current.current, bit);
+        }
+        return added && !inPrevious;
+    }
+
+    /**
+     * @return true if the fingerprint was (probably) added within the window
+     */
+    boolean contains(long fingerprint) {
+        return this.contains(fingerprint, System.nanoTime());
+    }
+
+    boolean contains(long fingerprint, long nowNanos) {
+        Generations current = this.rotate(nowNanos);
+
+        long h1 = fingerprint;
+        long h2 = Hash64.mix(fingerprint) | 1;
+        boolean inCurrent = true;
+        boolean inPrevious = true;
+        for (int i = 0; i < this.hashCount && (inCurrent || inPrevious); i++) {
+            int bit = (int) (((h1 + i * h2) & Long.MAX_VALUE) % this.bitCount);
+            inCurrent &= isSet(current.current, bit);
+            inPrevious &= isSet(current.previous, bit);
+        }
+        return inCurrent || inPrevious;
+    }
+
+    int getBitCount() {
+        return this.bitCount;
+    }
+
+    int getHashCount() {
+        return this.hashCount;
+    }
+
+    // =========================================================================
+    // PRIVATE
+    // =========================================================================
+
+    private Generations rotate(long nowNanos) {
+        while (true) {
+            Generations generations = this.generations.get();
+            long overdue = nowNanos - generations.rotateAt;
+            if (overdue < 0) {
+                return generations;
+            }
+
+            Generations rotated = overdue >= this.halfWindowNanos
+                    // idle for over a window, so everything in both filters has expired
+                    ? new Generations(this.newFilter(), this.newFilter(), nowNanos + this.halfWindowNanos)
+                    : new Generations(this.newFilter(), generations.current,
+                            generations.rotateAt + this.halfWindowNanos);
+            if (this.generations.compareAndSet(generations, rotated)) {
+                return rotated;
+            }
+        }
+    }
+
+    private AtomicLongArray newFilter() {
+        return new AtomicLongArray((this.bitCount + Long.SIZE - 1) / Long.SIZE);
+    }
+
+    private static boolean isSet(AtomicLongArray filter, int bit) {
+        return (filter.get(bit >>> 6) & (1L << bit)) != 0;
+    }
+
+    /**
+     * @return true if the bit was clear
+     */
+    private static boolean set(AtomicLongArray filter, int bit) {
+        int word = bit >>> 6;
+        long mask = 1L << bit;
+        while (true) {
+            long value = filter.get(word);
+            if ((value & mask) != 0) {
+                return false;
+            }
+            if (filter.compareAndSet(word, value, value | mask)) {
+                return true;
+            }
+        }
+    }
+
+    private static final class Generations {
+        final AtomicLongArray current;
+        final AtomicLongArray previous;
+        final long rotateAt;
+
+        Generations(AtomicLongArray current, AtomicLongArray previous, long rotateAt) {
+            this.current = current;
+            this.previous = previous;
+            this.rotateAt = rotateAt;
+        }
+    }
+}
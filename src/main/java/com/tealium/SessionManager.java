@@ -0,0 +1,238 @@
+package com.tealium;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Session ids by visitor, each session ending after a period without events.
+ *
+ * Sessions live in a concurrent map, so resolving one is a lookup and a CAS
+ * on its last seen time, without a lock shared between visitors. Expiry uses
+ * a timing wheel: time is cut into ticks, and each session sits in the slot
+ * of the tick it would expire in if it saw no more events. Seeing an event
+ * doesn't move the session; when its slot comes up it is either expired or,
+ * if it has been seen since, moved to the slot of its new deadline. Events
+ * advance the wheel as they pass, so there is no sweeper thread and no scan
+ * of every session, only of the slots whose time has come.
+ *
+ * The number of sessions is capped. A visitor arriving when the table is
+ * full ends the sessions closest to expiring first. While another thread is
+ * advancing the wheel the visitor is let in anyway, so the table can go over
+ * the cap by as many threads as are tracking at once.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class SessionManager {
+    private static final int TICKS_PER_TIMEOUT = 64;
+    // marks a session that has ended
+    private static final long ENDED = Long.MIN_VALUE;
+
+    private final long idleTimeoutNanos;
+    private final long tickNanos;
+    private final int maxSessions;
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Session>[] wheel;
+    private final int mask;
+    // last tick whose slot has been processed
+    private final AtomicLong processedTick;
+    private final AtomicBoolean advancing = new AtomicBoolean();
+
+    /**
+     * @param idleTimeoutMillis
+     *            Time without events after which a visitor's session ends.
+     * @param maxSessions
+     *            Most sessions kept at once.
+     */
+    SessionManager(long idleTimeoutMillis, int maxSessions) {
+        this(idleTimeoutMillis, maxSessions, System.nanoTime());
+    }
+
+    @SuppressWarnings("unchecked")
+    SessionManager(long idleTimeoutMillis, int maxSessions, long nowNanos) {
+        if (idleTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("Session timeout should be greater than zero.");
+        }
+        if (maxSessions <= 0) {
+            throw new IllegalArgumentException("Max sessions should be greater than zero.");
+        }
+
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.tickNanos = Math.max(1, this.idleTimeoutNanos / TICKS_PER_TIMEOUT);
+        this.maxSessions = maxSessions;
+        // room for a timeout's worth of ticks ahead without wrapping round to slots not yet processed
+        int slots = Integer.highestOneBit(TICKS_PER_TIMEOUT + 2) * 2;
+        this.wheel = (ConcurrentLinkedQueue<Session>[]) new ConcurrentLinkedQueue<?>[slots];
+        for (int i = 0; i < slots; i++) {
+            this.wheel[i] = new ConcurrentLinkedQueue<Session>();
+        }
+        this.mask = slots - 1;
+        this.processedTick = new AtomicLong(nowNanos / this.tickNanos);
+    }
+
+    /**
+     * Find the visitor's session, starting a new one if there isn't one or it has expired.
+     *
+     * @param visitorId
+     * @return the session id
+     */
+    String resolve(String visitorId) {
+        return this.resolve(visitorId, System.nanoTime());
+    }
+
+    String resolve(String visitorId, long nowNanos) {
+        this.advance(nowNanos);
+
+        while (true) {
+            Session session = this.sessions.get(visitorId);
+            if (session == null) {
+                Session started = this.newSession(visitorId, nowNanos);
+                if (this.sessions.putIfAbsent(visitorId, started) == null) {
+                    this.size.incrementAndGet();
+                    this.schedule(started);
+                    return started.id;
+                }
+                continue;
+            }
+
+            long lastSeen = session.lastSeen.get();
+            if (lastSeen != ENDED && nowNanos - lastSeen < this.idleTimeoutNanos) {
+                if (nowNanos - lastSeen <= 0 || session.lastSeen.compareAndSet(lastSeen, nowNanos)) {
+                    return session.id;
+                }
+                continue;
+            }
+
+            // the wheel hasn't got to it yet
+            if (lastSeen == ENDED || session.lastSeen.compareAndSet(lastSeen, ENDED)) {
+                Session started = this.newSession(visitorId, nowNanos);
+                if (this.sessions.replace(visitorId, session, started)) {
+                    this.schedule(started);
+                    return started.id;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of sessions kept
+     */
+    int size() {
+        return this.size.get();
+    }
+
+    // =========================================================================
+    // PRIVATE
+    // =========================================================================
+
+    private Session newSession(String visitorId, long nowNanos) {
+        if (this.size.get() >= this.maxSessions) {
+            this.evict();
+        }
+        return new Session(visitorId, String.valueOf(System.currentTimeMillis()), nowNanos);
+    }
+
+    /**
+     * Put the session in the slot of the tick after its deadline, so by the time the slot comes up
+     * it has either expired or been seen since, and goes to a later slot.
+     */
+    private void schedule(Session session) {
+        long deadline = session.lastSeen.get() + this.idleTimeoutNanos;
+        this.wheel[(int) (deadline / this.tickNanos + 1) & this.mask].offer(session);
+    }
+
+    /**
+     * Process the slots of every tick that has passed, if no other thread is already doing it.
+     */
+    private void advance(long nowNanos) {
+        long tick = nowNanos / this.tickNanos;
+        if (tick <= this.processedTick.get() || !this.advancing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long from = this.processedTick.get() + 1;
+            // after a long quiet spell each slot only needs processing once
+            long first = Math.max(from, tick - this.mask);
+            for (long t = first; t <= tick; t++) {
+                this.processSlot(this.wheel[(int) t & this.mask], nowNanos, false);
+            }
+            this.processedTick.set(tick);
+        } finally {
+            this.advancing.set(false);
+        }
+    }
+
+    /**
+     * End the sessions of the slot that are past their deadline, or all of them when evicting, and
+     * move the others to the slot of their new deadline. Evicting stops once there is room.
+     *
+     * The slot is emptied before anything is moved, since a session moved, or started by another
+     * thread, while the wheel catches up after a quiet spell can land back in the slot being
+     * processed.
+     */
+    private void processSlot(ConcurrentLinkedQueue<Session> slot, long nowNanos, boolean evicting) {
+        List<Session> polled = new ArrayList<Session>();
+        Session session;
+        while ((session = slot.poll()) != null) {
+            polled.add(session);
+        }
+
+        boolean room = false;
+        for (int i = 0; i < polled.size(); i++) {
+            session = polled.get(i);
+            long lastSeen = session.lastSeen.get();
+            if (lastSeen == ENDED) {
+                // replaced when it was found expired
+                continue;
+            }
+            if (!room && (evicting || nowNanos - lastSeen >= this.idleTimeoutNanos)) {
+                if (session.lastSeen.compareAndSet(lastSeen, ENDED)) {
+                    if (this.sessions.remove(session.visitorId, session)) {
+                        this.size.decrementAndGet();
+                    }
+                    room = evicting && this.size.get() < this.maxSessions;
+                    continue;
+                }
+            }
+            this.schedule(session);
+        }
+    }
+
+    /**
+     * Make room by ending the sessions closest to their deadline, starting with the slot after the
+     * last one processed.
+     */
+    private void evict() {
+        if (!this.advancing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long tick = this.processedTick.get();
+            for (int i = 1; i <= this.mask + 1 && this.size.get() >= this.maxSessions; i++) {
+                this.processSlot(this.wheel[(int) (tick + i) & this.mask], 0, true);
+            }
+        } finally {
+            this.advancing.set(false);
+        }
+    }
+
+    private static final class Session {
+        final String visitorId;
+        final String id;
+        // nanoTime of the last event, or ENDED
+        final AtomicLong lastSeen;
+
+        Session(String visitorId, String id, long nowNanos) {
+            this.visitorId = visitorId;
+            this.id = id;
+            this.lastSeen = new AtomicLong(nowNanos);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.tealium;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Persistent data shared by processes on the same host, such as the workers
+ * of one service, through a memory-mapped {@link SharedRegion}.
+ *
+ * Added data is merged into whatever the region holds at the time, under the
+ * region's lock, so processes no longer overwrite each other's additions.
+ * Each process notices the others' changes by checking the region's sequence
+ * number, and only reads and parses the data when it has moved. The text file
+ * is still written alongside as a backup, and seeds the region when it's
+ * empty. If the region can't be used, this falls back to the text file alone.
+ *
+ * Only additions are merged; a key another process stored is never removed.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+class SharedPersistentUdo extends PersistentUdo {
+    private final SharedRegion region;
+    private volatile long lastRead = -1;
+
+    SharedPersistentUdo(TextStorage textStorage, SharedRegion region) {
+        super(textStorage);
+        this.region = region;
+    }
+
+    @Override
+    public Udo readOrCreateUdo(Udo defaultData) throws UdoSerializationException {
+        try {
+            SharedRegion.Lock lock = this.region.lock();
+            try {
+                SharedRegion.Contents contents = this.region.read();
+                Udo loadedUdo = decode(contents.getData());
+                if (loadedUdo != null) {
+                    this.lastRead = contents.getSequence();
+                    return loadedUdo;
+                }
+
+                // first process to share, carry over the text file
+                loadedUdo = this.readStoredUdo();
+                if (loadedUdo == null) {
+                    loadedUdo = defaultData;
+                }
+                this.lastRead = this.store(loadedUdo);
+                return loadedUdo;
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            return super.readOrCreateUdo(defaultData);
+        }
+    }
+
+    @Override
+    public void writeData(Udo data) throws UdoSerializationException {
+        try {
+            SharedRegion.Lock lock = this.region.lock();
+            try {
+                this.lastRead = this.store(data);
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            super.writeData(data);
+        }
+    }
+
+    @Override
+    void writeData(Udo data, Udo added) throws UdoSerializationException {
+        try {
+            SharedRegion.Lock lock = this.region.lock();
+            try {
+                Udo merged = decode(this.region.read().getData());
+                if (merged == null) {
+                    merged = data;
+                } else {
+                    merged.putAll(added);
+                }
+                // not marked as read, so this process picks up what the others added next time it looks
+                this.store(merged);
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            super.writeData(data);
+        }
+    }
+
+    @Override
+    boolean hasNewerData() {
+        return this.region.sequence() != this.lastRead;
+    }
+
+    @Override
+    Udo readNewerData() throws UdoSerializationException {
+        SharedRegion.Contents contents;
+        try {
+            contents = this.region.read();
+        } catch (IOException e) {
+            // don't keep trying on every check
+            this.lastRead = this.region.sequence();
+            throw new UdoSerializationException("Could not read shared persistent data", e);
+        }
+
+        if (contents.getSequence() == this.lastRead) {
+            return null;
+        }
+        this.lastRead = contents.getSequence();
+        return decode(contents.getData());
+    }
+
+    /**
+     * Unmap the region. Writing afterwards falls back to the text file.
+     */
+    @Override
+    void close() {
+        try {
+            this.region.close();
+        } catch (IOException e) {
+            // nothing left to release
+        }
+    }
+
+    // =========================================================================
+    // PRIVATE
+    // =========================================================================
+
+    /**
+     * Write to the region and the text file. The caller must hold the region's lock.
+     *
+     * @return the region's sequence number after the write
+     */
+    private long store(Udo data) throws UdoSerializationException, IOException {
+        long sequence = this.region.write(data.toJsonBytes());
+        super.writeData(data);
+        return sequence;
+    }
+
+    /**
+     * @return the udo, or null if the region is empty or holds something unreadable
+     */
+    private static Udo decode(byte[] data) {
+        if (data.length == 0) {
+            return null;
+        }
+        try {
+            return Udo.fromJson(new String(data, StandardCharsets.UTF_8));
+        } catch (UdoDeserializationException e) {
+            return null;
+        }
+    }
+}
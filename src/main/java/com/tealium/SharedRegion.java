@@ -0,0 +1,300 @@
+package com.tealium;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Memory-mapped file holding one byte string that processes on the same host
+ * share, guarded by a sequence lock.
+ *
+ * The file starts with a header holding a sequence number and the length of
+ * the data that follows. A writer makes the sequence odd, writes the data and
+ * makes it even again. Readers never lock: they read the sequence, copy the
+ * data and read the sequence again, and try again if it was odd or changed
+ * underneath them. Checking whether anything changed is a single read of the
+ * sequence. Writers lock each other out with a file lock, which the operating
+ * system releases if a writer process dies; a reader that finds the sequence
+ * left odd by a dead writer takes the lock and empties the region.
+ *
+ * The file grows when the data outgrows it, and readers map the larger file
+ * when they see a length that doesn't fit theirs.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class SharedRegion implements Closeable {
+    static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private static final int MAGIC = 0x544c5544; // "TLUD"
+    private static final int MAGIC_OFFSET = 0;
+    private static final int SEQUENCE_OFFSET = 8;
+    private static final int LENGTH_OFFSET = 16;
+    private static final int HEADER_SIZE = 64;
+    private static final int SPINS_BEFORE_YIELD = 64;
+    private static final long STALLED_WRITE_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    // file locks are held by the whole process and overlapping ones throw, so threads take turns first
+    private static final ConcurrentMap<Path, ReentrantLock> PROCESS_LOCKS = new ConcurrentHashMap<Path, ReentrantLock>();
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ReentrantLock processLock;
+    private volatile MappedByteBuffer buffer;
+
+    /**
+     * Open the region, creating the file if it doesn't exist.
+     *
+     * @param path
+     * @param capacity
+     *            Bytes of data a new file has room for before it has to grow.
+     * @throws IOException if the file can't be opened or isn't a shared region
+     */
+    SharedRegion(Path path, int capacity) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity should be greater than zero.");
+        }
+
+        this.path = path.toAbsolutePath().normalize();
+        Files.createDirectories(this.path.getParent());
+        ReentrantLock lock = new ReentrantLock();
+        ReentrantLock existing = PROCESS_LOCKS.putIfAbsent(this.path, lock);
+        this.processLock = existing == null ? lock : existing;
+        this.channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        try {
+            Lock writeLock = this.lock();
+            try {
+                if (this.channel.size() < HEADER_SIZE + capacity) {
+                    this.extend(HEADER_SIZE + capacity);
+                }
+                MappedByteBuffer buffer = this.map();
+                int magic = buffer.getInt(MAGIC_OFFSET);
+                if (magic == 0) {
+                    // new, or its creator died before finishing the header
+                    buffer.putLong(SEQUENCE_OFFSET, 0);
+                    buffer.putInt(LENGTH_OFFSET, 0);
+                    buffer.putInt(MAGIC_OFFSET, MAGIC);
+                } else if (magic != MAGIC) {
+                    throw new IOException(this.path + " is not a shared persistent data file");
+                }
+            } finally {
+                writeLock.release();
+            }
+        } catch (IOException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the sequence number, which changes with every write
+     */
+    long sequence() {
+        return this.buffer.getLong(SEQUENCE_OFFSET);
+    }
+
+    /**
+     * Copy the data out without locking, waiting out any write in progress.
+     *
+     * @return the data and the sequence number it was written at
+     * @throws IOException if the file can't be mapped again after it grows
+     */
+    Contents read() throws IOException {
+        long stalledSince = 0;
+        for (int spins = 0; ; spins++) {
+            MappedByteBuffer buffer = this.buffer;
+            long before = buffer.getLong(SEQUENCE_OFFSET);
+            MemoryFences.acquire();
+
+            if ((before & 1) == 0) {
+                int length = buffer.getInt(LENGTH_OFFSET);
+                if (length >= 0 && length <= buffer.capacity() - HEADER_SIZE) {
+                    byte[] data = new byte[length];
+                    ByteBuffer view = buffer.duplicate();
+                    view.position(HEADER_SIZE);
+                    view.get(data);
+                    MemoryFences.acquire();
+                    if (buffer.getLong(SEQUENCE_OFFSET) == before) {
+                        return new Contents(before, data);
+                    }
+                } else if (this.channel.size() > buffer.capacity()) {
+                    this.remap();
+                    continue;
+                } else if (buffer.getLong(SEQUENCE_OFFSET) == before) {
+                    throw new IOException(this.path + " holds a length of " + length + " bytes that doesn't fit");
+                }
+                stalledSince = 0;
+            } else if (this.processLock.isHeldByCurrentThread()) {
+                // nobody else can be writing
+                this.recoverStalledWrite(before);
+            } else if (stalledSince == 0) {
+                stalledSince = System.nanoTime();
+            } else if (System.nanoTime() - stalledSince > STALLED_WRITE_NANOS) {
+                this.recoverStalledWrite(before);
+                stalledSince = 0;
+            }
+
+            if (spins >= SPINS_BEFORE_YIELD) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Lock out every other writer, in this process or another, until the lock is released. Locks
+     * are reentrant.
+     *
+     * @throws IOException if the file lock can't be taken
+     */
+    Lock lock() throws IOException {
+        this.processLock.lock();
+        if (this.processLock.getHoldCount() > 1) {
+            return new Lock(null);
+        }
+        try {
+            return new Lock(this.channel.lock());
+        } catch (IOException e) {
+            this.processLock.unlock();
+            throw e;
+        } catch (RuntimeException e) {
+            this.processLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Replace the data. The caller must hold the {@link #lock()}.
+     *
+     * @param data
+     * @return the sequence number the data was written at
+     * @throws IOException if the file has to grow and can't
+     */
+    long write(byte[] data) throws IOException {
+        if (!this.processLock.isHeldByCurrentThread()) {
+            throw new IllegalStateException("Writing needs the lock");
+        }
+
+        MappedByteBuffer buffer = this.buffer;
+        if (data.length > buffer.capacity() - HEADER_SIZE) {
+            long size = HEADER_SIZE + (long) Integer.highestOneBit(data.length) * 2;
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Data of " + data.length + " bytes is too large to share");
+            }
+            this.extend(size);
+            buffer = this.remap();
+        }
+
+        long sequence = buffer.getLong(SEQUENCE_OFFSET) | 1;
+        buffer.putLong(SEQUENCE_OFFSET, sequence);
+        MemoryFences.release();
+        buffer.putInt(LENGTH_OFFSET, data.length);
+        ByteBuffer view = buffer.duplicate();
+        view.position(HEADER_SIZE);
+        view.put(data);
+        MemoryFences.release();
+        buffer.putLong(SEQUENCE_OFFSET, sequence + 1);
+        return sequence + 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * @return false once the region is closed
+     */
+    boolean isOpen() {
+        return this.channel.isOpen();
+    }
+
+    // =========================================================================
+    // PRIVATE
+    // =========================================================================
+
+    /**
+     * A writer left the sequence odd for a long time. If it's still odd once the file lock is
+     * free, the writer died mid-write and what it left is garbage, so the region is emptied.
+     */
+    private void recoverStalledWrite(long stalled) throws IOException {
+        Lock lock = this.lock();
+        try {
+            MappedByteBuffer buffer = this.buffer;
+            if (buffer.getLong(SEQUENCE_OFFSET) == stalled) {
+                buffer.putInt(LENGTH_OFFSET, 0);
+                MemoryFences.release();
+                buffer.putLong(SEQUENCE_OFFSET, stalled + 1);
+            }
+        } finally {
+            lock.release();
+        }
+    }
+
+    private void extend(long size) throws IOException {
+        this.channel.write(ByteBuffer.wrap(new byte[1]), size - 1);
+    }
+
+    private MappedByteBuffer map() throws IOException {
+        MappedByteBuffer buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, this.channel.size());
+        this.buffer = buffer;
+        return buffer;
+    }
+
+    private synchronized MappedByteBuffer remap() throws IOException {
+        MappedByteBuffer buffer = this.buffer;
+        return this.channel.size() > buffer.capacity() ? this.map() : buffer;
+    }
+
+    /**
+     * Data copied out of the region.
+     */
+    static final class Contents {
+        private final long sequence;
+        private final byte[] data;
+
+        Contents(long sequence, byte[] data) {
+            this.sequence = sequence;
+            this.data = data;
+        }
+
+        long getSequence() {
+            return sequence;
+        }
+
+        byte[] getData() {
+            return data;
+        }
+    }
+
+    /**
+     * Held by a writer, see {@link SharedRegion#lock()}.
+     */
+    final class Lock {
+        private final FileLock fileLock;
+
+        private Lock(FileLock fileLock) {
+            this.fileLock = fileLock;
+        }
+
+        void release() throws IOException {
+            try {
+                if (this.fileLock != null) {
+                    this.fileLock.release();
+                }
+            } finally {
+                processLock.unlock();
+            }
+        }
+    }
+}
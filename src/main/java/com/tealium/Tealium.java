@@ -1,9 +1,17 @@
 package com.tealium;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.tealium.DataManager.Key;
 import com.tealium.DataManager.EventType;
@@ -14,12 +22,22 @@ import com.tealium.DataManager.EventType;
  *
  * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
  */
-public final class Tealium {
+public final class Tealium implements AutoCloseable {
+
+    /**
+     * How long {@link #close()} waits for pending events, in milliseconds.
+     */
+    public static final long DEFAULT_CLOSE_TIMEOUT = 5000;
 
     // Public API Fields should never be public; see Effective Java Item 14
     private final DataManager dataManager;
     private final CollectDispatcher collectDispatcher;
     private final LibraryContext libraryContext;
+    private final TealiumMonitor monitor;
+    private final EventSampler sampler;
+    private final EventDeduplicator deduplicator;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private Thread shutdownHook = null;
 
     // =========================================================================
     // PUBLIC BUILDER
@@ -32,9 +50,48 @@ public final class Tealium {
         private String environment;
         private String datasource;
         private CollectDispatcher collectDispatcher = null;
+        private String[] endpoints = {CollectDispatcher.DEFAULT_URL};
         private PersistentUdo persistentData = null;
+        private PersistenceMode persistenceMode = PersistenceMode.TEXT_FILE;
         private LogLevel logLevel = LogLevel.VERBOSE;
         private int timeout = 5000;
+        private TransportType transportType = TransportType.URL_CONNECTION;
+        private boolean asyncDispatch = false;
+        private int maxDispatchThreads = 8;
+        private int initialConcurrency = 4;
+        private int maxConcurrency = 64;
+        private int queueCapacity = CollectDispatcher.DEFAULT_QUEUE_CAPACITY;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+        private long blockTimeout = 100;
+        private final Map<PriorityLane, Integer> laneCapacities = new EnumMap<PriorityLane, Integer>(PriorityLane.class);
+        private final Map<PriorityLane, OverflowPolicy> laneOverflowPolicies =
+                new EnumMap<PriorityLane, OverflowPolicy>(PriorityLane.class);
+        private final Map<PriorityLane, Integer> laneWeights = new EnumMap<PriorityLane, Integer>(PriorityLane.class);
+        private boolean jmxEnabled = false;
+        private LogHandler logHandler = null;
+        private boolean asyncLogging = false;
+        private boolean shutdownHook = false;
+        private boolean lazyInitialization = false;
+        private long sessionTimeout = 0;
+        private int maxSessions;
+        private final Map<String, Double> samplingRates = new HashMap<String, Double>();
+        private final Map<String, Double> rateLimits = new HashMap<String, Double>();
+        private final Map<String, Integer> rateLimitBursts = new HashMap<String, Integer>();
+        private int maxBodySize = Integer.MAX_VALUE;
+        private OversizedEventPolicy oversizedEventPolicy = OversizedEventPolicy.REJECT;
+        private boolean pooledBuffers = false;
+        private int warmConnections = 0;
+        private double hedgePercentile = 0;
+        private double maxHedgePercent;
+        private Executor callbackExecutor = null;
+        private BatchDispatchCallback batchCallback = null;
+        private int callbackBatchSize;
+        private long callbackBatchDelay;
+        private long keepAliveInterval;
+        private String[] deduplicationKeys = null;
+        private long deduplicationWindow;
+        private int deduplicationExpectedEvents;
+        private double deduplicationFalsePositiveRate;
 
         /**
          * Constructor for a new Tealium object.
@@ -100,20 +157,138 @@ public final class Tealium {
                     String.format(Locale.ROOT, "%s.%s.data", this.account, this.profile));
 
             LibraryContext libraryContext = new LibraryContext(this.account, this.profile,
-                    this.environment, this.datasource, new Logger(this.logLevel));
+                    this.environment, this.datasource, this.createLogger());
 
 
             // set the persistent data if it hasn't been explicitly set with the setPersistentData() method.
             if(this.persistentData == null) {
-                this.persistentData = new PersistentUdo(new TextStorage(persistentFilePath));
+                this.persistentData = this.createPersistentData(persistentFilePath, libraryContext.getLogger());
             }
 
             // set the collect dipatcher if it hasn't been explicitly set with the setCollectDispatcher() method.
             if(this.collectDispatcher == null) {
-                this.collectDispatcher = new CollectDispatcher(CollectDispatcher.DEFAULT_URL, libraryContext, timeout);
+                this.collectDispatcher = new CollectDispatcher(this.endpoints[0], libraryContext, timeout,
+                        CollectTransports.create(this.transportType, this.timeout, libraryContext.getLogger()),
+                        this.asyncDispatch
+                                ? DispatchExecutors.newDispatchExecutor(this.maxDispatchThreads, libraryContext.getLogger())
+                                : null,
+                        this.asyncDispatch
+                                ? new ConcurrencyLimiter(this.initialConcurrency, 1, this.maxConcurrency)
+                                : null,
+                        this.createLaneSettings(persistentFilePath));
+                this.collectDispatcher.setAlternateEndpoints(
+                        Arrays.asList(this.endpoints).subList(1, this.endpoints.length));
+                this.collectDispatcher.setMaxBodySize(this.maxBodySize, this.oversizedEventPolicy);
+                if (this.pooledBuffers) {
+                    this.collectDispatcher.setBufferPool(new PayloadBufferPool(
+                            Math.max(PayloadBufferPool.DEFAULT_POOLED_BUFFERS, this.maxConcurrency)));
+                }
+                if (this.hedgePercentile > 0) {
+                    this.collectDispatcher.setHedging(this.hedgePercentile, this.maxHedgePercent);
+                }
+                this.collectDispatcher.setCallbackExecutor(this.callbackExecutor);
+                if (this.batchCallback != null) {
+                    this.collectDispatcher.setCallbackBatcher(new CallbackBatcher(this.batchCallback,
+                            this.callbackBatchSize, this.callbackBatchDelay, libraryContext.getLogger()));
+                }
+                if (this.warmConnections > 0) {
+                    try {
+                        this.collectDispatcher.startConnectionWarmup(this.warmConnections, this.keepAliveInterval);
+                    } catch (IllegalStateException e) {
+                        libraryContext.getLogger().log(e, LogLevel.WARNINGS);
+                    }
+                }
+            }
+
+            EventSampler sampler = null;
+            if (!this.samplingRates.isEmpty() || !this.rateLimits.isEmpty()) {
+                Map<String, TokenBucket> buckets = new HashMap<String, TokenBucket>();
+                for (Map.Entry<String, Double> limit : this.rateLimits.entrySet()) {
+                    buckets.put(limit.getKey(),
+                            new TokenBucket(limit.getValue(), this.rateLimitBursts.get(limit.getKey())));
+                }
+                sampler = new EventSampler(this.samplingRates, buckets);
+            }
+
+            EventDeduplicator deduplicator = this.deduplicationKeys == null
+                    ? null
+                    : new EventDeduplicator(Arrays.asList(this.deduplicationKeys), this.deduplicationWindow,
+                            this.deduplicationExpectedEvents, this.deduplicationFalsePositiveRate);
+
+            Tealium tealium = new Tealium(libraryContext, this.collectDispatcher, this.persistentData, this.timeout,
+                    sampler, deduplicator, this.lazyInitialization ? DataManager.newLoader() : null);
+
+            if (this.sessionTimeout > 0) {
+                tealium.dataManager.setSessionManager(new SessionManager(this.sessionTimeout, this.maxSessions));
+            }
+
+            if (this.jmxEnabled) {
+                tealium.monitor.register();
+            }
+
+            if (this.shutdownHook) {
+                tealium.addShutdownHook();
+            }
+
+            return tealium;
+        }
+
+        private PersistentUdo createPersistentData(Path persistentFilePath, Logger logger) {
+            TextStorage textStorage = new TextStorage(persistentFilePath);
+            switch (this.persistenceMode) {
+                case SHARED_MEMORY:
+                    try {
+                        return new SharedPersistentUdo(textStorage, new SharedRegion(
+                                persistentFilePath.resolveSibling(String.format(Locale.ROOT, "%s.%s.shared",
+                                        this.account, this.profile)),
+                                SharedRegion.DEFAULT_CAPACITY));
+                    } catch (IOException e) {
+                        logger.log(e, LogLevel.ERRORS);
+                    }
+                    break;
+                case DELTA_LOG:
+                    return new DeltaLogPersistentUdo(textStorage,
+                            persistentFilePath.resolveSibling(String.format(Locale.ROOT, "%s.%s.log",
+                                    this.account, this.profile)),
+                            DeltaLogPersistentUdo.DEFAULT_COMPACTION_THRESHOLD,
+                            DeltaLogPersistentUdo.newCompactor());
+                default:
+                    break;
             }
+            return new PersistentUdo(textStorage);
+        }
+
+        private Map<PriorityLane, LaneSettings> createLaneSettings(Path persistentFilePath) {
+            Map<PriorityLane, LaneSettings> lanes = new EnumMap<PriorityLane, LaneSettings>(PriorityLane.class);
+            for (PriorityLane lane : PriorityLane.values()) {
+                Integer capacity = this.laneCapacities.get(lane);
+                OverflowPolicy policy = this.laneOverflowPolicies.get(lane);
+                Integer weight = this.laneWeights.get(lane);
+                if (policy == null) {
+                    policy = this.overflowPolicy;
+                }
 
-            return new Tealium(libraryContext, this.collectDispatcher, this.persistentData, this.timeout);
+                DiskSpool spool = policy == OverflowPolicy.SPILL_TO_DISK
+                        ? new DiskSpool(persistentFilePath.resolveSibling(String.format(Locale.ROOT, "%s.%s.%s.spool",
+                                this.account, this.profile, lane.name().toLowerCase(Locale.ROOT))))
+                        : null;
+                lanes.put(lane, new LaneSettings(
+                        capacity == null ? this.queueCapacity : capacity,
+                        policy,
+                        this.blockTimeout,
+                        weight == null ? lane.getDefaultWeight() : weight,
+                        spool));
+            }
+            return lanes;
+        }
+
+        private Logger createLogger() {
+            if (this.logHandler == null && !this.asyncLogging) {
+                return new Logger(this.logLevel);
+            }
+            return new Logger(this.logLevel,
+                    this.logHandler == null ? new Logger.PrintStreamHandler(System.out) : this.logHandler,
+                    this.asyncLogging);
         }
 
         public Builder setLogLevel(LogLevel level) {
@@ -124,6 +299,31 @@ public final class Tealium {
             return this;
         }
         
+        /**
+         * Send library log output to the host application's logging, e.g. with a {@link JulLogHandler}.
+         *
+         * @param logHandler
+         *            Defaults to printing to System.out.
+         */
+        public Builder setLogHandler(LogHandler logHandler) {
+            if (logHandler == null) {
+                throw new IllegalArgumentException("Invalid log handler.");
+            }
+            this.logHandler = logHandler;
+            return this;
+        }
+
+        /**
+         * Publish log output from a background thread, so tracking threads never wait on the log handler.
+         *
+         * @param asyncLogging
+         *            Defaults to false.
+         */
+        public Builder setAsyncLogging(boolean asyncLogging) {
+            this.asyncLogging = asyncLogging;
+            return this;
+        }
+
         public Builder setEnvironment(String environment) {
         	if (environment == null) {
                 throw new IllegalArgumentException("Invalid environment.");
@@ -145,11 +345,49 @@ public final class Tealium {
             return this;
         }
 
+        /**
+         * Send to a list of collect endpoints instead of just the default one, e.g. regional
+         * ones or an on-premises relay. Each event goes to the healthy endpoint that has been
+         * answering fastest, taking sends in flight into account, and is retried on the others
+         * if it fails or the endpoint is overloaded. Endpoints that keep failing are left out
+         * for a while, longer each time. Connection warmup only covers the first endpoint.
+         *
+         * @param endpoints
+         *            Collect urls, without any query string. Defaults to {@link CollectDispatcher#DEFAULT_URL}.
+         */
+        public Builder setCollectEndpoints(String... endpoints) {
+            if (endpoints == null || endpoints.length == 0 || endpoints.length > EndpointSelector.MAX_ENDPOINTS) {
+                throw new IllegalArgumentException("Invalid endpoints.");
+            }
+            for (String endpoint : endpoints) {
+                if (stringIsNullOrEmpty(endpoint)) {
+                    throw new IllegalArgumentException("Invalid endpoints.");
+                }
+            }
+            this.endpoints = endpoints.clone();
+            return this;
+        }
+
         public Builder setPersistentData(PersistentUdo persistentData) {
             this.persistentData = persistentData;
             return this;
         }
 
+        /**
+         * Choose how persistent data is kept on disk.
+         *
+         * @param persistenceMode
+         *            Defaults to {@link PersistenceMode#TEXT_FILE}. Ignored when {@link #setPersistentData}
+         *            is used.
+         */
+        public Builder setPersistenceMode(PersistenceMode persistenceMode) {
+            if (persistenceMode == null) {
+                throw new IllegalArgumentException("Invalid persistence mode.");
+            }
+            this.persistenceMode = persistenceMode;
+            return this;
+        }
+
         public Builder setTimeout(int timeout) {
             if (timeout == 0) {
                 throw new IllegalArgumentException("Timeout should be greater than zero.");
@@ -158,6 +396,422 @@ public final class Tealium {
             return this;
         }
 
+        /**
+         * Choose the HTTP client used for collect dispatches. {@link TransportType#HTTP_CLIENT}
+         * sends asynchronously, so track callbacks fire after track returns.
+         *
+         * @param transportType
+         *            Defaults to {@link TransportType#URL_CONNECTION}.
+         */
+        public Builder setTransport(TransportType transportType) {
+            if (transportType == null) {
+                throw new IllegalArgumentException("Invalid transport.");
+            }
+            this.transportType = transportType;
+            return this;
+        }
+
+        /**
+         * Send collect calls in the background so track returns without waiting on the network.
+         * Sends run on virtual threads on Java 21+, otherwise on a bounded pool of platform threads.
+         *
+         * @param asyncDispatch
+         *            Defaults to false, where track blocks until the collect call completes.
+         */
+        public Builder setAsyncDispatch(boolean asyncDispatch) {
+            this.asyncDispatch = asyncDispatch;
+            return this;
+        }
+
+        /**
+         * Size of the platform thread pool used for asynchronous dispatch when virtual threads
+         * aren't available.
+         *
+         * @param maxDispatchThreads
+         *            Defaults to 8.
+         */
+        public Builder setMaxDispatchThreads(int maxDispatchThreads) {
+            if (maxDispatchThreads <= 0) {
+                throw new IllegalArgumentException("Max dispatch threads should be greater than zero.");
+            }
+            this.maxDispatchThreads = maxDispatchThreads;
+            return this;
+        }
+
+        /**
+         * Bounds for the adaptive limit on collect sends in flight during asynchronous dispatch.
+         * The limit starts at the initial value, grows while collect latency stays flat and backs
+         * off when latency or errors climb. With a platform thread pool, the pool size also caps it.
+         * An event that gets no room within the request timeout is dropped and its callback fails.
+         *
+         * @param initialConcurrency
+         *            Defaults to 4.
+         * @param maxConcurrency
+         *            Defaults to 64.
+         */
+        public Builder setConcurrencyLimits(int initialConcurrency, int maxConcurrency) {
+            if (initialConcurrency <= 0 || maxConcurrency < initialConcurrency) {
+                throw new IllegalArgumentException("Concurrency limits should satisfy 0 < initial <= max.");
+            }
+            this.initialConcurrency = initialConcurrency;
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * Maximum number of events waiting to be sent in each priority lane during asynchronous
+         * dispatch, unless set for the lane with {@link #setPriorityLane}.
+         *
+         * @param queueCapacity
+         *            Defaults to 10000. Rounded up to a power of two.
+         */
+        public Builder setQueueCapacity(int queueCapacity) {
+            if (queueCapacity <= 0) {
+                throw new IllegalArgumentException("Queue capacity should be greater than zero.");
+            }
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * What track does with an event when its priority lane of the asynchronous dispatch queue is
+         * full, unless set for the lane with {@link #setPriorityLane}. Dropped events fail their
+         * callback.
+         *
+         * @param overflowPolicy
+         *            Defaults to {@link OverflowPolicy#DROP_NEWEST}.
+         */
+        public Builder setOverflowPolicy(OverflowPolicy overflowPolicy) {
+            if (overflowPolicy == null) {
+                throw new IllegalArgumentException("Invalid overflow policy.");
+            }
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        /**
+         * Queue settings for one priority lane of asynchronous dispatch. Events are put in lanes by
+         * tealium_event_type, see {@link PriorityLane#forEventType}, and while several lanes have
+         * events waiting each gets a share of sends in proportion to its weight.
+         *
+         * @param lane
+         * @param capacity
+         *            Maximum number of events waiting in the lane. Rounded up to a power of two.
+         * @param overflowPolicy
+         *            What track does with an event when the lane is full.
+         * @param weight
+         *            Share of sends. Defaults to {@link PriorityLane#getDefaultWeight()}.
+         */
+        public Builder setPriorityLane(PriorityLane lane, int capacity, OverflowPolicy overflowPolicy, int weight) {
+            if (lane == null) {
+                throw new IllegalArgumentException("Invalid priority lane.");
+            }
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("Queue capacity should be greater than zero.");
+            }
+            if (overflowPolicy == null) {
+                throw new IllegalArgumentException("Invalid overflow policy.");
+            }
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Lane weight should be greater than zero.");
+            }
+            this.laneCapacities.put(lane, capacity);
+            this.laneOverflowPolicies.put(lane, overflowPolicy);
+            this.laneWeights.put(lane, weight);
+            return this;
+        }
+
+        /**
+         * How long track waits for room in a full queue under {@link OverflowPolicy#BLOCK}.
+         *
+         * @param blockTimeout
+         *            In milliseconds. Defaults to 100.
+         */
+        public Builder setBlockTimeout(long blockTimeout) {
+            if (blockTimeout < 0) {
+                throw new IllegalArgumentException("Block timeout should not be negative.");
+            }
+            this.blockTimeout = blockTimeout;
+            return this;
+        }
+
+        /**
+         * Serialize events into a pool of reusable buffers instead of a new array per event, so
+         * steady state dispatch allocates close to nothing beyond the event data itself.
+         *
+         * @param pooledBuffers
+         *            Defaults to false.
+         */
+        public Builder setPooledBuffers(boolean pooledBuffers) {
+            this.pooledBuffers = pooledBuffers;
+            return this;
+        }
+
+        /**
+         * Open connections to collect in the background while building, and keep them open
+         * through idle periods with HEAD requests, so the first events and those after a quiet
+         * spell don't pay for DNS, TCP and TLS handshakes. The JDK keeps at most 5 idle
+         * connections per host unless the http.maxConnections system property says otherwise,
+         * and {@link TransportType#HTTP_CLIENT} needs only one.
+         *
+         * @param connections
+         *            Connections to keep warm. Defaults to 0, no warming.
+         * @param keepAliveIntervalMillis
+         *            How often to check the connections are still open. Should be shorter than
+         *            collect's keep-alive timeout, which the JDK takes to be 5 seconds when collect
+         *            doesn't say.
+         */
+        public Builder setConnectionWarmup(int connections, long keepAliveIntervalMillis) {
+            if (connections <= 0) {
+                throw new IllegalArgumentException("Warm connections should be greater than zero.");
+            }
+            if (keepAliveIntervalMillis <= 0) {
+                throw new IllegalArgumentException("Keep-alive interval should be greater than zero.");
+            }
+            this.warmConnections = connections;
+            this.keepAliveInterval = keepAliveIntervalMillis;
+            return this;
+        }
+
+        /**
+         * Cut tail latency by hedging slow sends. A send still waiting for collect after the
+         * given percentile of collect latency so far is duplicated, to another endpoint if
+         * there are several, and whichever answers first is used. Collect may then see an
+         * event twice. Hedging starts once there have been enough sends to know the latency.
+         *
+         * @param percentile
+         *            Latency percentile after which a send is hedged, e.g. 95.
+         * @param maxHedgePercent
+         *            Most hedges as a percentage of sends, e.g. 5.
+         */
+        public Builder setHedging(double percentile, double maxHedgePercent) {
+            if (!(percentile > 0 && percentile < 100)) {
+                throw new IllegalArgumentException("Hedge percentile should be between 0 and 100.");
+            }
+            if (!(maxHedgePercent > 0 && maxHedgePercent <= 100)) {
+                throw new IllegalArgumentException("Max hedge percent should be between 0 and 100.");
+            }
+            this.hedgePercentile = percentile;
+            this.maxHedgePercent = maxHedgePercent;
+            return this;
+        }
+
+        /**
+         * Call dispatch callbacks from an executor rather than the thread that sent the event,
+         * so slow callbacks don't hold up sending. With more than one thread, callbacks may run
+         * out of order. The executor isn't shut down when Tealium closes.
+         *
+         * @param callbackExecutor
+         *            Defaults to null, callbacks run on the sending thread.
+         */
+        public Builder setCallbackExecutor(Executor callbackExecutor) {
+            this.callbackExecutor = callbackExecutor;
+            return this;
+        }
+
+        /**
+         * Report the outcome of every dispatched event to one callback, a batch at a time,
+         * instead of, or as well as, per event callbacks. Batches run on the callback executor
+         * if there is one.
+         *
+         * @param batchCallback
+         *            Called with each batch.
+         * @param batchSize
+         *            Events per batch.
+         * @param maxDelayMillis
+         *            Longest an outcome waits before its batch is delivered, even if not full.
+         */
+        public Builder setBatchDispatchCallback(BatchDispatchCallback batchCallback, int batchSize,
+                                                long maxDelayMillis) {
+            if (batchCallback == null) {
+                throw new IllegalArgumentException("Invalid batch dispatch callback.");
+            }
+            if (batchSize <= 0) {
+                throw new IllegalArgumentException("Batch size should be greater than zero.");
+            }
+            if (maxDelayMillis <= 0) {
+                throw new IllegalArgumentException("Max batch delay should be greater than zero.");
+            }
+            this.batchCallback = batchCallback;
+            this.callbackBatchSize = batchSize;
+            this.callbackBatchDelay = maxDelayMillis;
+            return this;
+        }
+
+        /**
+         * Register a {@link TealiumMXBean} for this instance with the platform MBean server.
+         * The server holds on to the instance until {@link Tealium#close()} unregisters it, so
+         * an instance built with JMX enabled must be closed.
+         *
+         * @param jmxEnabled
+         *            Defaults to false.
+         */
+        public Builder setJmxEnabled(boolean jmxEnabled) {
+            this.jmxEnabled = jmxEnabled;
+            return this;
+        }
+
+        /**
+         * Limit the size of collect request bodies. Events whose payload is over the limit are
+         * rejected or truncated according to the policy; either way the callback is told.
+         *
+         * @param maxBodySize
+         *            In bytes. Defaults to no limit.
+         * @param oversizedEventPolicy
+         *            Defaults to {@link OversizedEventPolicy#REJECT}.
+         */
+        public Builder setMaxBodySize(int maxBodySize, OversizedEventPolicy oversizedEventPolicy) {
+            if (maxBodySize <= 0) {
+                throw new IllegalArgumentException("Max body size should be greater than zero.");
+            }
+            if (oversizedEventPolicy == null) {
+                throw new IllegalArgumentException("Invalid oversized event policy.");
+            }
+            this.maxBodySize = maxBodySize;
+            this.oversizedEventPolicy = oversizedEventPolicy;
+            return this;
+        }
+
+        /**
+         * Only send events of a type for a share of visitors. Whether a visitor is sampled is
+         * decided by a hash of tealium_visitor_id from the event data or the persistent data, so
+         * it's the same for every event; events without a visitor id are sampled at random.
+         * Conversion events are always sent.
+         *
+         * @param eventType
+         *            One of {@link DataManager.EventType}.
+         * @param samplingRate
+         *            Share of visitors whose events are sent, 0 to 1.
+         */
+        public Builder setSamplingRate(String eventType, double samplingRate) {
+            checkSampledEventType(eventType);
+            if (!(samplingRate >= 0 && samplingRate <= 1)) {
+                throw new IllegalArgumentException("Sampling rate should be between 0 and 1.");
+            }
+            this.samplingRates.put(eventType, samplingRate);
+            return this;
+        }
+
+        /**
+         * Limit how many events of a type are sent, after sampling. Events over the limit are
+         * discarded before their payload is assembled. Conversion events are always sent.
+         *
+         * @param eventType
+         *            One of {@link DataManager.EventType}.
+         * @param eventsPerSecond
+         *            Sustained rate.
+         * @param burst
+         *            Events that can be sent at once after a quiet period.
+         */
+        public Builder setRateLimit(String eventType, double eventsPerSecond, int burst) {
+            checkSampledEventType(eventType);
+            if (!(eventsPerSecond > 0) || burst <= 0) {
+                throw new IllegalArgumentException("Rate limit and burst should be greater than zero.");
+            }
+            this.rateLimits.put(eventType, eventsPerSecond);
+            this.rateLimitBursts.put(eventType, burst);
+            return this;
+        }
+
+        /**
+         * Suppress repeated track calls for the same event, e.g. from retries. Events are the
+         * same when their payloads have the same values for the given keys; events with none of
+         * the keys are always sent. Repeats are remembered in fixed memory sized from the expected
+         * event count and false positive rate, and caught for between half and all of the window.
+         * An event is only remembered once it was delivered, so retrying one that failed sends it
+         * again, but a repeat tracked while the first is still being sent isn't caught.
+         *
+         * @param windowMillis
+         *            How long an event is remembered.
+         * @param expectedEvents
+         *            Events expected per window.
+         * @param falsePositiveRate
+         *            Chance of suppressing an event that isn't a repeat, e.g. 0.001.
+         * @param keys
+         *            Keys identifying an event, e.g. an order id.
+         */
+        public Builder setDeduplication(long windowMillis, int expectedEvents, double falsePositiveRate,
+                                        String... keys) {
+            if (windowMillis <= 0 || expectedEvents <= 0) {
+                throw new IllegalArgumentException("Deduplication window and expected events should be greater than zero.");
+            }
+            if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+                throw new IllegalArgumentException("False positive rate should be between 0 and 1.");
+            }
+            if (keys == null || keys.length == 0) {
+                throw new IllegalArgumentException("Invalid deduplication keys.");
+            }
+            for (String key : keys) {
+                if (stringIsNullOrEmpty(key)) {
+                    throw new IllegalArgumentException("Invalid deduplication keys.");
+                }
+            }
+            this.deduplicationKeys = keys.clone();
+            this.deduplicationWindow = windowMillis;
+            this.deduplicationExpectedEvents = expectedEvents;
+            this.deduplicationFalsePositiveRate = falsePositiveRate;
+            return this;
+        }
+
+        private static void checkSampledEventType(String eventType) {
+            if (stringIsNullOrEmpty(eventType)) {
+                throw new IllegalArgumentException("Invalid event type.");
+            }
+            if (EventType.CONVERSION.equals(eventType)) {
+                throw new IllegalArgumentException("Conversion events can't be sampled or rate limited.");
+            }
+        }
+
+        /**
+         * Close the instance when the JVM exits, giving pending events {@link #DEFAULT_CLOSE_TIMEOUT}
+         * to be sent.
+         *
+         * @param shutdownHook
+         *            Defaults to false.
+         */
+        public Builder setShutdownHook(boolean shutdownHook) {
+            this.shutdownHook = shutdownHook;
+            return this;
+        }
+
+        /**
+         * Give each visitor its own tealium_session_id, which ends after the visitor has gone
+         * the timeout without an event, instead of one session for the whole instance. Visitors
+         * are told apart by tealium_visitor_id, from the event data or else the persistent data;
+         * events without one keep the instance's session.
+         *
+         * @param idleTimeoutMillis
+         *            Time without events that ends a session, usually 30 minutes.
+         * @param maxSessions
+         *            Most sessions kept in memory at once. When full, the sessions closest to
+         *            timing out are ended first.
+         */
+        public Builder setVisitorSessions(long idleTimeoutMillis, int maxSessions) {
+            if (idleTimeoutMillis <= 0) {
+                throw new IllegalArgumentException("Session timeout should be greater than zero.");
+            }
+            if (maxSessions <= 0) {
+                throw new IllegalArgumentException("Max sessions should be greater than zero.");
+            }
+            this.sessionTimeout = idleTimeoutMillis;
+            this.maxSessions = maxSessions;
+            return this;
+        }
+
+        /**
+         * Load persistent data and seed the random number generator on a background thread, so
+         * build returns without waiting on file I/O or entropy. The first track waits up to 250
+         * milliseconds for the load, and events tracked before it finishes carry the default
+         * persistent data. Adding persistent data waits for the load.
+         *
+         * @param lazyInitialization
+         *            Defaults to false.
+         */
+        public Builder setLazyInitialization(boolean lazyInitialization) {
+            this.lazyInitialization = lazyInitialization;
+            return this;
+        }
+
     }
 
     // =========================================================================
@@ -183,6 +837,24 @@ public final class Tealium {
         public void dispatchComplete(boolean success, Map<String, Object> info, String error);
     }
 
+    /**
+     * Optional interface for a call-back object that reports the outcome of
+     * dispatched events a batch at a time.
+     */
+    public interface BatchDispatchCallback {
+        /**
+         * Required method to handle a batch.
+         *
+         * @param succeeded
+         *            Events sent.
+         * @param failed
+         *            Events that failed.
+         * @param errors
+         *            Error of each failed event.
+         */
+        public void batchComplete(int succeeded, int failed, List<String> errors);
+    }
+
     // =========================================================================
     // PUBLIC
     // =========================================================================
@@ -207,6 +879,76 @@ public final class Tealium {
     	return this.libraryContext.getDatasource();
     }
 
+    /**
+     * Read the current track and dispatch metrics. Taking a snapshot copies the latency
+     * histograms, so poll it from a reporting thread rather than per event.
+     *
+     * @return point in time copy of this instance's metrics
+     */
+    public MetricsSnapshot getMetrics() {
+        return this.libraryContext.getMetrics().snapshot();
+    }
+
+    /**
+     * Wait for tracked events to be sent, e.g. before a batch job exits. Events tracked
+     * while flushing are waited for too.
+     *
+     * @param timeout
+     * @param unit
+     * @return the number of events still pending at the deadline
+     * @throws InterruptedException
+     */
+    public int flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int pending = this.collectDispatcher.flush(timeout, unit);
+        this.libraryContext.getLogger().flush(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        return pending;
+    }
+
+    /**
+     * Flush and release this instance. Events still queued at the deadline are kept in the
+     * spool when spilling to disk, otherwise their callbacks fail. Tracking after close fails
+     * the callback. Closing again does nothing.
+     *
+     * @param timeout
+     * @param unit
+     * @return the number of events still pending at the deadline
+     * @throws InterruptedException
+     */
+    public int close(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!this.closed.compareAndSet(false, true)) {
+            return 0;
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int pending;
+        try {
+            pending = this.collectDispatcher.close(timeout, unit);
+            if (pending > 0) {
+                this.libraryContext.getLogger().log(LogLevel.ERRORS,
+                        "{} events were still pending when Tealium closed.", pending);
+            }
+        } finally {
+            this.monitor.unregister();
+            this.removeShutdownHook();
+            this.dataManager.close();
+            this.libraryContext.getLogger().close(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+        return pending;
+    }
+
+    /**
+     * {@link #close(long, TimeUnit)} with {@link #DEFAULT_CLOSE_TIMEOUT}.
+     */
+    @Override
+    public void close() {
+        try {
+            this.close(DEFAULT_CLOSE_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Convenient basic track event.
      * 
@@ -297,11 +1039,22 @@ public final class Tealium {
      */
     public void track(String eventType, String eventTitle, Udo eventData, Tealium.DispatchCallback callback) {
 
-        Udo payloadData = this.dataManager.getPersistentData();
+        this.libraryContext.getMetrics().eventTracked();
 
         if (eventType == null) {
             eventType = EventType.ACTIVITY;
         }
+
+        if (this.sampler != null && !this.admit(eventType, eventData, callback)) {
+            return;
+        }
+
+        Object trackEvent = JfrEvents.beginTrack();
+        Object assembleEvent = JfrEvents.beginPhase();
+
+        // the persistent data is a shared snapshot, each event adds to its own layer over it
+        Udo payloadData = this.dataManager.getPersistentSnapshot().newLayer();
+
         payloadData.put(Key.TEALIUM_EVENT_TYPE, eventType);
 
         if (eventTitle != null) {
@@ -314,17 +1067,38 @@ public final class Tealium {
         	payloadData.put(Key.TEALIUM_DATASOURCE, this.getDatasource());
         }
         
-        payloadData.putAll(this.dataManager.getVolatileData());
+        this.dataManager.addVolatileData(payloadData, eventData);
 
         if (eventData != null) {
-            payloadData.putAll(new Udo(eventData));
+            payloadData.putAll(eventData);
+        }
+
+        JfrEvents.commitPhase(assembleEvent, DispatchPhase.ASSEMBLE, 0, DispatchPhase.OUTCOME_SUCCESS);
+
+        if (this.deduplicator != null) {
+            long fingerprint = this.deduplicator.fingerprint(payloadData);
+            if (this.deduplicator.isDuplicate(fingerprint)) {
+                this.libraryContext.getMetrics().duplicateHit();
+                this.collectDispatcher.discarded(payloadData, callback,
+                        "Event was a repeat of one delivered within the deduplication window");
+                JfrEvents.commitTrack(trackEvent, eventType, payloadData.size(), DispatchPhase.OUTCOME_FAILURE);
+                return;
+            }
+            this.libraryContext.getMetrics().duplicateMiss();
+            if (fingerprint != EventDeduplicator.NONE) {
+                callback = this.deduplicator.whenDelivered(fingerprint, callback);
+            }
         }
 
+        String outcome = DispatchPhase.OUTCOME_SUCCESS;
         try {
             this.collectDispatcher.dispatch(payloadData, callback);
         } catch (CollectDispatchException e) {
+            outcome = DispatchPhase.OUTCOME_FAILURE;
             this.libraryContext.getLogger().log(e, LogLevel.ERRORS);
         }
+
+        JfrEvents.commitTrack(trackEvent, eventType, payloadData.size(), outcome);
     }
 
     /**
@@ -352,12 +1126,63 @@ public final class Tealium {
     // PRIVATE
     // =========================================================================
 
-    private Tealium(LibraryContext libraryContext, CollectDispatcher collectDispatcher, PersistentUdo persistentData, int timeout) {
+    /**
+     * Apply sampling and rate limits, failing the callback of a discarded event.
+     *
+     * @return true if the event should be sent
+     */
+    private boolean admit(String eventType, Udo eventData, Tealium.DispatchCallback callback) {
+        EventSampler.Decision decision = this.sampler.admit(eventType, eventData, this.dataManager.getPersistentSnapshot());
+        if (decision == EventSampler.Decision.ADMITTED) {
+            return true;
+        }
+
+        String error;
+        if (decision == EventSampler.Decision.NOT_SAMPLED) {
+            this.libraryContext.getMetrics().eventNotSampled();
+            error = "Event was not sampled";
+        } else {
+            this.libraryContext.getMetrics().eventRateLimited();
+            error = "Event was over the rate limit for its type";
+        }
+
+        this.collectDispatcher.discarded(eventData, callback, error);
+        return false;
+    }
+
+    private synchronized void addShutdownHook() {
+        this.shutdownHook = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        }, "tealium-shutdown");
+        Runtime.getRuntime().addShutdownHook(this.shutdownHook);
+    }
+
+    private synchronized void removeShutdownHook() {
+        if (this.shutdownHook == null || this.shutdownHook == Thread.currentThread()) {
+            return;
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(this.shutdownHook);
+        } catch (IllegalStateException e) {
+            // the JVM is already shutting down and the hook is running
+        }
+        this.shutdownHook = null;
+    }
+
+    private Tealium(LibraryContext libraryContext, CollectDispatcher collectDispatcher, PersistentUdo persistentData, int timeout,
+                    EventSampler sampler, EventDeduplicator deduplicator, Executor loader) {
         super();
         this.libraryContext = libraryContext;
-        this.dataManager = new DataManager(this.libraryContext, persistentData);
+        this.dataManager = new DataManager(this.libraryContext, persistentData, loader,
+                DataManager.DEFAULT_LOAD_WAIT_MILLIS);
         // Is the URL in the constructor future proofing?
         this.collectDispatcher = collectDispatcher;
+        this.monitor = new TealiumMonitor(this.libraryContext, this.collectDispatcher);
+        this.sampler = sampler;
+        this.deduplicator = deduplicator;
     }
 
 }
@@ -0,0 +1,76 @@
+package com.tealium;
+
+/**
+ * JMX view of a running Tealium instance, registered as
+ * com.tealium:type=Tealium,account=&lt;account&gt;,profile=&lt;profile&gt;.
+ *
+ * Attributes are computed when read, so an idle JMX connection costs nothing
+ * on the track path. Latencies are in microseconds.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public interface TealiumMXBean {
+
+    long getEventsTracked();
+
+    long getEventsDispatched();
+
+    long getEventsFailed();
+
+    long getEventsDropped();
+
+    long getQueueDepth();
+
+    long getInFlight();
+
+    /**
+     * @return number of sends that found an idle connection open
+     */
+    long getWarmConnectionSends();
+
+    /**
+     * @return number of sends that had to open a new connection
+     */
+    long getColdConnectionSends();
+
+    /**
+     * @return idle connections ready for the next sends
+     */
+    int getIdleConnections();
+
+    long getP50LatencyMicros();
+
+    long getP99LatencyMicros();
+
+    /**
+     * @return one of the {@link LogLevel} names
+     */
+    String getLogLevel();
+
+    void setLogLevel(String logLevel);
+
+    /**
+     * @return the number of platform threads sending asynchronously, or 0 when sends run on
+     *         the tracking thread or on virtual threads
+     */
+    int getMaxDispatchThreads();
+
+    void setMaxDispatchThreads(int maxDispatchThreads);
+
+    /**
+     * @return the current adaptive limit on sends in flight, or 0 when sends aren't limited
+     */
+    int getConcurrencyLimit();
+
+    /**
+     * @return the ceiling of the adaptive limit on sends in flight, or 0 when sends aren't limited
+     */
+    int getMaxConcurrencyLimit();
+
+    void setMaxConcurrencyLimit(int maxConcurrencyLimit);
+
+    /**
+     * @return number of events waiting in the overflow spool file
+     */
+    int getSpoolSize();
+}
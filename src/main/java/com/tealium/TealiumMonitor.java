@@ -0,0 +1,177 @@
+package com.tealium;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * {@link TealiumMXBean} implementation, reading straight from the live
+ * metrics and dispatcher of one Tealium instance.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class TealiumMonitor implements TealiumMXBean {
+    private static final int MAX_REGISTRATION_ATTEMPTS = 100;
+
+    private final LibraryContext libraryContext;
+    private final CollectDispatcher collectDispatcher;
+    private ObjectName objectName;
+
+    TealiumMonitor(LibraryContext libraryContext, CollectDispatcher collectDispatcher) {
+        this.libraryContext = libraryContext;
+        this.collectDispatcher = collectDispatcher;
+    }
+
+    /**
+     * Register with the platform MBean server. Instances sharing an account and profile get an
+     * extra instance key. Failures are logged rather than thrown, monitoring should never stop
+     * tracking from working.
+     */
+    void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String baseName = "com.tealium:type=Tealium"
+                + ",account=" + ObjectName.quote(this.libraryContext.getAccount())
+                + ",profile=" + ObjectName.quote(this.libraryContext.getProfile());
+
+        try {
+            for (int instance = 1; instance <= MAX_REGISTRATION_ATTEMPTS; instance++) {
+                ObjectName name = new ObjectName(instance == 1 ? baseName : baseName + ",instance=" + instance);
+                try {
+                    server.registerMBean(this, name);
+                    this.objectName = name;
+                    return;
+                } catch (InstanceAlreadyExistsException e) {
+                    // try the next instance number
+                }
+            }
+            this.libraryContext.getLogger().log("Too many Tealium instances to register with JMX.", LogLevel.WARNINGS);
+        } catch (JMException e) {
+            this.libraryContext.getLogger().log(e, LogLevel.WARNINGS);
+        }
+    }
+
+    void unregister() {
+        if (this.objectName == null) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+        } catch (JMException e) {
+            this.libraryContext.getLogger().log(e, LogLevel.WARNINGS);
+        }
+        this.objectName = null;
+    }
+
+    ObjectName getObjectName() {
+        return this.objectName;
+    }
+
+    @Override
+    public long getEventsTracked() {
+        return this.libraryContext.getMetrics().getEventsTracked();
+    }
+
+    @Override
+    public long getEventsDispatched() {
+        return this.libraryContext.getMetrics().getEventsDispatched();
+    }
+
+    @Override
+    public long getEventsFailed() {
+        return this.libraryContext.getMetrics().getEventsFailed();
+    }
+
+    @Override
+    public long getEventsDropped() {
+        return this.libraryContext.getMetrics().getEventsDropped();
+    }
+
+    @Override
+    public long getQueueDepth() {
+        return this.libraryContext.getMetrics().getQueueDepth();
+    }
+
+    @Override
+    public long getInFlight() {
+        return this.libraryContext.getMetrics().getInFlight();
+    }
+
+    @Override
+    public long getWarmConnectionSends() {
+        return this.libraryContext.getMetrics().getWarmConnectionSends();
+    }
+
+    @Override
+    public long getColdConnectionSends() {
+        return this.libraryContext.getMetrics().getColdConnectionSends();
+    }
+
+    @Override
+    public int getIdleConnections() {
+        return this.collectDispatcher.getIdleConnections();
+    }
+
+    @Override
+    public long getP50LatencyMicros() {
+        return this.libraryContext.getMetrics().getHttpLatency().snapshot().getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getP99LatencyMicros() {
+        return this.libraryContext.getMetrics().getHttpLatency().snapshot().getValueAtPercentile(99);
+    }
+
+    @Override
+    public String getLogLevel() {
+        return this.libraryContext.getLogger().getLevel().name();
+    }
+
+    @Override
+    public void setLogLevel(String logLevel) {
+        if (logLevel == null) {
+            throw new IllegalArgumentException("Invalid log level.");
+        }
+        this.libraryContext.getLogger().setLevel(LogLevel.valueOf(logLevel.trim().toUpperCase(Locale.ROOT)));
+    }
+
+    @Override
+    public int getMaxDispatchThreads() {
+        return this.collectDispatcher.getMaxDispatchThreads();
+    }
+
+    @Override
+    public void setMaxDispatchThreads(int maxDispatchThreads) {
+        this.collectDispatcher.setMaxDispatchThreads(maxDispatchThreads);
+    }
+
+    @Override
+    public int getConcurrencyLimit() {
+        ConcurrencyLimiter limiter = this.collectDispatcher.getLimiter();
+        return limiter == null ? 0 : limiter.getLimit();
+    }
+
+    @Override
+    public int getMaxConcurrencyLimit() {
+        ConcurrencyLimiter limiter = this.collectDispatcher.getLimiter();
+        return limiter == null ? 0 : limiter.getMaxLimit();
+    }
+
+    @Override
+    public void setMaxConcurrencyLimit(int maxConcurrencyLimit) {
+        ConcurrencyLimiter limiter = this.collectDispatcher.getLimiter();
+        if (limiter == null) {
+            throw new IllegalStateException("Dispatcher does not limit concurrent sends.");
+        }
+        limiter.setMaxLimit(maxConcurrencyLimit);
+    }
+
+    @Override
+    public int getSpoolSize() {
+        return this.collectDispatcher.getSpoolSize();
+    }
+}
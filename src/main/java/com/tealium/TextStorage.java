@@ -2,8 +2,10 @@ package com.tealium;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
 /**
  * Class for handling persistent text
@@ -29,7 +31,9 @@ public class TextStorage {
     }
 
     /**
-     * Write persistent text to storage using this TextStorage's path
+     * Write persistent text to storage using this TextStorage's path. The text
+     * is written to a temporary file first and moved into place, so a process
+     * exiting mid-write never leaves a half-written file behind.
      *
      * @param persistentText
      * @throws IOException
@@ -37,7 +41,17 @@ public class TextStorage {
     public void writeText(String persistentText) throws IOException {
         byte[] bytes = persistentText.getBytes(StandardCharsets.UTF_8);
         Files.createDirectories(this.path.getParent());
-        Files.write(this.path, bytes);
+        Path temp = Files.createTempFile(this.path.getParent(), this.path.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, bytes);
+            try {
+                Files.move(temp, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, this.path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
     }
 
     /**
@@ -0,0 +1,54 @@
+package com.tealium;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket rate limiter.
+ *
+ * Rather than refilling a token count, the bucket keeps the time at which it
+ * would next be full (the generic cell rate algorithm), so taking a token is
+ * a read of the clock and one CAS, with no refill thread or lock.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class TokenBucket {
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong nextFree;
+
+    /**
+     * @param permitsPerSecond
+     *            Sustained rate.
+     * @param burst
+     *            Tokens that can be taken at once after a quiet period.
+     */
+    TokenBucket(double permitsPerSecond, int burst) {
+        if (!(permitsPerSecond > 0) || burst <= 0) {
+            throw new IllegalArgumentException("Rate and burst should be greater than zero.");
+        }
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.toleranceNanos = this.intervalNanos * (burst - 1);
+        this.nextFree = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * @return true if a token was taken
+     */
+    boolean tryAcquire() {
+        return this.tryAcquire(System.nanoTime());
+    }
+
+    boolean tryAcquire(long nowNanos) {
+        while (true) {
+            long next = this.nextFree.get();
+            long start = next - nowNanos < 0 ? nowNanos : next;
+            if (start - nowNanos > this.toleranceNanos) {
+                return false;
+            }
+            if (this.nextFree.compareAndSet(next, start + this.intervalNanos)) {
+                return true;
+            }
+        }
+    }
+}
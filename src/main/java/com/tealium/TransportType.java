@@ -0,0 +1,19 @@
+package com.tealium;
+
+/**
+ * Data class for the HTTP transports available for collect dispatches
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public enum TransportType {
+    /**
+     * Blocking {@link java.net.HttpURLConnection}, one thread per in-flight event. Available on every JVM.
+     */
+    URL_CONNECTION,
+
+    /**
+     * Non-blocking JDK HttpClient with HTTP/2 multiplexing. Requires Java 11 or later, falls back to
+     * URL_CONNECTION on older runtimes.
+     */
+    HTTP_CLIENT
+}
@@ -43,6 +43,44 @@ public class Udo implements Map<String, Object> {
         this.putAll(data);
     }
 
+    /**
+     * Wrap values that have already been coerced, without coercing them again.
+     *
+     * @param wrappedMap Map to take ownership of
+     */
+    private Udo(LayeredMap wrappedMap) {
+        this.wrappedMap = wrappedMap;
+    }
+
+    /**
+     * Copy this udo into one that can't be changed, so it can be shared between
+     * threads without locking. Any attempt to change it, or a list in it,
+     * throws {@link UnsupportedOperationException}.
+     *
+     * @return a read-only copy, or this udo if it's already read-only
+     */
+    Udo readOnlyCopy() {
+        return this.isReadOnly() ? this : new Udo(LayeredMap.frozenCopyOf(this.wrappedMap));
+    }
+
+    /**
+     * Start a new udo with this udo's data, without copying it. Changes to the
+     * new udo are kept in front of the data it started with, which is shared
+     * with this udo's read-only copy.
+     *
+     * @return a new udo that can be changed
+     */
+    Udo newLayer() {
+        return new Udo(((LayeredMap) this.readOnlyCopy().wrappedMap).layer());
+    }
+
+    /**
+     * @return true if this udo can't be changed
+     */
+    boolean isReadOnly() {
+        return this.wrappedMap instanceof LayeredMap && ((LayeredMap) this.wrappedMap).isFrozen();
+    }
+
     /**
      * Clear this udo of data.
      * Implements the Map<String, Object> interface.
@@ -345,6 +383,34 @@ public class Udo implements Map<String, Object> {
         }
     }
 
+    /**
+     * Encodes a Udo straight into UTF-8 encoded json, without building a string first.
+     *
+     * @return Udo as UTF-8 encoded json
+     * @throws UdoSerializationException
+     */
+    byte[] toJsonBytes() throws UdoSerializationException {
+        try {
+            return JSON.std.asBytes(this);
+        } catch (IOException e) {
+            throw new UdoSerializationException("Error serializing udo to json", e);
+        }
+    }
+
+    /**
+     * Encodes a Udo as UTF-8 encoded json onto the end of a buffer.
+     *
+     * @param out Buffer to append to
+     * @throws UdoSerializationException
+     */
+    void writeJson(PayloadBuffer out) throws UdoSerializationException {
+        try {
+            JSON.std.write(this, out);
+        } catch (IOException e) {
+            throw new UdoSerializationException("Error serializing udo to json", e);
+        }
+    }
+
     /**
      * Decodes a Udo object from a percent encoded string.
      *
@@ -0,0 +1,164 @@
+package com.tealium;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Blocking transport built on {@link HttpURLConnection}. The handler is always
+ * called on the sending thread.
+ *
+ * The body is streamed with a fixed length, so the connection writes
+ * straight from the payload array instead of buffering a copy, and the
+ * parsed url is kept while the endpoint stays the same.
+ *
+ * Responses are read to the end and closed rather than disconnected, which
+ * leaves the connection in the JDK's keep-alive cache for the next send.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class UrlConnectionTransport implements BufferedCollectTransport, WarmableCollectTransport {
+    // what the JDK's keep-alive cache uses when the server doesn't send a Keep-Alive timeout
+    private static final long DEFAULT_KEEP_ALIVE_MILLIS = 5000;
+    private static final int DEFAULT_MAX_CONNECTIONS = 5;
+
+    private volatile ParsedUrl lastUrl;
+
+    @Override
+    public void send(String endpoint, byte[] payload, int timeout, ResponseHandler handler) throws IOException {
+        this.send(endpoint, payload, payload.length, timeout, handler);
+    }
+
+    @Override
+    public void send(String endpoint, byte[] payload, int length, int timeout, ResponseHandler handler)
+            throws IOException {
+        Object connectionEvent = JfrEvents.beginPhase();
+        HttpURLConnection connection;
+        try {
+            connection = this.getConnection(endpoint, length, timeout);
+        } catch (IOException e) {
+            JfrEvents.commitPhase(connectionEvent, DispatchPhase.GET_CONNECTION, length, DispatchPhase.OUTCOME_FAILURE);
+            throw e;
+        }
+        JfrEvents.commitPhase(connectionEvent, DispatchPhase.GET_CONNECTION, length, DispatchPhase.OUTCOME_SUCCESS);
+
+        // send the data
+        Object connectEvent = JfrEvents.beginPhase();
+        try {
+            connection.connect();
+            OutputStream os = connection.getOutputStream();
+            os.write(payload, 0, length);
+            os.close();
+        } catch (IOException e) {
+            JfrEvents.commitPhase(connectEvent, DispatchPhase.CONNECT, length, DispatchPhase.OUTCOME_FAILURE);
+            handler.onFailure(new FailedConnectionException("Could not open connection with server.", e));
+            return;
+        }
+        JfrEvents.commitPhase(connectEvent, DispatchPhase.CONNECT, length, DispatchPhase.OUTCOME_SUCCESS);
+
+        // get result
+        Object responseEvent = JfrEvents.beginPhase();
+        int responseCode;
+        try {
+            responseCode = connection.getResponseCode();
+        } catch (IOException e) {
+            JfrEvents.commitPhase(responseEvent, DispatchPhase.GET_RESPONSE_CODE, length, DispatchPhase.OUTCOME_FAILURE);
+            handler.onFailure(new FailedConnectionException("Could not get response from server.", e));
+            return;
+        }
+        JfrEvents.commitPhase(responseEvent, DispatchPhase.GET_RESPONSE_CODE, length, DispatchPhase.OUTCOME_SUCCESS);
+
+        release(connection, responseCode);
+        handler.onResponse(responseCode, connection.getHeaderFields());
+    }
+
+    @Override
+    public void warm(String endpoint, int timeout, ResponseHandler handler) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) this.parse(endpoint).openConnection();
+        connection.setRequestMethod("HEAD");
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+
+        int responseCode;
+        try {
+            responseCode = connection.getResponseCode();
+        } catch (IOException e) {
+            connection.disconnect();
+            handler.onFailure(new FailedConnectionException("Could not warm up connection with server.", e));
+            return;
+        }
+
+        release(connection, responseCode);
+        handler.onResponse(responseCode, connection.getHeaderFields());
+    }
+
+    /**
+     * @return null if keep-alive is turned off with the http.keepAlive system property
+     */
+    @Override
+    public ConnectionTracker newConnectionTracker() {
+        if (!Boolean.parseBoolean(System.getProperty("http.keepAlive", "true"))) {
+            return null;
+        }
+        int maxConnections = Integer.getInteger("http.maxConnections", DEFAULT_MAX_CONNECTIONS);
+        return new ConnectionTracker(maxConnections > 0 ? maxConnections : DEFAULT_MAX_CONNECTIONS, false,
+                DEFAULT_KEEP_ALIVE_MILLIS);
+    }
+
+    /**
+     * Read what's left of the response and close it, so the connection can be reused, or
+     * disconnect if that fails.
+     */
+    private static void release(HttpURLConnection connection, int responseCode) {
+        try {
+            InputStream in = responseCode < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (in != null) {
+                try {
+                    // collect responses are empty or tiny
+                    while (in.read() != -1) {
+                        // discard
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        } catch (IOException e) {
+            connection.disconnect();
+        }
+    }
+
+    private HttpURLConnection getConnection(String endpoint, int length, int timeout) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) this.parse(endpoint).openConnection();
+
+        connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+        connection.setRequestProperty("Accept", "application/json; charset=UTF-8");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(length);
+        connection.setRequestMethod("POST");
+        connection.setReadTimeout(timeout);
+
+        return connection;
+    }
+
+    private URL parse(String endpoint) throws IOException {
+        ParsedUrl last = this.lastUrl;
+        if (last != null && last.endpoint.equals(endpoint)) {
+            return last.url;
+        }
+        URL url = new URL(endpoint);
+        this.lastUrl = new ParsedUrl(endpoint, url);
+        return url;
+    }
+
+    private static final class ParsedUrl {
+        final String endpoint;
+        final URL url;
+
+        ParsedUrl(String endpoint, URL url) {
+            this.endpoint = endpoint;
+            this.url = url;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.tealium;
+
+import java.io.IOException;
+
+/**
+ * A {@link CollectTransport} that keeps connections open between requests,
+ * and can open them ahead of the first send so it doesn't pay for the
+ * handshakes.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+interface WarmableCollectTransport extends CollectTransport {
+
+    /**
+     * Send a HEAD request to the endpoint, leaving its connection idle in the pool. The handler
+     * is called as for {@link #send}.
+     *
+     * @param endpoint
+     *            The target url.
+     * @param timeout
+     *            Read timeout in milliseconds.
+     * @param handler
+     *            Receives the response or the failure.
+     * @throws IOException
+     *             If the request could not be created, e.g. a malformed url.
+     */
+    void warm(String endpoint, int timeout, ResponseHandler handler) throws IOException;
+
+    /**
+     * @return a model of this transport's pool of idle connections
+     */
+    ConnectionTracker newConnectionTracker();
+}
@@ -0,0 +1,20 @@
+package com.tealium;
+
+/**
+ * Factory for {@link CollectTransport} instances.
+ *
+ * Java 11 implementation, packaged under META-INF/versions/11 of the
+ * multi-release jar.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class CollectTransports {
+    private CollectTransports() {}
+
+    static CollectTransport create(TransportType type, int timeout, Logger logger) {
+        if (type == TransportType.HTTP_CLIENT) {
+            return new HttpClientTransport(timeout, logger);
+        }
+        return new UrlConnectionTransport();
+    }
+}
@@ -0,0 +1,29 @@
+package com.tealium;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event covering one phase of a collect dispatch, see {@link DispatchPhase}.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+@Name("com.tealium.DispatchPhase")
+@Label("Tealium Dispatch Phase")
+@Category({"Tealium", "Dispatch"})
+@Description("Serialization, connection setup, sending or waiting for the response of a collect call")
+final class DispatchPhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Payload Size")
+    @DataAmount
+    long payloadBytes;
+
+    @Label("Outcome")
+    String outcome;
+}
@@ -0,0 +1,101 @@
+package com.tealium;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking transport built on the JDK HttpClient. Requests to the same
+ * host are multiplexed over a shared HTTP/2 connection, so many in-flight
+ * events only need the client's small selector pool, not a thread each.
+ *
+ * The handler is called on one of the client's executor threads. Nothing
+ * waits on the response future, so anything the handler throws is logged
+ * here rather than lost with it.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class HttpClientTransport implements BufferedCollectTransport, WarmableCollectTransport {
+    // the client's default on recent JDKs, older ones keep idle connections for longer
+    private static final long DEFAULT_KEEP_ALIVE_SECONDS = 30;
+
+    private final HttpClient client;
+    private final Logger logger;
+
+    HttpClientTransport(int timeout, Logger logger) {
+        this.logger = logger;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(timeout))
+                .build();
+    }
+
+    @Override
+    public void send(String endpoint, byte[] payload, int timeout, ResponseHandler handler) throws IOException {
+        this.send(endpoint, payload, payload.length, timeout, handler);
+    }
+
+    @Override
+    public void send(String endpoint, byte[] payload, int length, int timeout, final ResponseHandler handler)
+            throws IOException {
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(endpoint))
+                    .timeout(Duration.ofMillis(timeout))
+                    .header("Content-Type", "application/json; charset=UTF-8")
+                    .header("Accept", "application/json; charset=UTF-8")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(payload, 0, length))
+                    .build();
+        } catch (IllegalArgumentException e) {
+            throw (MalformedURLException) new MalformedURLException(e.getMessage()).initCause(e);
+        }
+
+        this.client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> this.complete(handler, response, error,
+                        "Could not get response from server."));
+    }
+
+    @Override
+    public void warm(String endpoint, int timeout, ResponseHandler handler) throws IOException {
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(endpoint))
+                    .timeout(Duration.ofMillis(timeout))
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .build();
+        } catch (IllegalArgumentException e) {
+            throw (MalformedURLException) new MalformedURLException(e.getMessage()).initCause(e);
+        }
+
+        this.client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> this.complete(handler, response, error,
+                        "Could not warm up connection with server."));
+    }
+
+    /**
+     * HTTP/2 sends every request over one connection, so there's only ever one to keep warm.
+     */
+    @Override
+    public ConnectionTracker newConnectionTracker() {
+        long keepAliveSeconds = Long.getLong("jdk.httpclient.keepalive.timeout", DEFAULT_KEEP_ALIVE_SECONDS);
+        return new ConnectionTracker(1, true,
+                TimeUnit.SECONDS.toMillis(keepAliveSeconds > 0 ? keepAliveSeconds : DEFAULT_KEEP_ALIVE_SECONDS));
+    }
+
+    private void complete(ResponseHandler handler, HttpResponse<Void> response, Throwable error, String failure) {
+        try {
+            if (error != null) {
+                handler.onFailure(new FailedConnectionException(failure, error));
+            } else {
+                handler.onResponse(response.statusCode(), response.headers().map());
+            }
+        } catch (RuntimeException e) {
+            this.logger.log(e, LogLevel.ERRORS);
+        }
+    }
+}
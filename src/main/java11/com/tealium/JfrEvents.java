@@ -0,0 +1,77 @@
+package com.tealium;
+
+import jdk.jfr.Event;
+
+/**
+ * Java Flight Recorder instrumentation for the track and dispatch hot paths.
+ *
+ * Java 11 implementation, packaged under META-INF/versions/11 of the
+ * multi-release jar. Events are only committed while a recording has them
+ * enabled, and JFR's own threshold settings decide which durations are kept.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class JfrEvents {
+    private JfrEvents() {}
+
+    static Object beginTrack() {
+        return begin(new TrackEvent());
+    }
+
+    static void commitTrack(Object event, String eventType, int payloadKeys, String outcome) {
+        if (event == null) {
+            return;
+        }
+        TrackEvent trackEvent = (TrackEvent) event;
+        trackEvent.end();
+        if (trackEvent.shouldCommit()) {
+            trackEvent.eventType = eventType;
+            trackEvent.payloadKeys = payloadKeys;
+            trackEvent.outcome = outcome;
+            trackEvent.commit();
+        }
+    }
+
+    static Object beginPhase() {
+        return begin(new DispatchPhaseEvent());
+    }
+
+    static void commitPhase(Object event, String phase, long payloadBytes, String outcome) {
+        if (event == null) {
+            return;
+        }
+        DispatchPhaseEvent phaseEvent = (DispatchPhaseEvent) event;
+        phaseEvent.end();
+        if (phaseEvent.shouldCommit()) {
+            phaseEvent.phase = phase;
+            phaseEvent.payloadBytes = payloadBytes;
+            phaseEvent.outcome = outcome;
+            phaseEvent.commit();
+        }
+    }
+
+    static Object beginPersistentWrite() {
+        return begin(new PersistentWriteEvent());
+    }
+
+    static void commitPersistentWrite(Object event, long payloadBytes, String outcome) {
+        if (event == null) {
+            return;
+        }
+        PersistentWriteEvent writeEvent = (PersistentWriteEvent) event;
+        writeEvent.end();
+        if (writeEvent.shouldCommit()) {
+            writeEvent.payloadBytes = payloadBytes;
+            writeEvent.outcome = outcome;
+            writeEvent.commit();
+        }
+    }
+
+    private static Object begin(Event event) {
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+}
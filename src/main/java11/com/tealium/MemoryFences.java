@@ -0,0 +1,30 @@
+package com.tealium;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * Memory fences for the sequence lock in {@link SharedRegion}, whose sequence
+ * number and data live in a mapped file rather than in Java fields.
+ *
+ * Java 11 implementation, packaged under META-INF/versions/11 of the
+ * multi-release jar.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class MemoryFences {
+    private MemoryFences() {}
+
+    /**
+     * Keep loads before the fence ahead of loads and stores after it.
+     */
+    static void acquire() {
+        VarHandle.acquireFence();
+    }
+
+    /**
+     * Keep loads and stores before the fence ahead of stores after it.
+     */
+    static void release() {
+        VarHandle.releaseFence();
+    }
+}
@@ -0,0 +1,26 @@
+package com.tealium;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event covering one call to {@link PersistentUdo#writeData(Udo)}.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+@Name("com.tealium.PersistentWrite")
+@Label("Tealium Persistent Write")
+@Category({"Tealium", "Persistence"})
+@Description("Serialization and storage of the persistent udo")
+final class PersistentWriteEvent extends Event {
+    @Label("Payload Size")
+    @DataAmount
+    long payloadBytes;
+
+    @Label("Outcome")
+    String outcome;
+}
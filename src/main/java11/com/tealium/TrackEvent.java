@@ -0,0 +1,27 @@
+package com.tealium;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event covering one call to {@link Tealium#track(String, String, Udo, Tealium.DispatchCallback)}.
+ *
+ * @author Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+@Name("com.tealium.Track")
+@Label("Tealium Track")
+@Category({"Tealium", "Track"})
+@Description("Payload assembly and dispatch of a single tracked event")
+final class TrackEvent extends Event {
+    @Label("Event Type")
+    String eventType;
+
+    @Label("Payload Keys")
+    int payloadKeys;
+
+    @Label("Outcome")
+    String outcome;
+}
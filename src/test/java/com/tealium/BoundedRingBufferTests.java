@@ -0,0 +1,85 @@
+package com.tealium;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test logic related to BoundedRingBuffer
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public class BoundedRingBufferTests {
+
+    @Test
+    public void testCapacityRoundsUpToPowerOfTwo() throws Exception {
+        assertEquals(8, new BoundedRingBuffer<String>(5).capacity());
+        assertEquals(2, new BoundedRingBuffer<String>(1).capacity());
+    }
+
+    @Test
+    public void testFifoOrderAndFullBuffer() throws Exception {
+        BoundedRingBuffer<Integer> buffer = new BoundedRingBuffer<Integer>(4);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+        assertEquals(4, buffer.size());
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(Integer.valueOf(i), buffer.poll());
+        }
+        assertNull(buffer.poll());
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentProducersAndConsumers() throws Exception {
+        final BoundedRingBuffer<Long> buffer = new BoundedRingBuffer<Long>(64);
+        final int perProducer = 20000;
+        final AtomicLong consumedSum = new AtomicLong();
+        final AtomicLong consumedCount = new AtomicLong();
+        Thread[] threads = new Thread[6];
+
+        for (int p = 0; p < 3; p++) {
+            threads[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (long i = 1; i <= perProducer; i++) {
+                        while (!buffer.offer(i)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+        }
+        for (int c = 3; c < 6; c++) {
+            threads[c] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (consumedCount.get() < 3L * perProducer) {
+                        Long value = buffer.poll();
+                        if (value == null) {
+                            Thread.yield();
+                        } else {
+                            consumedSum.addAndGet(value);
+                            consumedCount.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(30000);
+        }
+
+        assertEquals(3L * perProducer, consumedCount.get());
+        assertEquals(3L * perProducer * (perProducer + 1) / 2, consumedSum.get());
+    }
+}
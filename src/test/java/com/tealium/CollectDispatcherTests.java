@@ -2,8 +2,16 @@ package com.tealium;
 
 import com.tealium.Tealium.DispatchCallback;
 import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
@@ -83,4 +91,725 @@ public class CollectDispatcherTests {
         barrier.await(5, TimeUnit.SECONDS);
 
     }
+
+    @Test
+    public void testErrorHeaderFailsDispatch() throws Exception {
+
+        CollectTransport transport = new CollectTransport() {
+            @Override
+            public void send(String endpoint, byte[] payload, int timeout, ResponseHandler handler) throws IOException {
+                Map<String, List<String>> headers =
+                        Collections.singletonMap("X-Error", Collections.singletonList("bad payload"));
+                handler.onResponse(200, headers);
+            }
+        };
+
+        final boolean[] called = new boolean[1];
+
+        DispatchCallback callBack = new DispatchCallback() {
+
+            @Override
+            public void dispatchComplete(boolean success, Map<String, Object> info, String error) {
+                assertFalse(success);
+                assertNotNull(info.get(DataManager.InfoKey.RESPONSE_HEADERS));
+                called[0] = true;
+            }
+
+        };
+
+        LibraryContext context = TestLibraryContext.newInstance();
+        CollectDispatcher collect = new CollectDispatcher(CollectDispatcher.DEFAULT_URL, context, 3000, transport);
+
+        Udo data = new Udo();
+        data.put("tealium_account", "tealiummobile");
+        collect.dispatch(data, callBack);
+
+        assertTrue(called[0]);
+
+        MetricsSnapshot metrics = context.getMetrics().snapshot();
+        assertEquals(1, metrics.getEventsFailed());
+        assertEquals(0, metrics.getEventsDispatched());
+        assertEquals(0, metrics.getInFlight());
+        assertEquals(data.toJson().length(), metrics.getBytesSent());
+        assertEquals(1, metrics.getHttpLatencyByStatus().get(200).getCount());
+    }
+
+    @Test
+    public void testAsynchronousTransport() throws Exception {
+
+        CollectTransport transport = new CollectTransport() {
+            @Override
+            public void send(String endpoint, byte[] payload, int timeout, final ResponseHandler handler) throws IOException {
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        handler.onResponse(200, Collections.<String, List<String>>emptyMap());
+                    }
+                }).start();
+            }
+        };
+
+        CollectDispatcher collect = new CollectDispatcher(CollectDispatcher.DEFAULT_URL,
+                TestLibraryContext.newInstance(), 3000, transport);
+
+        final CountDownLatch barrier = new CountDownLatch(1);
+
+        DispatchCallback callBack = new DispatchCallback() {
+
+            @Override
+            public void dispatchComplete(boolean success, Map<String, Object> info, String error) {
+                if (success) {
+                    barrier.countDown();
+                }
+            }
+
+        };
+
+        Udo data = new Udo();
+        data.put("tealium_account", "tealiummobile");
+        collect.dispatch(data, callBack);
+
+        assertTrue(barrier.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDispatchOnExecutor() throws Exception {
+
+        final Thread trackingThread = Thread.currentThread();
+        final Thread[] sendingThread = new Thread[1];
+
+        CollectTransport transport = new CollectTransport() {
+            @Override
+            public void send(String endpoint, byte[] payload, int timeout, ResponseHandler handler) throws IOException {
+                sendingThread[0] = Thread.currentThread();
+                handler.onResponse(200, Collections.<String, List<String>>emptyMap());
+            }
+        };
+
+        ExecutorService executor = DispatchExecutors.newPlatformExecutor(2);
+        CollectDispatcher collect = new CollectDispatcher(CollectDispatcher.DEFAULT_URL,
+                TestLibraryContext.newInstance(), 3000, transport, executor);
+
+        final CountDownLatch barrier = new CountDownLatch(1);
+
+        DispatchCallback callBack = new DispatchCallback() {
+
+            @Override
+            public void dispatchComplete(boolean success, Map<String, Object> info, String error) {
+                if (success) {
+                    barrier.countDown();
+                }
+            }
+
+        };
+
+        collect.dispatch(new Udo(), callBack);
+
+        assertTrue(barrier.await(5, TimeUnit.SECONDS));
+        assertNotSame(trackingThread, sendingThread[0]);
+        executor.shutdown();
+    }
+
+    @Test
+    public void testDispatchAfterExecutorShutdown() throws Exception {
+
+        ExecutorService executor = DispatchExecutors.newPlatformExecutor(1);
+        executor.shutdown();
+        CollectDispatcher collect = new CollectDispatcher(CollectDispatcher.DEFAULT_URL,
+                TestLibraryContext.newInstance(), 3000, new UrlConnectionTransport(), executor);
+
+        final boolean[] failed = new boolean[1];
+
+        collect.dispatch(new Udo(), new DispatchCallback() {
+
+            @Override
+            public void dispatchComplete(boolean success, Map<String, Object> info, String error) {
+                failed[0] = !success;
+            }
+
+        });
+
+        assertTrue(failed[0]);
+    }
+
+    @Test
+    public void testThrowingCallbackDoesNotBlockFlush() throws Exception {
+
+        CollectTransport transport = new CollectTransport() {
+            @Override
+            public void send(String endpoint, byte[] payload, int timeout, ResponseHandler handler) throws IOException {
+                handler.onResponse(200, Collections.<String, List<String>>emptyMap());
+            }
+        };
+
+        ExecutorService executor = DispatchExecutors.newPlatformExecutor(1);
+        CollectDispatcher collect = new CollectDispatcher(CollectDispatcher.DEFAULT_URL,
+                TestLibraryContext.newInstance(), 3000, transport, executor);
+
+        final CountDownLatch called = new CountDownLatch(3);
+        DispatchCallback callBack = new DispatchCallback() {
+            @Override
+            public void dispatchComplete(boolean success, Map<String, Object> info, String error) {
+                called.countDown();
+                throw new IllegalStateException("callback failed");
+            }
+        };
+        for (int i = 0; i < 3; i++) {
+            collect.dispatch(new Udo(), callBack);
+        }
+
+        assertTrue(called.await(5, TimeUnit.SECONDS));
+        long start = System.nanoTime();
+        assertEquals(0, collect.flush(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testDroppedWhenNoPermitInTime() throws Exception {
+
+        final int[] sends = new int[1];
+        CollectTransport transport = new CollectTransport() {
+            @Override
+            public void send(String endpoint, byte[] payload, int timeout, ResponseHandler handler) throws IOException {
+                sends[0]++;
+                handler.onResponse(200, Collections.<String, List<String>>emptyMap());
+            }
+        };
+
+        // the only permit is taken by a send that never finishes
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+        assertTrue(limiter.tryAcquire());
+
+        ExecutorService executor = DispatchExecutors.newPlatformExecutor(1);
+        LibraryContext context = TestLibraryContext.newInstance();
+        CollectDispatcher collect = new CollectDispatcher(CollectDispatcher.DEFAULT_URL, context, 100, transport,
+                executor, limiter);
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final String[] failure = new String[1];
+        collect.dispatch(new Udo(), new DispatchCallback() {
+            @Override
+            public void dispatchComplete(boolean success, Map<String, Object> info, String error) {
+                failure[0] = success ? null : error;
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(failure[0], failure[0].contains("within 100 ms"));
+        assertEquals(0, sends[0]);
+        assertEquals(0, collect.getPendingCount());
+        assertEquals(1, context.getMetrics().snapshot().getEventsDropped());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testOversizedPayloadRejected() throws Exception {
+
+        final int[] sends = new int[1];
+        CollectTransport transport = new CollectTransport() {
+            @Override
+            public void send(String endpoint, byte[] payload, int timeout, ResponseHandler handler) throws IOException {
+                sends[0]++;
+                handler.onResponse(200, Collections.<String, List<String>>emptyMap());
+            }
+        };
+
+        LibraryContext context = TestLibraryContext.newInstance();
+        CollectDispatcher collect = new CollectDispatcher(CollectDispatcher.DEFAULT_URL, context, 3000, transport);
+        collect.setMaxBodySize(100, OversizedEventPolicy.REJECT);
+
+        final String[] error = new String[1];
+        Udo data = new Udo();
+        data.put("big", new String(new char[200]).replace('\0', 'x'));
+
+        try {
+            collect.dispatch(data, new DispatchCallback() {
+                @Override
+                public void dispatchComplete(boolean success, Map<String, Object> info, String err) {
+                    error[0] = err;
+                }
+            });
+            fail("oversized payload was dispatched");
+        } catch (CollectDispatchException e) {
+            assertNotNull(error[0]);
+        }
+
+        assertEquals(0, sends[0]);
+        assertEquals(1, context.getMetrics().snapshot().getEventsOversized());
+    }
+
+    @Test
+    public void testOversizedPayloadTruncated() throws Exception {
+
+        final byte[][] sent = new byte[1][];
+        CollectTransport transport = new CollectTransport() {
+            @Override
+            public void send(String endpoint, byte[] payload, int timeout, ResponseHandler handler) throws IOException {
+                sent[0] = payload;
+                handler.onResponse(200, Collections.<String, List<String>>emptyMap());
+            }
+        };
+
+        CollectDispatcher collect = new CollectDispatcher(CollectDispatcher.DEFAULT_URL,
+                TestLibraryContext.newInstance(), 3000, transport);
+        collect.setMaxBodySize(200, OversizedEventPolicy.TRUNCATE);
+
+        List<String> items = new ArrayList<String>();
+        for (int i = 0; i < 100; i++) {
+            items.add("item-" + i);
+        }
+        Udo data = new Udo();
+        data.put("tealium_account", "tealiummobile");
+        data.put("items", items);
+
+        final Object[] truncatedKeys = new Object[1];
+        collect.dispatch(data, new DispatchCallback() {
+            @Override
+            public void dispatchComplete(boolean success, Map<String, Object> info, String error) {
+                assertTrue(success);
+                truncatedKeys[0] = info.get(DataManager.InfoKey.TRUNCATED_KEYS);
+            }
+        });
+
+        assertTrue(sent[0].length <= 200);
+        assertEquals(Collections.singletonList("items"), truncatedKeys[0]);
+        Udo received = Udo.fromJson(new String(sent[0], "UTF-8"));
+        assertEquals("tealiummobile", received.get("tealium_account"));
+        assertEquals("item-0", ((List<?>) received.get("items")).get(0));
+        assertEquals(100, ((List<?>) data.get("items")).size());
+    }
+
+    @Test
+    public void testDispatchToStub() throws Exception {
+
+        CollectStubServer stub = new CollectStubServer();
+        try {
+            LibraryContext context = TestLibraryContext.newInstance();
+            CollectDispatcher collect = new CollectDispatcher(stub.getEndpoint(), context, 3000);
+
+            final boolean[] success = new boolean[1];
+            Udo data = new Udo();
+            data.put("tealium_account", "tealiummobile");
+            collect.dispatch(data, new DispatchCallback() {
+                @Override
+                public void dispatchComplete(boolean succeeded, Map<String, Object> info, String error) {
+                    success[0] = succeeded;
+                }
+            });
+
+            assertTrue(success[0]);
+            assertEquals(1, stub.getRequests());
+            assertEquals(data.toJson().length(), stub.getBytesReceived());
+            assertEquals(1, context.getMetrics().snapshot().getHttpLatencyByStatus().get(200).getCount());
+        } finally {
+            stub.close();
+        }
+    }
+
+    @Test
+    public void testStubErrors() throws Exception {
+
+        CollectStubServer stub = new CollectStubServer();
+        try {
+            LibraryContext context = TestLibraryContext.newInstance();
+            CollectDispatcher collect = new CollectDispatcher(stub.getEndpoint(), context, 3000);
+            final List<Boolean> results = new ArrayList<Boolean>();
+            DispatchCallback callBack = new DispatchCallback() {
+                @Override
+                public void dispatchComplete(boolean success, Map<String, Object> info, String error) {
+                    results.add(success);
+                }
+            };
+
+            stub.setErrorRate(1, 503);
+            collect.dispatch(new Udo(), callBack);
+            stub.setErrorRate(0, 503).setErrorHeaderRate(1);
+            collect.dispatch(new Udo(), callBack);
+
+            assertEquals(Arrays.asList(false, false), results);
+            assertEquals(2, stub.getErrors());
+            MetricsSnapshot metrics = context.getMetrics().snapshot();
+            assertEquals(2, metrics.getEventsFailed());
+            assertEquals(1, metrics.getHttpLatencyByStatus().get(503).getCount());
+            assertEquals(1, metrics.getHttpLatencyByStatus().get(200).getCount());
+        } finally {
+            stub.close();
+        }
+    }
+
+    @Test
+    public void testFailoverToHealthyEndpoint() throws Exception {
+
+        CollectStubServer down = new CollectStubServer().setErrorRate(1, 503);
+        CollectStubServer up = new CollectStubServer();
+        try {
+            LibraryContext context = TestLibraryContext.newInstance();
+            // nothing listens on port 1, so connections to it are refused
+            CollectDispatcher collect = new CollectDispatcher(down.getEndpoint(), context, 3000);
+            collect.setAlternateEndpoints(Arrays.asList("http://127.0.0.1:1/event", up.getEndpoint()));
+
+            final List<String> urls = new ArrayList<String>();
+            DispatchCallback callBack = new DispatchCallback() {
+                @Override
+                public void dispatchComplete(boolean success, Map<String, Object> info, String error) {
+                    assertTrue(error, success);
+                    urls.add((String) info.get(DataManager.InfoKey.ENCODED_URL));
+                }
+            };
+            for (int i = 0; i < 5; i++) {
+                collect.dispatch(new Udo(), callBack);
+            }
+
+            assertEquals(Collections.nCopies(5, up.getEndpoint()), urls);
+            assertEquals(5, up.getRequests());
+            // the failing endpoints are left out once they have failed enough
+            assertEquals(EndpointSelector.FAILURES_TO_EJECT, down.getRequests());
+            assertFalse(collect.getEndpoints().isHealthy(0));
+            assertFalse(collect.getEndpoints().isHealthy(1));
+            MetricsSnapshot metrics = context.getMetrics().snapshot();
+            assertEquals(5, metrics.getEventsDispatched());
+            assertEquals(0, metrics.getEventsFailed());
+            assertTrue(metrics.getFailovers() >= 2 * EndpointSelector.FAILURES_TO_EJECT);
+            // each event is counted once, not once per endpoint it was sent to
+            assertEquals(5 * new Udo().toJson().length(), metrics.getBytesSent());
+        } finally {
+            down.close();
+            up.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testHedgeAnswersStuckSend() throws Exception {
+
+        final List<CollectTransport.ResponseHandler> stuck = new ArrayList<CollectTransport.ResponseHandler>();
+        CollectTransport transport = new CollectTransport() {
+            @Override
+            public synchronized void send(String endpoint, byte[] payload, int timeout, ResponseHandler handler)
+                    throws IOException {
+                if (stuck.isEmpty()) {
+                    // the first send hangs
+                    stuck.add(handler);
+                } else {
+                    handler.onResponse(200, Collections.<String, List<String>>emptyMap());
+                }
+            }
+        };
+        LibraryContext context = TestLibraryContext.newInstance();
+        for (int i = 0; i < HedgePolicy.MIN_SAMPLES; i++) {
+            context.getMetrics().httpLatency(200, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        CollectDispatcher collect = new CollectDispatcher(CollectDispatcher.DEFAULT_URL, context, 3000, transport);
+        collect.setHedging(50, 100);
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<Boolean> results = Collections.synchronizedList(new ArrayList<Boolean>());
+        collect.dispatch(new Udo(), new DispatchCallback() {
+            @Override
+            public void dispatchComplete(boolean success, Map<String, Object> info, String error) {
+                results.add(success);
+                done.countDown();
+            }
+        });
+        done.await();
+
+        // the first send finally answers, and is ignored
+        stuck.get(0).onFailure(new FailedConnectionException("Read timed out"));
+        assertEquals(Collections.singletonList(true), results);
+        MetricsSnapshot metrics = context.getMetrics().snapshot();
+        assertEquals(1, metrics.getHedges());
+        assertEquals(1, metrics.getHedgeWins());
+        assertEquals(1, metrics.getEventsDispatched());
+        assertEquals(0, metrics.getEventsFailed());
+        assertEquals(0, metrics.getInFlight());
+        collect.close(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testSlowStubTimesOut() throws Exception {
+
+        CollectStubServer stub = new CollectStubServer().setLatency(2000, 0);
+        try {
+            CollectDispatcher collect = new CollectDispatcher(stub.getEndpoint(), TestLibraryContext.newInstance(), 100);
+            final String[] error = new String[1];
+            collect.dispatch(new Udo(), new DispatchCallback() {
+                @Override
+                public void dispatchComplete(boolean success, Map<String, Object> info, String err) {
+                    assertFalse(success);
+                    error[0] = err;
+                }
+            });
+
+            assertNotNull(error[0]);
+        } finally {
+            stub.close();
+        }
+    }
+
+    @Test
+    public void testSlowReaderStubTimesOut() throws Exception {
+
+        CollectStubServer stub = new CollectStubServer().setReadBytesPerSecond(1000);
+        try {
+            LibraryContext context = TestLibraryContext.newInstance();
+            CollectDispatcher collect = new CollectDispatcher(stub.getEndpoint(), context, 100);
+            Udo data = new Udo();
+            data.put("padding", new String(new char[1000]).replace('\0', 'x'));
+
+            final boolean[] failed = new boolean[1];
+            collect.dispatch(data, new DispatchCallback() {
+                @Override
+                public void dispatchComplete(boolean success, Map<String, Object> info, String error) {
+                    failed[0] = !success;
+                }
+            });
+
+            assertTrue(failed[0]);
+            assertEquals(1, context.getMetrics().snapshot().getHttpLatencyByStatus()
+                    .get(DispatchMetrics.NO_RESPONSE).getCount());
+        } finally {
+            stub.close();
+        }
+    }
+
+    @Test
+    public void testPooledBuffersToStub() throws Exception {
+
+        CollectStubServer stub = new CollectStubServer();
+        try {
+            CollectDispatcher collect = new CollectDispatcher(stub.getEndpoint(), TestLibraryContext.newInstance(), 3000);
+            PayloadBufferPool pool = new PayloadBufferPool(4);
+            collect.setBufferPool(pool);
+
+            final int[] succeeded = new int[1];
+            DispatchCallback callBack = new DispatchCallback() {
+                @Override
+                public void dispatchComplete(boolean success, Map<String, Object> info, String error) {
+                    if (success) {
+                        succeeded[0]++;
+                    }
+                }
+            };
+
+            long expectedBytes = 0;
+            for (int i = 0; i < 3; i++) {
+                Udo data = new Udo();
+                data.put("tealium_account", "tealiummobile");
+                data.put("sequence", Integer.toString(i));
+                expectedBytes += data.toJson().length();
+                collect.dispatch(data, callBack);
+            }
+
+            assertEquals(3, succeeded[0]);
+            assertEquals(expectedBytes, stub.getBytesReceived());
+            assertEquals(1, pool.size());
+        } finally {
+            stub.close();
+        }
+    }
+
+    @Test
+    public void testPooledOversizedPayloadTruncated() throws Exception {
+
+        final byte[][] sent = new byte[1][];
+        CollectTransport transport = new BufferedCollectTransport() {
+            @Override
+            public void send(String endpoint, byte[] payload, int timeout, ResponseHandler handler) throws IOException {
+                sent[0] = payload;
+                handler.onResponse(200, Collections.<String, List<String>>emptyMap());
+            }
+
+            @Override
+            public void send(String endpoint, byte[] payload, int length, int timeout, ResponseHandler handler)
+                    throws IOException {
+                fail("truncated payloads are sent from an array of their own");
+            }
+        };
+
+        CollectDispatcher collect = new CollectDispatcher(CollectDispatcher.DEFAULT_URL,
+                TestLibraryContext.newInstance(), 3000, transport);
+        PayloadBufferPool pool = new PayloadBufferPool(4);
+        collect.setBufferPool(pool);
+        collect.setMaxBodySize(100, OversizedEventPolicy.TRUNCATE);
+
+        Udo data = new Udo();
+        data.put("big", new String(new char[200]).replace('\0', 'x'));
+        collect.dispatch(data, null);
+
+        assertTrue(sent[0].length <= 100);
+        assertEquals(1, pool.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPooledBuffersNeedBufferedTransport() throws Exception {
+
+        CollectTransport transport = new CollectTransport() {
+            @Override
+            public void send(String endpoint, byte[] payload, int timeout, ResponseHandler handler) throws IOException {
+                handler.onResponse(200, Collections.<String, List<String>>emptyMap());
+            }
+        };
+
+        new CollectDispatcher(CollectDispatcher.DEFAULT_URL, TestLibraryContext.newInstance(), 3000, transport)
+                .setBufferPool(new PayloadBufferPool(1));
+    }
+
+    @Test(timeout = 10000)
+    public void testWarmConnectionsToStub() throws Exception {
+
+        CollectStubServer stub = new CollectStubServer().setKeepAlive(true);
+        try {
+            LibraryContext context = TestLibraryContext.newInstance();
+            CollectDispatcher collect = new CollectDispatcher(stub.getEndpoint(), context, 3000);
+            collect.startConnectionWarmup(2, 60000);
+            while (collect.getIdleConnections() < 2) {
+                Thread.sleep(5);
+            }
+            assertEquals(2, stub.getRequests());
+            assertEquals(2, context.getMetrics().snapshot().getConnectionWarmups());
+
+            collect.dispatch(new Udo(), null);
+            collect.dispatch(new Udo(), null);
+            MetricsSnapshot metrics = context.getMetrics().snapshot();
+            assertEquals(2, metrics.getEventsDispatched());
+            assertEquals(2, metrics.getWarmConnectionSends());
+            assertEquals(0, metrics.getColdConnectionSends());
+            collect.close(1, TimeUnit.SECONDS);
+        } finally {
+            stub.close();
+        }
+    }
+
+    @Test
+    public void testClosedConnectionsAreCold() throws Exception {
+
+        CollectStubServer stub = new CollectStubServer();
+        try {
+            LibraryContext context = TestLibraryContext.newInstance();
+            CollectDispatcher collect = new CollectDispatcher(stub.getEndpoint(), context, 3000);
+
+            collect.dispatch(new Udo(), null);
+            collect.dispatch(new Udo(), null);
+            assertEquals(0, collect.getIdleConnections());
+            assertEquals(0, context.getMetrics().snapshot().getWarmConnectionSends());
+            assertEquals(2, context.getMetrics().snapshot().getColdConnectionSends());
+        } finally {
+            stub.close();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWarmupNeedsWarmableTransport() throws Exception {
+
+        CollectTransport transport = new CollectTransport() {
+            @Override
+            public void send(String endpoint, byte[] payload, int timeout, ResponseHandler handler) throws IOException {
+                handler.onResponse(200, Collections.<String, List<String>>emptyMap());
+            }
+        };
+
+        new CollectDispatcher(CollectDispatcher.DEFAULT_URL, TestLibraryContext.newInstance(), 3000, transport)
+                .startConnectionWarmup(1, 1000);
+    }
+
+    @Test
+    public void testCallbacksRunOnCallbackExecutor() throws Exception {
+
+        CollectTransport transport = new CollectTransport() {
+            @Override
+            public void send(String endpoint, byte[] payload, int timeout, ResponseHandler handler) throws IOException {
+                handler.onResponse(200, Collections.singletonMap("X-Test", Arrays.asList("first", "last")));
+            }
+        };
+        ExecutorService callbacks = Executors.newSingleThreadExecutor(
+                new DispatchExecutors.DaemonThreadFactory("test-callbacks"));
+        try {
+            CollectDispatcher collect = new CollectDispatcher(CollectDispatcher.DEFAULT_URL,
+                    TestLibraryContext.newInstance(), 3000, transport);
+            collect.setCallbackExecutor(callbacks);
+
+            final CountDownLatch done = new CountDownLatch(1);
+            final String[] thread = new String[1];
+            final Object[] header = new Object[1];
+            collect.dispatch(new Udo(), new DispatchCallback() {
+                @Override
+                public void dispatchComplete(boolean success, Map<String, Object> info, String error) {
+                    thread[0] = Thread.currentThread().getName();
+                    header[0] = ((Map<?, ?>) info.get(DataManager.InfoKey.RESPONSE_HEADERS)).get("X-Test");
+                    done.countDown();
+                }
+            });
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertTrue(thread[0].startsWith("test-callbacks"));
+            assertEquals("last", header[0]);
+        } finally {
+            callbacks.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBatchCallbackGetsOneNotificationPerBatch() throws Exception {
+
+        final int[] sends = new int[1];
+        CollectTransport transport = new CollectTransport() {
+            @Override
+            public void send(String endpoint, byte[] payload, int timeout, ResponseHandler handler) throws IOException {
+                handler.onResponse(++sends[0] % 3 == 0 ? 503 : 200, Collections.<String, List<String>>emptyMap());
+            }
+        };
+        final List<String> batches = new ArrayList<String>();
+        CollectDispatcher collect = new CollectDispatcher(CollectDispatcher.DEFAULT_URL,
+                TestLibraryContext.newInstance(), 3000, transport);
+        collect.setCallbackBatcher(new CallbackBatcher(new Tealium.BatchDispatchCallback() {
+            @Override
+            public void batchComplete(int succeeded, int failed, List<String> errors) {
+                batches.add(succeeded + "/" + failed + "/" + errors.size());
+            }
+        }, 3, 60000, TestLibraryContext.newInstance().getLogger()));
+
+        for (int i = 0; i < 7; i++) {
+            collect.dispatch(new Udo(), null);
+        }
+        assertEquals(Arrays.asList("2/1/1", "2/1/1"), batches);
+
+        // close delivers the last, partial, batch
+        collect.close(1, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("2/1/1", "2/1/1", "1/0/0"), batches);
+    }
+
+    @Test(timeout = 10000)
+    public void testBatchCallbackDeliveredAfterDelay() throws Exception {
+
+        CollectTransport transport = new CollectTransport() {
+            @Override
+            public void send(String endpoint, byte[] payload, int timeout, ResponseHandler handler) throws IOException {
+                handler.onResponse(200, Collections.<String, List<String>>emptyMap());
+            }
+        };
+        final CountDownLatch delivered = new CountDownLatch(1);
+        CollectDispatcher collect = new CollectDispatcher(CollectDispatcher.DEFAULT_URL,
+                TestLibraryContext.newInstance(), 3000, transport);
+        collect.setCallbackBatcher(new CallbackBatcher(new Tealium.BatchDispatchCallback() {
+            @Override
+            public void batchComplete(int succeeded, int failed, List<String> errors) {
+                if (succeeded == 1) {
+                    delivered.countDown();
+                }
+            }
+        }, 100, 50, TestLibraryContext.newInstance().getLogger()));
+
+        collect.dispatch(new Udo(), null);
+        delivered.await();
+        collect.close(1, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = CollectDispatchException.class)
+    public void testMalformedEndpoint() throws Exception {
+
+        CollectDispatcher collect = new CollectDispatcher("not a url", TestLibraryContext.newInstance(), 3000);
+
+        collect.dispatch(new Udo(), null);
+    }
 }
@@ -0,0 +1,261 @@
+package com.tealium;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.tealium.Tealium.DispatchCallback;
+
+/**
+ * Load generator for offline capacity planning: drives {@link Tealium#track}
+ * from a number of threads and reports throughput, latency percentiles and
+ * allocation.
+ *
+ * Latency runs from the track call to its callback, so it includes queueing
+ * as well as the send. Allocation is counted on the tracking threads only,
+ * which is what the host application pays for on its own threads.
+ *
+ * Run {@link #main} against a {@link CollectStubServer} with, e.g.,
+ * threads=8 events=20000 latency=20 errors=0.01 as arguments.
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class CollectLoadGenerator {
+    private final Tealium tealium;
+    private final int threads;
+    private final int eventsPerThread;
+
+    /**
+     * @param tealium
+     *            Instance to track with.
+     * @param threads
+     *            Number of tracking threads.
+     * @param eventsPerThread
+     *            Events each thread tracks.
+     */
+    CollectLoadGenerator(Tealium tealium, int threads, int eventsPerThread) {
+        this.tealium = tealium;
+        this.threads = threads;
+        this.eventsPerThread = eventsPerThread;
+    }
+
+    /**
+     * Track every event and wait for their callbacks.
+     *
+     * @param timeout
+     *            Longest wait for the callbacks, in milliseconds.
+     * @return the results so far, which are incomplete if the timeout passed first
+     */
+    Report run(long timeout) throws InterruptedException {
+        final int total = this.threads * this.eventsPerThread;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(total);
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong succeeded = new AtomicLong();
+        final AtomicLong allocated = new AtomicLong();
+
+        Thread[] workers = new Thread[this.threads];
+        for (int t = 0; t < this.threads; t++) {
+            final String visitor = "visitor-" + t;
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    long allocatedBefore = allocatedBytes();
+                    for (int i = 0; i < eventsPerThread; i++) {
+                        final long trackStart = System.nanoTime();
+                        Udo data = new Udo();
+                        data.put("tealium_visitor_id", visitor);
+                        data.put("sequence", i);
+                        tealium.track("load_test", data, new DispatchCallback() {
+                            @Override
+                            public void dispatchComplete(boolean success, Map<String, Object> info, String error) {
+                                latency.record((System.nanoTime() - trackStart) / 1000);
+                                if (success) {
+                                    succeeded.incrementAndGet();
+                                }
+                                completed.countDown();
+                            }
+                        });
+                    }
+                    allocated.addAndGet(allocatedBytes() - allocatedBefore);
+                }
+            }, "tealium-load-" + t);
+            workers[t].start();
+        }
+
+        long startNanos = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long trackNanos = System.nanoTime() - startNanos;
+        completed.await(timeout, TimeUnit.MILLISECONDS);
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        long finished = total - completed.getCount();
+        return new Report(total, finished, succeeded.get(), trackNanos, elapsedNanos, latency.snapshot(),
+                allocated.get());
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far, or 0 if the JVM doesn't say
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Results of one run.
+     */
+    static final class Report {
+        private final long events;
+        private final long completed;
+        private final long succeeded;
+        private final long trackNanos;
+        private final long elapsedNanos;
+        private final HistogramSnapshot latency;
+        private final long allocatedBytes;
+
+        Report(long events, long completed, long succeeded, long trackNanos, long elapsedNanos,
+               HistogramSnapshot latency, long allocatedBytes) {
+            this.events = events;
+            this.completed = completed;
+            this.succeeded = succeeded;
+            this.trackNanos = trackNanos;
+            this.elapsedNanos = elapsedNanos;
+            this.latency = latency;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        long getEvents() {
+            return events;
+        }
+
+        /**
+         * @return events whose callback was called
+         */
+        long getCompleted() {
+            return completed;
+        }
+
+        long getSucceeded() {
+            return succeeded;
+        }
+
+        /**
+         * @return events completed per second, from the first track call to the last callback
+         */
+        double getThroughput() {
+            return elapsedNanos == 0 ? 0 : completed * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @return track calls per second on the tracking threads
+         */
+        double getTrackRate() {
+            return trackNanos == 0 ? 0 : events * 1e9 / trackNanos;
+        }
+
+        /**
+         * @return time from track to callback, in microseconds
+         */
+        HistogramSnapshot getLatency() {
+            return latency;
+        }
+
+        /**
+         * @return bytes allocated on the tracking threads per track call
+         */
+        long getAllocatedBytesPerEvent() {
+            return events == 0 ? 0 : allocatedBytes / events;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "events=%d completed=%d succeeded=%d throughput=%.0f/s trackRate=%.0f/s "
+                            + "p50=%dus p99=%dus p999=%dus max=%dus allocated=%dB/event",
+                    events, completed, succeeded, getThroughput(), getTrackRate(),
+                    latency.getValueAtPercentile(50), latency.getValueAtPercentile(99),
+                    latency.getValueAtPercentile(99.9), latency.getMax(), getAllocatedBytesPerEvent());
+        }
+    }
+
+    /**
+     * Build an instance that dispatches asynchronously to the stub.
+     *
+     * @param stub
+     * @param dispatchThreads
+     *            Size of the send pool.
+     */
+    static Tealium newTealium(CollectStubServer stub, int dispatchThreads) {
+        LibraryContext context = new LibraryContext("tealiummobile", "load", "dev", null, new Logger(LogLevel.ERRORS));
+        CollectDispatcher dispatcher = new CollectDispatcher(stub.getEndpoint(), context, 5000,
+                new UrlConnectionTransport(),
+                DispatchExecutors.newPlatformExecutor(dispatchThreads),
+                new ConcurrencyLimiter(dispatchThreads, 1, dispatchThreads * 4));
+        return new Tealium.Builder("tealiummobile", "load")
+                .setLogLevel(LogLevel.ERRORS)
+                .setJmxEnabled(false)
+                .setPersistentData(TestUtils.dummyPersistentUdo())
+                .setCollectDispatcher(dispatcher)
+                .build();
+    }
+
+    /**
+     * Arguments are name=value pairs: threads, events (per thread), dispatchThreads, latency and
+     * jitter (milliseconds), errors and errorHeaders (rates from 0 to 1) and readRate (bytes per
+     * second).
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split > 0) {
+                options.put(arg.substring(0, split), arg.substring(split + 1));
+            }
+        }
+
+        CollectStubServer stub = new CollectStubServer()
+                .setLatency(Long.parseLong(option(options, "latency", "0")),
+                        Long.parseLong(option(options, "jitter", "0")))
+                .setErrorRate(Double.parseDouble(option(options, "errors", "0")), 503)
+                .setErrorHeaderRate(Double.parseDouble(option(options, "errorHeaders", "0")))
+                .setReadBytesPerSecond(Integer.parseInt(option(options, "readRate", "0")));
+        try {
+            Tealium tealium = newTealium(stub, Integer.parseInt(option(options, "dispatchThreads", "8")));
+            try {
+                Report report = new CollectLoadGenerator(tealium,
+                        Integer.parseInt(option(options, "threads", "4")),
+                        Integer.parseInt(option(options, "events", "10000"))).run(TimeUnit.MINUTES.toMillis(5));
+                System.out.println(report);
+            } finally {
+                tealium.close();
+            }
+        } finally {
+            stub.close();
+        }
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+}
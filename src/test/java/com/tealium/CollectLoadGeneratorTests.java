@@ -0,0 +1,38 @@
+package com.tealium;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test logic related to CollectLoadGenerator
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public class CollectLoadGeneratorTests {
+
+    @Test
+    public void testLoadAgainstStub() throws Exception {
+        CollectStubServer stub = new CollectStubServer().setLatency(1, 2).setErrorRate(0.1, 503);
+        try {
+            Tealium tealium = CollectLoadGenerator.newTealium(stub, 4);
+            CollectLoadGenerator.Report report;
+            try {
+                report = new CollectLoadGenerator(tealium, 4, 250).run(30000);
+            } finally {
+                tealium.close();
+            }
+
+            assertEquals(1000, report.getEvents());
+            assertEquals(1000, report.getCompleted());
+            assertEquals(1000, stub.getRequests());
+            assertEquals(1000 - stub.getErrors(), report.getSucceeded());
+            assertEquals(1000, report.getLatency().getCount());
+            assertTrue(report.getThroughput() > 0);
+            assertTrue(report.getLatency().getValueAtPercentile(99) >= report.getLatency().getValueAtPercentile(50));
+            System.out.println(report);
+        } finally {
+            stub.close();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.tealium;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded stand-in for the collect service, so the network path can be
+ * exercised and measured without reaching collect.tealiumiq.com.
+ *
+ * Listens on an ephemeral loopback port. Every request is answered with 200
+ * unless a configured error rate picks it to fail, either with an error
+ * status or with a 200 carrying an x-error header. Latency is added before
+ * responding, and a slow reader drips the request body in at a fixed rate.
+ * Settings can be changed while the server is running. Connections are
+ * closed after every response, so each send pays for a connect, unless keep
+ * alive is turned on.
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+final class CollectStubServer implements AutoCloseable {
+    private static final int SLOW_READ_CHUNK = 64;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile long latencyMillis = 0;
+    private volatile long latencyJitterMillis = 0;
+    private volatile double errorRate = 0;
+    private volatile int errorStatus = 503;
+    private volatile double errorHeaderRate = 0;
+    private volatile int readBytesPerSecond = 0;
+    private volatile boolean keepAlive = false;
+
+    CollectStubServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.executor = Executors.newCachedThreadPool();
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    respond(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        this.server.start();
+    }
+
+    /**
+     * @return the url to dispatch to
+     */
+    String getEndpoint() {
+        return "http://" + this.server.getAddress().getHostString() + ":" + this.server.getAddress().getPort()
+                + "/event";
+    }
+
+    /**
+     * @param latencyMillis
+     *            Added before every response.
+     * @param jitterMillis
+     *            Up to this much more is added at random.
+     */
+    CollectStubServer setLatency(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = jitterMillis;
+        return this;
+    }
+
+    /**
+     * @param errorRate
+     *            Share of requests answered with the error status, from 0 to 1.
+     * @param errorStatus
+     *            HTTP status of failed requests.
+     */
+    CollectStubServer setErrorRate(double errorRate, int errorStatus) {
+        this.errorRate = errorRate;
+        this.errorStatus = errorStatus;
+        return this;
+    }
+
+    /**
+     * @param errorHeaderRate
+     *            Share of requests answered with 200 and an x-error header, from 0 to 1.
+     */
+    CollectStubServer setErrorHeaderRate(double errorHeaderRate) {
+        this.errorHeaderRate = errorHeaderRate;
+        return this;
+    }
+
+    /**
+     * @param readBytesPerSecond
+     *            Rate the request body is read at, or 0 to read it as fast as it arrives.
+     */
+    CollectStubServer setReadBytesPerSecond(int readBytesPerSecond) {
+        this.readBytesPerSecond = readBytesPerSecond;
+        return this;
+    }
+
+    /**
+     * @param keepAlive
+     *            Leave connections open after responding.
+     */
+    CollectStubServer setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+        return this;
+    }
+
+    long getRequests() {
+        return this.requests.get();
+    }
+
+    long getBytesReceived() {
+        return this.bytesReceived.get();
+    }
+
+    /**
+     * @return requests answered with an error status or x-error header
+     */
+    long getErrors() {
+        return this.errors.get();
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        this.requests.incrementAndGet();
+        this.bytesReceived.addAndGet(this.readBody(exchange.getRequestBody()));
+
+        long delay = this.latencyMillis;
+        if (this.latencyJitterMillis > 0) {
+            delay += ThreadLocalRandom.current().nextLong(this.latencyJitterMillis + 1);
+        }
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        int status = 200;
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < this.errorRate) {
+            status = this.errorStatus;
+            this.errors.incrementAndGet();
+        } else if (roll < this.errorRate + this.errorHeaderRate) {
+            exchange.getResponseHeaders().add("X-Error", "stubbed error");
+            this.errors.incrementAndGet();
+        }
+
+        if (!this.keepAlive) {
+            // the JDK server can lose a request that arrives on a connection just as it goes back to idle
+            exchange.getResponseHeaders().add("Connection", "close");
+        }
+        exchange.sendResponseHeaders(status, -1);
+        OutputStream os = exchange.getResponseBody();
+        os.close();
+    }
+
+    private long readBody(InputStream in) throws IOException {
+        int rate = this.readBytesPerSecond;
+        byte[] buffer = new byte[rate > 0 ? SLOW_READ_CHUNK : 8192];
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            total += read;
+            if (rate > 0) {
+                try {
+                    TimeUnit.MICROSECONDS.sleep(read * 1000000L / rate);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        return total;
+    }
+}
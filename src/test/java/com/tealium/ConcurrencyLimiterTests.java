@@ -0,0 +1,88 @@
+package com.tealium;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test logic related to ConcurrencyLimiter
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public class ConcurrencyLimiterTests {
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void testPermitsAreBoundedByLimit() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 10);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertFalse(limiter.acquire(10, TimeUnit.MILLISECONDS));
+
+        limiter.release(RTT, false);
+
+        assertTrue(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    public void testLimitGrowsWhileLatencyIsFlat() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 10);
+
+        for (int i = 0; i < 200; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(RTT, false);
+        }
+
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    public void testLimitBacksOffOnOverload() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 10);
+
+        assertTrue(limiter.tryAcquire());
+        limiter.release(RTT, true);
+
+        assertEquals(9, limiter.getLimit());
+    }
+
+    @Test
+    public void testLimitBacksOffWhenLatencyClimbs() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 10);
+
+        assertTrue(limiter.tryAcquire());
+        limiter.release(1, false);
+        Thread.sleep(1);
+        assertTrue(limiter.tryAcquire());
+        limiter.release(RTT, false);
+
+        assertTrue(limiter.getLimit() < 10);
+    }
+
+    @Test
+    public void testLimitNeverDropsBelowMinimum() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 2, 10);
+
+        for (int i = 0; i < 50; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(RTT, true);
+        }
+
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void testLoweringMaxLimit() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 1, 10);
+
+        limiter.setMaxLimit(3);
+
+        assertEquals(3, limiter.getLimit());
+        assertEquals(3, limiter.getMaxLimit());
+    }
+}
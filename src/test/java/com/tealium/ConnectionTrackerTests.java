@@ -0,0 +1,74 @@
+package com.tealium;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test logic related to ConnectionTracker
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public class ConnectionTrackerTests {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final Map<String, List<String>> NO_HEADERS = Collections.emptyMap();
+
+    private static Map<String, List<String>> header(String name, String value) {
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        headers.put(name, Collections.singletonList(value));
+        return headers;
+    }
+
+    @Test
+    public void testPooledConnectionsAreReusedUntilTheyExpire() {
+        ConnectionTracker tracker = new ConnectionTracker(2, false, 5000);
+        long now = 0;
+
+        assertFalse(tracker.acquire(now));
+        assertFalse(tracker.acquire(now));
+        tracker.release(NO_HEADERS, now);
+        tracker.release(NO_HEADERS, now);
+        // the pool is full
+        tracker.release(NO_HEADERS, now);
+        assertEquals(2, tracker.idleAfter(0, now));
+
+        assertTrue(tracker.acquire(now + SECOND));
+        assertEquals(1, tracker.idleAfter(0, now + SECOND));
+        assertEquals(0, tracker.idleAfter(4000, now + SECOND));
+        assertFalse(tracker.acquire(now + 6 * SECOND));
+    }
+
+    @Test
+    public void testServerKeepAliveAndClose() {
+        ConnectionTracker tracker = new ConnectionTracker(5, false, 5000);
+
+        tracker.release(header("Connection", "close"), 0);
+        assertEquals(0, tracker.idleAfter(0, 0));
+
+        tracker.release(header("Keep-Alive", "timeout=60, max=100"), 0);
+        assertEquals(1, tracker.idleAfter(30000, 0));
+
+        tracker.release(header("keep-alive", "max=100, timeout=nonsense"), 0);
+        assertEquals(1, tracker.idleAfter(30000, 0));
+        assertEquals(2, tracker.idleAfter(4000, 0));
+    }
+
+    @Test
+    public void testMultiplexedConnectionIsShared() {
+        ConnectionTracker tracker = new ConnectionTracker(5, true, 5000);
+        assertEquals(1, tracker.getMaxIdle());
+
+        assertFalse(tracker.acquire(0));
+        tracker.release(NO_HEADERS, 0);
+        assertTrue(tracker.acquire(0));
+        assertTrue(tracker.acquire(0));
+        tracker.release(NO_HEADERS, SECOND);
+        assertEquals(1, tracker.idleAfter(0, SECOND));
+    }
+}
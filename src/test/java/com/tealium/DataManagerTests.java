@@ -6,6 +6,8 @@ import org.junit.Test;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 
 import static org.junit.Assert.*;
 
@@ -146,6 +148,191 @@ public class DataManagerTests {
         assertFalse(sessionId.equals(sessionId2));
     }
 
+    @Test
+    public void testPersistentDataCopyCanBeChanged() throws Exception {
+        DataManager data = new DataManager(TestLibraryContext.newInstance(), TestUtils.dummyPersistentUdo());
+        Udo map = new Udo();
+        map.put("testList", new String[]{"a", "b"});
+        data.addPersistentData(map);
+
+        Udo copy = data.getPersistentData();
+        copy.put("testKey", "testValue");
+        @SuppressWarnings("unchecked")
+        List<String> list = (List<String>) copy.get("testList");
+        list.set(0, "c");
+
+        // the persistent data itself is unchanged
+        assertFalse(data.getPersistentData().containsKey("testKey"));
+        assertEquals("a", ((List<?>) data.getPersistentData().get("testList")).get(0));
+    }
+
+    @Test
+    public void testPersistentDataIsReadOnlySnapshot() throws Exception {
+        DataManager data = new DataManager(TestLibraryContext.newInstance(), TestUtils.dummyPersistentUdo());
+        Udo snapshot = data.getPersistentSnapshot();
+
+        try {
+            snapshot.put("testKey", "testValue");
+            fail("Snapshot should be read-only");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        Udo map = new Udo();
+        map.put("testKey", "testValue");
+        map.put("testList", new String[]{"a", "b"});
+        data.addPersistentData(map);
+
+        assertFalse(snapshot.containsKey("testKey"));
+        Udo updated = data.getPersistentSnapshot();
+        assertNotSame(snapshot, updated);
+        assertEquals("testValue", updated.get("testKey"));
+        try {
+            @SuppressWarnings("unchecked")
+            List<String> list = (List<String>) updated.get("testList");
+            list.set(0, "c");
+            fail("Lists in the snapshot should be read-only");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testConcurrentAddPersistentDataKeepsEveryKey() throws Exception {
+        final DataManager data = new DataManager(TestLibraryContext.newInstance(), TestUtils.dummyPersistentUdo());
+        final int threads = 4;
+        final int keysPerThread = 200;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < keysPerThread; i++) {
+                            Udo map = new Udo();
+                            map.put("key_" + thread + "_" + i, i);
+                            data.addPersistentData(map);
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertTrue(failures.isEmpty());
+        Udo persistent = data.getPersistentData();
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < keysPerThread; i++) {
+                assertEquals(String.valueOf(i), persistent.get("key_" + t + "_" + i));
+            }
+        }
+    }
+
+    @Test
+    public void testLazyLoadServesDefaultsUntilLoaded() throws Exception {
+        PersistentUdo stored = TestUtils.dummyPersistentUdo();
+        Udo visitor = new Udo();
+        visitor.put(Key.TEALIUM_VISITOR_ID, "visitor");
+        stored.writeData(visitor);
+
+        final List<Runnable> loads = new ArrayList<Runnable>();
+        DataManager data = new DataManager(TestLibraryContext.newInstance(), stored, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                loads.add(command);
+            }
+        }, 0);
+
+        assertFalse(data.isLoaded());
+        assertEquals("tealiummobile", data.getPersistentData().get(Key.TEALIUM_ACCOUNT));
+        assertNull(data.getPersistentData().get(Key.TEALIUM_VISITOR_ID));
+        assertTrue(data.getVolatileData().get(Key.TEALIUM_RANDOM).toString().matches("^[0-9]{16}$"));
+
+        assertEquals(1, loads.size());
+        loads.get(0).run();
+        assertTrue(data.isLoaded());
+        assertEquals("visitor", data.getPersistentData().get(Key.TEALIUM_VISITOR_ID));
+    }
+
+    @Test(timeout = 10000)
+    public void testAddPersistentDataWaitsForLazyLoad() throws Exception {
+        PersistentUdo stored = TestUtils.dummyPersistentUdo();
+        Udo visitor = new Udo();
+        visitor.put(Key.TEALIUM_VISITOR_ID, "visitor");
+        stored.writeData(visitor);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final DataManager data = new DataManager(TestLibraryContext.newInstance(), stored, new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        command.run();
+                    }
+                }).start();
+            }
+        }, 0);
+
+        Thread adding = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Udo added = new Udo();
+                added.put("added", "1");
+                try {
+                    data.addPersistentData(added);
+                } catch (UdoSerializationException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        adding.start();
+        adding.join(200);
+        assertTrue(adding.isAlive());
+
+        release.countDown();
+        adding.join();
+        assertEquals("visitor", data.getPersistentData().get(Key.TEALIUM_VISITOR_ID));
+        assertEquals("1", data.getPersistentData().get("added"));
+        assertEquals("visitor", stored.readOrCreateUdo(new Udo()).get(Key.TEALIUM_VISITOR_ID));
+    }
+
+    @Test
+    public void testSessionsByVisitor() throws Exception {
+        DataManager data = new DataManager(TestLibraryContext.newInstance(), TestUtils.dummyPersistentUdo());
+        SessionManager sessions = new SessionManager(60000, 10);
+        data.setSessionManager(sessions);
+
+        Udo event = new Udo();
+        event.put(Key.TEALIUM_VISITOR_ID, "visitor");
+        Udo payload = new Udo();
+        data.addVolatileData(payload, event);
+        assertEquals(sessions.resolve("visitor"), payload.get(Key.TEALIUM_SESSION_ID));
+        assertEquals(1, sessions.size());
+
+        // no visitor, the instance's session
+        Udo anonymous = new Udo();
+        data.addVolatileData(anonymous, null);
+        assertEquals(data.getSessionId(), anonymous.get(Key.TEALIUM_SESSION_ID));
+        assertEquals(1, sessions.size());
+    }
+
     // =========================================================================
     // HELPERS
     // =========================================================================
@@ -0,0 +1,181 @@
+package com.tealium;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test logic related to DeltaLogPersistentUdo
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public class DeltaLogPersistentUdoTests {
+
+    private static final Executor INLINE = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static DeltaLogPersistentUdo open(Path snapshot, Path log, long threshold) {
+        return new DeltaLogPersistentUdo(new TextStorage(snapshot), log, threshold, INLINE);
+    }
+
+    private static Udo add(DeltaLogPersistentUdo persistent, Udo data, String key, Object value)
+            throws UdoSerializationException {
+        Udo added = new Udo();
+        added.put(key, value);
+        data.putAll(added);
+        persistent.writeData(data, added);
+        return data;
+    }
+
+    @Test
+    public void testAdditionsAreAppendedAndReplayed() throws Exception {
+        Path snapshot = Files.createTempFile("tealium", ".data");
+        Path log = Files.createTempFile("tealium", ".log");
+        try {
+            Files.delete(snapshot);
+            DeltaLogPersistentUdo persistent = open(snapshot, log, Long.MAX_VALUE);
+            Udo data = persistent.readOrCreateUdo(new Udo());
+            assertEquals(0, persistent.getLogSize());
+
+            add(persistent, data, "a", "1");
+            add(persistent, data, "b", "2");
+            String appended = new String(Files.readAllBytes(log), StandardCharsets.UTF_8);
+            assertEquals("{\"a\":\"1\"}\n{\"b\":\"2\"}\n", appended);
+            assertEquals(appended.length(), persistent.getLogSize());
+
+            Udo loaded = open(snapshot, log, Long.MAX_VALUE).readOrCreateUdo(new Udo());
+            assertEquals("1", loaded.get("a"));
+            assertEquals("2", loaded.get("b"));
+        } finally {
+            Files.deleteIfExists(snapshot);
+            Files.deleteIfExists(log);
+        }
+    }
+
+    @Test
+    public void testTornLastEntryIsDropped() throws Exception {
+        Path snapshot = Files.createTempFile("tealium", ".data");
+        Path log = Files.createTempFile("tealium", ".log");
+        try {
+            Files.delete(snapshot);
+            DeltaLogPersistentUdo persistent = open(snapshot, log, Long.MAX_VALUE);
+            add(persistent, persistent.readOrCreateUdo(new Udo()), "a", "1");
+            Files.write(log, "{\"b\":\"2\"}\n{\"c\":".getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+
+            DeltaLogPersistentUdo reopened = open(snapshot, log, Long.MAX_VALUE);
+            Udo loaded = reopened.readOrCreateUdo(new Udo());
+            assertEquals("1", loaded.get("a"));
+            assertEquals("2", loaded.get("b"));
+            assertFalse(loaded.containsKey("c"));
+
+            // the next entry starts on a line of its own
+            add(reopened, loaded, "d", "4");
+            Udo again = open(snapshot, log, Long.MAX_VALUE).readOrCreateUdo(new Udo());
+            assertEquals("2", again.get("b"));
+            assertEquals("4", again.get("d"));
+        } finally {
+            Files.deleteIfExists(snapshot);
+            Files.deleteIfExists(log);
+        }
+    }
+
+    @Test
+    public void testAppendWritesOverFailedAppend() throws Exception {
+        Path snapshot = Files.createTempFile("tealium", ".data");
+        Path log = Files.createTempFile("tealium", ".log");
+        try {
+            Files.delete(snapshot);
+            DeltaLogPersistentUdo persistent = open(snapshot, log, Long.MAX_VALUE);
+            Udo data = add(persistent, persistent.readOrCreateUdo(new Udo()), "a", "1");
+            long size = persistent.getLogSize();
+            // what an append that failed part way through leaves behind
+            Files.write(log, "{\"lost\":\"a long value".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+            add(persistent, data, "b", "2");
+            String appended = new String(Files.readAllBytes(log), StandardCharsets.UTF_8);
+            assertEquals("{\"a\":\"1\"}\n{\"b\":\"2\"}\n", appended);
+            assertEquals(appended.length(), persistent.getLogSize());
+            assertTrue(persistent.getLogSize() > size);
+
+            // compaction drops exactly the entries its snapshot covers
+            persistent.compact();
+            add(persistent, data, "c", "3");
+            assertEquals("{\"c\":\"3\"}\n", new String(Files.readAllBytes(log), StandardCharsets.UTF_8));
+            Udo loaded = open(snapshot, log, Long.MAX_VALUE).readOrCreateUdo(new Udo());
+            assertEquals("1", loaded.get("a"));
+            assertEquals("2", loaded.get("b"));
+            assertEquals("3", loaded.get("c"));
+            assertFalse(loaded.containsKey("lost"));
+        } finally {
+            Files.deleteIfExists(snapshot);
+            Files.deleteIfExists(log);
+        }
+    }
+
+    @Test
+    public void testCompactionTrimsLogAndKeepsData() throws Exception {
+        Path snapshot = Files.createTempFile("tealium", ".data");
+        Path log = Files.createTempFile("tealium", ".log");
+        try {
+            Files.delete(snapshot);
+            DeltaLogPersistentUdo persistent = open(snapshot, log, 64);
+            Udo data = persistent.readOrCreateUdo(new Udo());
+            for (int i = 0; i < 20; i++) {
+                add(persistent, data, "key_" + i, String.valueOf(i));
+            }
+            assertTrue(persistent.getLogSize() < 64);
+            assertEquals(persistent.getLogSize(), Files.size(log));
+
+            Udo stored = new PersistentUdo(new TextStorage(snapshot)).readStoredUdo();
+            assertTrue(stored.containsKey("key_0"));
+
+            Udo loaded = open(snapshot, log, 64).readOrCreateUdo(new Udo());
+            for (int i = 0; i < 20; i++) {
+                assertEquals(String.valueOf(i), loaded.get("key_" + i));
+            }
+        } finally {
+            Files.deleteIfExists(snapshot);
+            Files.deleteIfExists(log);
+        }
+    }
+
+    @Test
+    public void testFullWriteEmptiesLog() throws Exception {
+        Path snapshot = Files.createTempFile("tealium", ".data");
+        Path log = Files.createTempFile("tealium", ".log");
+        try {
+            Files.delete(snapshot);
+            DeltaLogPersistentUdo persistent = open(snapshot, log, Long.MAX_VALUE);
+            Udo data = add(persistent, persistent.readOrCreateUdo(new Udo()), "a", "1");
+
+            data.remove("a");
+            data.put("b", "2");
+            persistent.writeData(data);
+            assertEquals(0, persistent.getLogSize());
+            assertFalse(Files.exists(log));
+
+            Udo loaded = open(snapshot, log, Long.MAX_VALUE).readOrCreateUdo(new Udo());
+            assertFalse(loaded.containsKey("a"));
+            assertEquals("2", loaded.get("b"));
+        } finally {
+            Files.deleteIfExists(snapshot);
+            Files.deleteIfExists(log);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonPositiveThreshold() {
+        new DeltaLogPersistentUdo(new TextStorage(null), null, 0, INLINE);
+    }
+}
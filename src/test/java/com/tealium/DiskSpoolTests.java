@@ -0,0 +1,54 @@
+package com.tealium;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test logic related to DiskSpool
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public class DiskSpoolTests {
+
+    @Test
+    public void testPollReturnsOldestFirstAndTruncates() throws Exception {
+        Path path = Files.createTempFile("tealium", ".spool");
+        try {
+            DiskSpool spool = new DiskSpool(path);
+            spool.append("{\"a\":\"1\"}");
+            spool.append("{\"a\":\"2\"}");
+            spool.append("{\"a\":\"\u00e9\"}");
+            assertEquals(3, spool.size());
+
+            assertEquals(Arrays.asList("{\"a\":\"1\"}", "{\"a\":\"2\"}"), spool.poll(2));
+            assertEquals(1, spool.size());
+            assertTrue(Files.size(path) > 0);
+
+            assertEquals(Arrays.asList("{\"a\":\"\u00e9\"}"), spool.poll(10));
+            assertEquals(0, spool.size());
+            assertEquals(0, Files.size(path));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testSpoolSurvivesRestart() throws Exception {
+        Path path = Files.createTempFile("tealium", ".spool");
+        try {
+            new DiskSpool(path).append("{}");
+            new DiskSpool(path).append("{}");
+
+            DiskSpool restarted = new DiskSpool(path);
+            assertEquals(2, restarted.size());
+            assertEquals(2, restarted.poll(10).size());
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
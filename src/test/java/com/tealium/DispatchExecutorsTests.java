@@ -0,0 +1,63 @@
+package com.tealium;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test logic related to DispatchExecutors
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public class DispatchExecutorsTests {
+
+    @Test
+    public void testPlatformExecutorIsBounded() throws Exception {
+        ThreadPoolExecutor executor = DispatchExecutors.newPlatformExecutor(3);
+
+        assertEquals(3, executor.getMaximumPoolSize());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testPlatformThreadsAreDaemons() throws Exception {
+        ExecutorService executor = DispatchExecutors.newPlatformExecutor(1);
+        final boolean[] daemon = new boolean[1];
+        final CountDownLatch barrier = new CountDownLatch(1);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                daemon[0] = Thread.currentThread().isDaemon();
+                barrier.countDown();
+            }
+        });
+
+        assertTrue(barrier.await(5, TimeUnit.SECONDS));
+        assertTrue(daemon[0]);
+        executor.shutdown();
+    }
+
+    @Test
+    public void testDispatchExecutorRunsTasks() throws Exception {
+        ExecutorService executor = DispatchExecutors.newDispatchExecutor(2, new Logger(LogLevel.NONE));
+        final CountDownLatch barrier = new CountDownLatch(10);
+
+        for (int i = 0; i < 10; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    barrier.countDown();
+                }
+            });
+        }
+
+        assertTrue(barrier.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,173 @@
+package com.tealium;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.tealium.DispatchQueue.QueuedEvent;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test logic related to DispatchQueue
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public class DispatchQueueTests {
+
+    private static final class RecordingListener implements DispatchQueue.DropListener {
+        final List<QueuedEvent> dropped = new ArrayList<QueuedEvent>();
+
+        @Override
+        public void dropped(QueuedEvent event, String reason) {
+            dropped.add(event);
+        }
+    }
+
+    private static QueuedEvent event(String id) {
+        Udo data = new Udo();
+        data.put("id", id);
+        return new QueuedEvent(data, null, PriorityLane.NORMAL);
+    }
+
+    private static DispatchQueue queue(int capacity, OverflowPolicy policy, long blockTimeoutMillis, DiskSpool spool,
+                                       LibraryContext context, RecordingListener listener) {
+        return new DispatchQueue(PriorityLane.NORMAL, new LaneSettings(capacity, policy, blockTimeoutMillis, 1, spool),
+                context, listener, new ConsumerSignal());
+    }
+
+    @Test
+    public void testDropNewest() throws Exception {
+        LibraryContext context = TestLibraryContext.newInstance();
+        RecordingListener listener = new RecordingListener();
+        DispatchQueue queue = queue(2, OverflowPolicy.DROP_NEWEST, 0, null, context, listener);
+
+        QueuedEvent third = event("3");
+        assertTrue(queue.offer(event("1")));
+        assertTrue(queue.offer(event("2")));
+        assertFalse(queue.offer(third));
+
+        assertEquals(1, listener.dropped.size());
+        assertSame(third, listener.dropped.get(0));
+        assertEquals(2, context.getMetrics().getQueueDepth());
+        MetricsSnapshot snapshot = context.getMetrics().snapshot();
+        assertEquals(1, snapshot.getEventsDroppedNewest());
+        assertEquals(1, snapshot.getEventsDropped());
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        LibraryContext context = TestLibraryContext.newInstance();
+        RecordingListener listener = new RecordingListener();
+        DispatchQueue queue = queue(2, OverflowPolicy.DROP_OLDEST, 0, null, context, listener);
+
+        QueuedEvent first = event("1");
+        assertTrue(queue.offer(first));
+        assertTrue(queue.offer(event("2")));
+        assertTrue(queue.offer(event("3")));
+
+        assertSame(first, listener.dropped.get(0));
+        assertEquals("2", queue.poll().getData().get("id"));
+        assertEquals("3", queue.poll().getData().get("id"));
+        assertEquals(1, context.getMetrics().snapshot().getEventsDroppedOldest());
+        assertEquals(0, context.getMetrics().getQueueDepth());
+    }
+
+    @Test
+    public void testBlockWaitsForRoom() throws Exception {
+        LibraryContext context = TestLibraryContext.newInstance();
+        RecordingListener listener = new RecordingListener();
+        final DispatchQueue queue = queue(2, OverflowPolicy.BLOCK, 5000, null, context, listener);
+
+        assertTrue(queue.offer(event("1")));
+        assertTrue(queue.offer(event("1")));
+
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                queue.poll();
+            }
+        });
+        consumer.start();
+
+        assertTrue(queue.offer(event("2")));
+        consumer.join();
+
+        assertTrue(listener.dropped.isEmpty());
+        assertEquals(1, context.getMetrics().snapshot().getEventsBlocked());
+    }
+
+    @Test
+    public void testBlockTimesOut() throws Exception {
+        LibraryContext context = TestLibraryContext.newInstance();
+        RecordingListener listener = new RecordingListener();
+        DispatchQueue queue = queue(2, OverflowPolicy.BLOCK, 10, null, context, listener);
+
+        assertTrue(queue.offer(event("1")));
+        assertTrue(queue.offer(event("1")));
+        assertFalse(queue.offer(event("2")));
+
+        assertEquals(1, listener.dropped.size());
+        MetricsSnapshot snapshot = context.getMetrics().snapshot();
+        assertEquals(1, snapshot.getEventsBlocked());
+        assertEquals(1, snapshot.getEventsDroppedNewest());
+    }
+
+    @Test
+    public void testSampleShedsLoadAboveHalfFull() throws Exception {
+        LibraryContext context = TestLibraryContext.newInstance();
+        RecordingListener listener = new RecordingListener();
+        DispatchQueue queue = queue(64, OverflowPolicy.SAMPLE, 0, null, context, listener);
+
+        for (int i = 0; i < 32; i++) {
+            assertTrue(queue.offer(event(Integer.toString(i))));
+        }
+        assertTrue(listener.dropped.isEmpty());
+
+        for (int i = 0; i < 1000; i++) {
+            queue.offer(event(Integer.toString(i)));
+        }
+
+        assertEquals(64, queue.size());
+        assertTrue(context.getMetrics().snapshot().getEventsSampledOut() > 0);
+    }
+
+    @Test
+    public void testSpillToDisk() throws Exception {
+        Path path = Files.createTempFile("tealium", ".spool");
+        try {
+            LibraryContext context = TestLibraryContext.newInstance();
+            RecordingListener listener = new RecordingListener();
+            DispatchQueue queue = queue(2, OverflowPolicy.SPILL_TO_DISK, 0, new DiskSpool(path),
+                    context, listener);
+
+            for (int i = 0; i < 5; i++) {
+                assertTrue(queue.offer(event(Integer.toString(i))));
+            }
+            assertEquals(3, queue.spoolSize());
+            assertEquals(3, context.getMetrics().snapshot().getEventsSpilled());
+
+            List<String> ids = new ArrayList<String>();
+            QueuedEvent taken;
+            while ((taken = queue.poll()) != null) {
+                ids.add((String) taken.getData().get("id"));
+            }
+
+            assertEquals(5, ids.size());
+            assertTrue(ids.containsAll(Arrays.asList("0", "1", "2", "3", "4")));
+            assertTrue(queue.isEmpty());
+            assertTrue(listener.dropped.isEmpty());
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.tealium;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test logic related to EndpointSelector
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public class EndpointSelectorTests {
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testRoutesToFastestEndpoint() {
+        EndpointSelector endpoints = new EndpointSelector(Arrays.asList("a", "b", "c"));
+        endpoints.started(0);
+        endpoints.finished(0, 50 * MILLI, true, 0);
+        endpoints.started(1);
+        endpoints.finished(1, 10 * MILLI, true, 0);
+        // not measured yet, so tried next
+        assertEquals(2, endpoints.select(0, 0));
+
+        endpoints.started(2);
+        endpoints.finished(2, 30 * MILLI, true, 0);
+        assertEquals(1, endpoints.select(0, 0));
+        assertEquals(10 * MILLI, endpoints.getLatency(1));
+
+        // sends in flight count against an endpoint
+        endpoints.started(1);
+        endpoints.started(1);
+        endpoints.started(1);
+        assertEquals(2, endpoints.select(0, 0));
+    }
+
+    @Test
+    public void testFailingEndpointIsEjectedWithBackoff() {
+        EndpointSelector endpoints = new EndpointSelector(Arrays.asList("a", "b"));
+        endpoints.started(1);
+        endpoints.finished(1, 100 * MILLI, true, 0);
+        for (int i = 0; i < EndpointSelector.FAILURES_TO_EJECT; i++) {
+            assertTrue(endpoints.isHealthy(0, 0));
+            endpoints.started(0);
+            endpoints.finished(0, 0, false, 0);
+        }
+        assertFalse(endpoints.isHealthy(0, 0));
+        assertEquals(1, endpoints.select(0, 0));
+
+        // back after the backoff, one more failure ejects it for twice as long
+        long back = EndpointSelector.MIN_EJECTION;
+        assertTrue(endpoints.isHealthy(0, back));
+        assertEquals(0, endpoints.select(0, back));
+        endpoints.started(0);
+        endpoints.finished(0, 0, false, back);
+        assertFalse(endpoints.isHealthy(0, back + 2 * EndpointSelector.MIN_EJECTION - 1));
+        assertTrue(endpoints.isHealthy(0, back + 2 * EndpointSelector.MIN_EJECTION));
+
+        // a success makes it healthy
+        endpoints.started(0);
+        endpoints.finished(0, MILLI, true, back + 2 * EndpointSelector.MIN_EJECTION);
+        endpoints.started(0);
+        endpoints.finished(0, 0, false, back + 2 * EndpointSelector.MIN_EJECTION);
+        assertTrue(endpoints.isHealthy(0, back + 2 * EndpointSelector.MIN_EJECTION));
+    }
+
+    @Test
+    public void testFailoverSkipsTriedEndpoints() {
+        EndpointSelector endpoints = new EndpointSelector(Arrays.asList("a", "b"));
+        for (int i = 0; i < EndpointSelector.FAILURES_TO_EJECT; i++) {
+            endpoints.started(1);
+            endpoints.finished(1, 0, false, 0);
+        }
+        // b is ejected, but still better than giving up once a has failed
+        assertEquals(0, endpoints.select(0, 0));
+        assertEquals(1, endpoints.select(1, 0));
+        assertEquals(-1, endpoints.select(3, 0));
+
+        EndpointSelector single = new EndpointSelector(Collections.singletonList("a"));
+        assertEquals(0, single.select(0));
+        assertEquals(-1, single.select(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNoEndpoints() {
+        new EndpointSelector(Collections.<String>emptyList());
+    }
+}
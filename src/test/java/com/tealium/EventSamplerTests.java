@@ -0,0 +1,81 @@
+package com.tealium;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.tealium.DataManager.EventType;
+import com.tealium.EventSampler.Decision;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test logic related to EventSampler
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public class EventSamplerTests {
+
+    private static Udo visitor(String visitorId) {
+        Udo data = new Udo();
+        data.put("tealium_visitor_id", visitorId);
+        return data;
+    }
+
+    @Test
+    public void testSamplingIsDeterministicPerVisitor() throws Exception {
+        EventSampler sampler = new EventSampler(Collections.singletonMap(EventType.VIEW, 0.5),
+                Collections.<String, TokenBucket>emptyMap());
+
+        int admitted = 0;
+        for (int i = 0; i < 10000; i++) {
+            Udo data = visitor("visitor-" + i);
+            Decision decision = sampler.admit(EventType.VIEW, data, new Udo());
+            for (int repeat = 0; repeat < 3; repeat++) {
+                assertEquals(decision, sampler.admit(EventType.VIEW, data, new Udo()));
+            }
+            if (decision == Decision.ADMITTED) {
+                admitted++;
+            }
+        }
+
+        assertTrue(admitted > 4700 && admitted < 5300);
+    }
+
+    @Test
+    public void testVisitorIdFromPersistentData() throws Exception {
+        EventSampler sampler = new EventSampler(Collections.singletonMap(EventType.VIEW, 0.5),
+                Collections.<String, TokenBucket>emptyMap());
+
+        for (int i = 0; i < 100; i++) {
+            String id = "visitor-" + i;
+            assertEquals(sampler.admit(EventType.VIEW, visitor(id), new Udo()),
+                    sampler.admit(EventType.VIEW, null, visitor(id)));
+        }
+    }
+
+    @Test
+    public void testUnconfiguredAndConversionEventsAreAdmitted() throws Exception {
+        Map<String, Double> rates = new HashMap<String, Double>();
+        rates.put(EventType.VIEW, 0.0);
+        rates.put(EventType.CONVERSION, 0.0);
+        EventSampler sampler = new EventSampler(rates, Collections.<String, TokenBucket>emptyMap());
+
+        assertEquals(Decision.NOT_SAMPLED, sampler.admit(EventType.VIEW, visitor("a"), new Udo()));
+        assertEquals(Decision.ADMITTED, sampler.admit(EventType.CONVERSION, visitor("a"), new Udo()));
+        assertEquals(Decision.ADMITTED, sampler.admit(EventType.INTERACTION, visitor("a"), new Udo()));
+    }
+
+    @Test
+    public void testRateLimit() throws Exception {
+        EventSampler sampler = new EventSampler(Collections.<String, Double>emptyMap(),
+                Collections.singletonMap(EventType.INTERACTION, new TokenBucket(0.001, 2)));
+
+        assertEquals(Decision.ADMITTED, sampler.admit(EventType.INTERACTION, null, new Udo()));
+        assertEquals(Decision.ADMITTED, sampler.admit(EventType.INTERACTION, null, new Udo()));
+        assertEquals(Decision.RATE_LIMITED, sampler.admit(EventType.INTERACTION, null, new Udo()));
+        assertEquals(Decision.ADMITTED, sampler.admit(EventType.VIEW, null, new Udo()));
+    }
+}
@@ -0,0 +1,69 @@
+package com.tealium;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test logic related to HedgePolicy
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public class HedgePolicyTests {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testDelayFollowsLatencyPercentile() {
+        LatencyHistogram latency = new LatencyHistogram();
+        HedgePolicy hedging = new HedgePolicy(90, 5, latency, 0);
+        for (int i = 0; i < HedgePolicy.MIN_SAMPLES - 1; i++) {
+            latency.record(1000);
+        }
+        // not enough samples to say
+        assertEquals(-1, hedging.sent(0));
+
+        latency.record(1000);
+        assertEquals(-1, hedging.sent(SECOND - 1));
+        long delay = hedging.sent(SECOND);
+        assertTrue(delay >= TimeUnit.MICROSECONDS.toNanos(1000));
+        assertTrue(delay <= TimeUnit.MICROSECONDS.toNanos(1100));
+
+        // read again only once a second
+        for (int i = 0; i < 10 * HedgePolicy.MIN_SAMPLES; i++) {
+            latency.record(50000);
+        }
+        assertEquals(delay, hedging.sent(SECOND + 1));
+        assertTrue(hedging.sent(2 * SECOND) >= TimeUnit.MICROSECONDS.toNanos(47000));
+    }
+
+    @Test
+    public void testHedgesAreCappedBySends() {
+        HedgePolicy hedging = new HedgePolicy(95, 10, new LatencyHistogram(), 0);
+        assertFalse(hedging.tryHedge());
+
+        for (int i = 0; i < 9; i++) {
+            hedging.sent(0);
+        }
+        assertFalse(hedging.tryHedge());
+        hedging.sent(0);
+        assertTrue(hedging.tryHedge());
+        assertFalse(hedging.tryHedge());
+
+        // a long quiet spell only saves up a few hedges
+        for (int i = 0; i < 10000; i++) {
+            hedging.sent(0);
+        }
+        int hedges = 0;
+        while (hedging.tryHedge()) {
+            hedges++;
+        }
+        assertEquals(10, hedges);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsInvalidPercentile() {
+        new HedgePolicy(100, 5, new LatencyHistogram());
+    }
+}
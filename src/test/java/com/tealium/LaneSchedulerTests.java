@@ -0,0 +1,141 @@
+package com.tealium;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.tealium.DataManager.EventType;
+import com.tealium.DispatchQueue.QueuedEvent;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test logic related to LaneScheduler
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public class LaneSchedulerTests {
+
+    private static final class RecordingListener implements DispatchQueue.DropListener {
+        final List<QueuedEvent> dropped = new ArrayList<QueuedEvent>();
+
+        @Override
+        public void dropped(QueuedEvent event, String reason) {
+            dropped.add(event);
+        }
+    }
+
+    private static QueuedEvent event(PriorityLane lane) {
+        return new QueuedEvent(new Udo(), null, lane);
+    }
+
+    @Test
+    public void testLaneForEventType() throws Exception {
+        assertEquals(PriorityLane.HIGH, PriorityLane.forEventType(EventType.CONVERSION));
+        assertEquals(PriorityLane.HIGH, PriorityLane.forEventType(EventType.DERIVED));
+        assertEquals(PriorityLane.NORMAL, PriorityLane.forEventType(EventType.VIEW));
+        assertEquals(PriorityLane.NORMAL, PriorityLane.forEventType(null));
+        assertEquals(PriorityLane.LOW, PriorityLane.forEventType(EventType.INTERACTION));
+    }
+
+    @Test
+    public void testLanesShareSendsByWeight() throws Exception {
+        LibraryContext context = TestLibraryContext.newInstance();
+        LaneScheduler scheduler = new LaneScheduler(null, context, new RecordingListener());
+
+        for (int i = 0; i < 130; i++) {
+            for (PriorityLane lane : PriorityLane.values()) {
+                assertTrue(scheduler.offer(event(lane)));
+            }
+        }
+
+        Map<PriorityLane, Integer> taken = new EnumMap<PriorityLane, Integer>(PriorityLane.class);
+        for (PriorityLane lane : PriorityLane.values()) {
+            taken.put(lane, 0);
+        }
+        for (int i = 0; i < 130; i++) {
+            QueuedEvent event = scheduler.take(0, TimeUnit.MILLISECONDS);
+            taken.put(event.getLane(), taken.get(event.getLane()) + 1);
+            scheduler.done(event);
+        }
+
+        assertEquals(80, (int) taken.get(PriorityLane.HIGH));
+        assertEquals(40, (int) taken.get(PriorityLane.NORMAL));
+        assertEquals(10, (int) taken.get(PriorityLane.LOW));
+        assertEquals(260, scheduler.pending());
+    }
+
+    @Test
+    public void testIdleLanesDontSaveUpCredit() throws Exception {
+        LibraryContext context = TestLibraryContext.newInstance();
+        LaneScheduler scheduler = new LaneScheduler(null, context, new RecordingListener());
+
+        for (int i = 0; i < 20; i++) {
+            scheduler.offer(event(PriorityLane.LOW));
+        }
+        for (int i = 0; i < 10; i++) {
+            assertEquals(PriorityLane.LOW, scheduler.take(0, TimeUnit.MILLISECONDS).getLane());
+        }
+
+        scheduler.offer(event(PriorityLane.HIGH));
+        assertEquals(PriorityLane.HIGH, scheduler.take(0, TimeUnit.MILLISECONDS).getLane());
+        assertEquals(PriorityLane.LOW, scheduler.take(0, TimeUnit.MILLISECONDS).getLane());
+    }
+
+    @Test
+    public void testTakeWaitsForOffer() throws Exception {
+        LibraryContext context = TestLibraryContext.newInstance();
+        final LaneScheduler scheduler = new LaneScheduler(null, context, new RecordingListener());
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                scheduler.offer(event(PriorityLane.LOW));
+            }
+        });
+        producer.start();
+
+        QueuedEvent event = scheduler.take(5, TimeUnit.SECONDS);
+        producer.join();
+
+        assertNotNull(event);
+        assertEquals(PriorityLane.LOW, event.getLane());
+        assertNull(scheduler.take(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testLanesOverflowSeparately() throws Exception {
+        LibraryContext context = TestLibraryContext.newInstance();
+        RecordingListener listener = new RecordingListener();
+        Map<PriorityLane, LaneSettings> settings = new EnumMap<PriorityLane, LaneSettings>(PriorityLane.class);
+        settings.put(PriorityLane.HIGH, new LaneSettings(4, OverflowPolicy.DROP_OLDEST, 0, 8, null));
+        settings.put(PriorityLane.LOW, new LaneSettings(2, OverflowPolicy.DROP_NEWEST, 0, 1, null));
+        LaneScheduler scheduler = new LaneScheduler(settings, context, listener);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(scheduler.offer(event(PriorityLane.HIGH)));
+            scheduler.offer(event(PriorityLane.LOW));
+            assertTrue(scheduler.offer(event(PriorityLane.NORMAL)));
+        }
+
+        assertEquals(4, listener.dropped.size());
+        Map<PriorityLane, LaneSnapshot> lanes = context.getMetrics().snapshot().getLanes();
+        assertEquals(5, lanes.get(PriorityLane.HIGH).getEventsQueued());
+        assertEquals(1, lanes.get(PriorityLane.HIGH).getEventsDropped());
+        assertEquals(4, lanes.get(PriorityLane.HIGH).getQueueDepth());
+        assertEquals(2, lanes.get(PriorityLane.LOW).getEventsQueued());
+        assertEquals(3, lanes.get(PriorityLane.LOW).getEventsDropped());
+        assertEquals(5, lanes.get(PriorityLane.NORMAL).getQueueDepth());
+        assertEquals(0, lanes.get(PriorityLane.NORMAL).getEventsDropped());
+        assertEquals(11, scheduler.size());
+    }
+}
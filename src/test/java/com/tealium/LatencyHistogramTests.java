@@ -0,0 +1,78 @@
+package com.tealium;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test logic related to LatencyHistogram
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public class LatencyHistogramTests {
+
+    @Test
+    public void testBucketsAreContiguous() throws Exception {
+        for (int i = 1; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long lowest = LatencyHistogram.highestValueInBucket(i - 1) + 1;
+            assertEquals(i, LatencyHistogram.bucketIndex(lowest));
+            assertEquals(i, LatencyHistogram.bucketIndex(LatencyHistogram.highestValueInBucket(i)));
+        }
+    }
+
+    @Test
+    public void testValuesStayWithinPrecision() throws Exception {
+        for (long value = 1; value < (1L << 40); value = value * 3 + 1) {
+            long bucketValue = LatencyHistogram.highestValueInBucket(LatencyHistogram.bucketIndex(value));
+            assertTrue(bucketValue >= value);
+            assertTrue((bucketValue - value) <= value / 16);
+        }
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1000, snapshot.getMax());
+        assertEquals(500.5, snapshot.getMean(), 0.001);
+        assertEquals(500, snapshot.getValueAtPercentile(50), 500 / 16);
+        assertEquals(990, snapshot.getValueAtPercentile(99), 990 / 16);
+        assertEquals(1000, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testEmptySnapshot() throws Exception {
+        HistogramSnapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.record(i);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40000, histogram.snapshot().getCount());
+    }
+}
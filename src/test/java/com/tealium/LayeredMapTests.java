@@ -0,0 +1,155 @@
+package com.tealium;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test logic related to LayeredMap
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public class LayeredMapTests {
+
+    private static LayeredMap frozen(String... keysAndValues) {
+        Map<String, Object> map = new HashMap<String, Object>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            map.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return LayeredMap.frozenCopyOf(map);
+    }
+
+    @Test
+    public void testLayerOverridesBase() throws Exception {
+        LayeredMap base = frozen("a", "1", "b", "2");
+        LayeredMap layer = base.layer();
+
+        assertEquals("1", layer.put("a", "one"));
+        assertNull(layer.put("c", "3"));
+
+        assertEquals(3, layer.size());
+        assertEquals("one", layer.get("a"));
+        assertEquals("2", layer.get("b"));
+        assertEquals("3", layer.get("c"));
+        assertEquals("1", base.get("a"));
+        assertEquals(2, base.size());
+
+        Map<String, Object> expected = new HashMap<String, Object>();
+        expected.put("a", "one");
+        expected.put("b", "2");
+        expected.put("c", "3");
+        assertEquals(expected, layer);
+        assertEquals(expected, new HashMap<String, Object>(layer));
+    }
+
+    @Test
+    public void testRemoveHidesBase() throws Exception {
+        LayeredMap layer = frozen("a", "1", "b", "2").layer();
+
+        assertEquals("1", layer.remove("a"));
+        assertNull(layer.remove("a"));
+        assertNull(layer.remove("missing"));
+        assertFalse(layer.containsKey("a"));
+        assertEquals(1, layer.size());
+
+        layer.put("a", "again");
+        assertEquals("again", layer.get("a"));
+        assertEquals(2, layer.size());
+
+        layer.clear();
+        assertTrue(layer.isEmpty());
+        assertNull(layer.get("b"));
+    }
+
+    @Test
+    public void testIteratorRemove() throws Exception {
+        LayeredMap layer = frozen("a", "1", "b", "2", "c", "3").layer();
+        layer.put("d", "4");
+
+        Iterator<Map.Entry<String, Object>> entries = layer.entrySet().iterator();
+        int visited = 0;
+        while (entries.hasNext()) {
+            Map.Entry<String, Object> entry = entries.next();
+            visited++;
+            if (!entry.getKey().equals("c")) {
+                entries.remove();
+            }
+        }
+
+        assertEquals(4, visited);
+        assertEquals(1, layer.size());
+        assertEquals("3", layer.get("c"));
+        assertEquals(1, layer.entrySet().size());
+    }
+
+    @Test
+    public void testFreezeSharesAndProtects() throws Exception {
+        LayeredMap layer = frozen("a", "1").layer();
+        List<String> list = Arrays.asList("x", "y");
+        layer.put("list", list);
+
+        LayeredMap frozen = layer.freeze();
+        assertTrue(frozen.isFrozen());
+        assertSame(frozen, frozen.freeze());
+        list.set(0, "changed");
+        assertEquals(Arrays.asList("x", "y"), frozen.get("list"));
+
+        try {
+            frozen.put("b", "2");
+            fail("Frozen map should not change");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            @SuppressWarnings("unchecked")
+            List<String> frozenList = (List<String>) frozen.get("list");
+            frozenList.set(0, "changed");
+            fail("Lists in a frozen map should not change");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLargeMaps() throws Exception {
+        int count = LayeredMap.INDEX_THRESHOLD * 20;
+        Map<String, Object> expected = new HashMap<String, Object>();
+        for (int i = 0; i < count; i++) {
+            expected.put("key" + i, "base" + i);
+        }
+        LayeredMap base = LayeredMap.frozenCopyOf(expected);
+        LayeredMap layer = base.layer();
+
+        for (int i = 0; i < count; i += 2) {
+            assertEquals("base" + i, layer.put("key" + i, "layer" + i));
+            expected.put("key" + i, "layer" + i);
+        }
+        for (int i = 0; i < count; i += 3) {
+            layer.remove("key" + i);
+            expected.remove("key" + i);
+        }
+        for (int i = count; i < count * 2; i++) {
+            assertNull(layer.put("key" + i, "new" + i));
+            expected.put("key" + i, "new" + i);
+        }
+
+        assertEquals(expected.size(), layer.size());
+        assertEquals(expected, layer);
+        assertEquals(expected, new HashMap<String, Object>(layer));
+        assertEquals("base1", base.get("key1"));
+        assertNull(base.get("key" + count));
+
+        LayeredMap frozen = layer.freeze();
+        assertEquals(expected, frozen);
+        LayeredMap next = frozen.layer();
+        assertEquals("new" + count, next.put("key" + count, "next"));
+        assertNull(next.get("key0"));
+        assertEquals("layer2", next.get("key2"));
+    }
+}
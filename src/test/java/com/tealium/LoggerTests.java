@@ -2,7 +2,15 @@ package com.tealium;
 
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import static junit.framework.TestCase.assertNull;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -39,4 +47,130 @@ public class LoggerTests {
 
 		assertNull(output);
 	}
+
+	@Test
+	public void testFormatMessage() throws Exception {
+		RecordingHandler handler = new RecordingHandler();
+		Logger logger = new Logger(LogLevel.VERBOSE, handler, false);
+
+		logger.log(LogLevel.WARNINGS, "{} of {} sent", 3, 4);
+		logger.log(LogLevel.WARNINGS, "no placeholders", "ignored");
+
+		assertEquals("3 of 4 sent", handler.messages.get(0));
+		assertEquals("no placeholders", handler.messages.get(1));
+	}
+
+	@Test
+	public void testDisabledLevelIsNotPublished() throws Exception {
+		RecordingHandler handler = new RecordingHandler();
+		Logger logger = new Logger(LogLevel.ERRORS, handler, false);
+
+		logger.log(LogLevel.VERBOSE, "value {}", "ignored");
+
+		assertTrue(handler.messages.isEmpty());
+	}
+
+	@Test
+	public void testRepeatedErrorsAreSuppressed() throws Exception {
+		RecordingHandler handler = new RecordingHandler();
+		Logger logger = new Logger(LogLevel.VERBOSE, handler, false);
+
+		for (int i = 0; i < 100; i++) {
+			logger.log(new CollectDispatchException("collect is down"), LogLevel.ERRORS);
+		}
+		logger.log(new CollectDispatchException("another problem"), LogLevel.ERRORS);
+
+		assertEquals(2, handler.messages.size());
+	}
+
+	@Test
+	public void testFormattedErrorsAreSuppressedByMessage() throws Exception {
+		RecordingHandler handler = new RecordingHandler();
+		Logger logger = new Logger(LogLevel.VERBOSE, handler, false);
+
+		logger.log(LogLevel.ERRORS, "{} events were still pending", 3);
+		logger.log(LogLevel.ERRORS, "{} events were still pending", 7);
+		logger.log(LogLevel.ERRORS, "{} events were still pending", 7);
+
+		assertEquals(2, handler.messages.size());
+		assertEquals("3 events were still pending", handler.messages.get(0));
+		assertEquals("7 events were still pending", handler.messages.get(1));
+	}
+
+	@Test
+	public void testAsyncLogging() throws Exception {
+		RecordingHandler handler = new RecordingHandler();
+		Logger logger = new Logger(LogLevel.VERBOSE, handler, true);
+
+		for (int i = 0; i < 50; i++) {
+			logger.log(LogLevel.VERBOSE, "message {}", i);
+		}
+
+		assertTrue(logger.flush(5, TimeUnit.SECONDS));
+		logger.close(5, TimeUnit.SECONDS);
+
+		assertEquals(50, handler.messages.size());
+		assertEquals("message 49", handler.messages.get(49));
+	}
+
+	@Test
+	public void testExceptionIsPrintedOnce() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Logger logger = new Logger(LogLevel.VERBOSE,
+				new Logger.PrintStreamHandler(new PrintStream(out, true, "UTF-8")), false);
+
+		logger.log(new CollectDispatchException("collect is down"), LogLevel.ERRORS);
+		logger.log(LogLevel.ERRORS, "{} failed", "send");
+
+		String printed = out.toString("UTF-8");
+		String header = new CollectDispatchException("collect is down").toString();
+		assertEquals(printed.indexOf(header), printed.lastIndexOf(header));
+		assertTrue(printed.contains("send failed"));
+	}
+
+	@Test
+	public void testNothingLostWhileClosing() throws Exception {
+		RecordingHandler handler = new RecordingHandler();
+		final Logger logger = new Logger(LogLevel.VERBOSE, handler, true);
+
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 200; i++) {
+						logger.log(LogLevel.VERBOSE, "message {}", i);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		logger.close(5, TimeUnit.SECONDS);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(800, handler.messages.size());
+	}
+
+	@Test
+	public void testFailingHandlerIsIgnored() throws Exception {
+		Logger logger = new Logger(LogLevel.VERBOSE, new LogHandler() {
+			@Override
+			public void publish(LogLevel level, String message, Throwable thrown) {
+				throw new IllegalStateException("broken handler");
+			}
+		}, false);
+
+		assertEquals("still returned", logger.log("still returned", LogLevel.VERBOSE));
+	}
+
+	private static final class RecordingHandler implements LogHandler {
+		final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+		@Override
+		public void publish(LogLevel level, String message, Throwable thrown) {
+			messages.add(thrown == null ? message : thrown.toString());
+		}
+	}
 }
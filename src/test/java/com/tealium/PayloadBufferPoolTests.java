@@ -0,0 +1,66 @@
+package com.tealium;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test logic related to PayloadBufferPool
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public class PayloadBufferPoolTests {
+
+    @Test
+    public void testReleasedBufferIsReused() throws Exception {
+        PayloadBufferPool pool = new PayloadBufferPool(4);
+
+        PayloadBuffer buffer = pool.acquire();
+        buffer.write(new byte[] { 1, 2, 3 });
+        buffer.release();
+
+        assertEquals(1, pool.size());
+        PayloadBuffer reused = pool.acquire();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.size());
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void testLargeBufferIsNotRetained() throws Exception {
+        PayloadBufferPool pool = new PayloadBufferPool(4);
+
+        PayloadBuffer buffer = pool.acquire();
+        buffer.write(new byte[128 * 1024]);
+        buffer.release();
+
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void testFullPoolDropsBuffers() throws Exception {
+        PayloadBufferPool pool = new PayloadBufferPool(2);
+
+        PayloadBuffer[] buffers = new PayloadBuffer[3];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = pool.acquire();
+        }
+        for (PayloadBuffer buffer : buffers) {
+            buffer.release();
+        }
+
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void testWriteJsonMatchesToJson() throws Exception {
+        Udo data = new Udo();
+        data.put("tealium_account", "tealiummobile");
+        data.put("items", new String[] { "a", "b" });
+
+        PayloadBuffer buffer = new PayloadBufferPool(1).acquire();
+        data.writeJson(buffer);
+
+        assertEquals(data.toJson(), new String(buffer.array(), 0, buffer.size(), "UTF-8"));
+    }
+}
@@ -0,0 +1,72 @@
+package com.tealium;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test logic related to RotatingBloomFilter
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public class RotatingBloomFilterTests {
+
+    private static final long WINDOW = TimeUnit.SECONDS.toNanos(10);
+
+    @Test
+    public void testRepeatsWithinWindow() throws Exception {
+        RotatingBloomFilter filter = new RotatingBloomFilter(WINDOW, 1000, 0.01);
+        long now = System.nanoTime();
+
+        assertTrue(filter.add(Hash64.hash("order-1"), now));
+        assertFalse(filter.add(Hash64.hash("order-1"), now));
+        assertTrue(filter.add(Hash64.hash("order-2"), now));
+
+        // still remembered after the first rotation
+        assertFalse(filter.add(Hash64.hash("order-2"), now + WINDOW / 2 + 1));
+    }
+
+    @Test
+    public void testContainsDoesNotAdd() throws Exception {
+        RotatingBloomFilter filter = new RotatingBloomFilter(WINDOW, 1000, 0.01);
+        long now = System.nanoTime();
+
+        assertFalse(filter.contains(Hash64.hash("order-1"), now));
+        assertFalse(filter.contains(Hash64.hash("order-1"), now));
+        assertTrue(filter.add(Hash64.hash("order-1"), now));
+        assertTrue(filter.contains(Hash64.hash("order-1"), now));
+        assertTrue(filter.contains(Hash64.hash("order-1"), now + WINDOW / 2 + 1));
+        assertFalse(filter.contains(Hash64.hash("order-1"), now + WINDOW + 2));
+    }
+
+    @Test
+    public void testForgetsAfterWindow() throws Exception {
+        RotatingBloomFilter filter = new RotatingBloomFilter(WINDOW, 1000, 0.01);
+        long now = System.nanoTime();
+
+        assertTrue(filter.add(Hash64.hash("order-1"), now));
+        assertTrue(filter.add(Hash64.hash("order-1"), now + WINDOW + 1));
+    }
+
+    @Test
+    public void testFalsePositiveRateBound() throws Exception {
+        RotatingBloomFilter filter = new RotatingBloomFilter(WINDOW, 10000, 0.01);
+        long now = System.nanoTime();
+
+        for (int i = 0; i < 10000; i++) {
+            filter.add(Hash64.hash("seen-" + i), now);
+        }
+
+        // probing adds too, so keep the probes few enough that the filter stays near its expected load
+        int falsePositives = 0;
+        for (int i = 0; i < 2000; i++) {
+            if (!filter.add(Hash64.hash("new-" + i), now)) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue("false positives: " + falsePositives, falsePositives <= 30);
+    }
+}
@@ -0,0 +1,156 @@
+package com.tealium;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test logic related to SessionManager
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public class SessionManagerTests {
+    private static final long TIMEOUT_MILLIS = 60000;
+    private static final long TIMEOUT = TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+
+    @Test
+    public void testSessionLastsWhileVisitorIsActive() throws Exception {
+        SessionManager sessions = new SessionManager(TIMEOUT_MILLIS, 10, 0);
+        String id = sessions.resolve("visitor", 0);
+
+        // each event is within the timeout of the last, though far past the first
+        for (long now = TIMEOUT / 2; now < 5 * TIMEOUT; now += TIMEOUT / 2) {
+            Thread.sleep(2);
+            assertEquals(id, sessions.resolve("visitor", now));
+            assertEquals(1, sessions.size());
+        }
+    }
+
+    @Test
+    public void testSessionEndsAfterTimeout() throws Exception {
+        SessionManager sessions = new SessionManager(TIMEOUT_MILLIS, 10, 0);
+        String first = sessions.resolve("visitor", 0);
+        Thread.sleep(2);
+
+        String second = sessions.resolve("visitor", TIMEOUT);
+        assertNotEquals(first, second);
+        assertEquals(1, sessions.size());
+    }
+
+    @Test
+    public void testWheelEndsIdleSessions() {
+        SessionManager sessions = new SessionManager(TIMEOUT_MILLIS, 10, 0);
+        sessions.resolve("a", 0);
+        sessions.resolve("b", TIMEOUT / 2);
+        assertEquals(2, sessions.size());
+
+        // another visitor's event moves the wheel on past a's deadline, but not b's
+        sessions.resolve("c", TIMEOUT + TIMEOUT / 4);
+        assertEquals(2, sessions.size());
+
+        sessions.resolve("c", 3 * TIMEOUT);
+        assertEquals(1, sessions.size());
+    }
+
+    @Test
+    public void testSessionsAreCapped() throws Exception {
+        SessionManager sessions = new SessionManager(TIMEOUT_MILLIS, 3, 0);
+        String first = sessions.resolve("visitor_0", 0);
+        for (int i = 1; i < 10; i++) {
+            sessions.resolve("visitor_" + i, i);
+            assertTrue(sessions.size() <= 3);
+        }
+
+        Thread.sleep(2);
+        // the oldest visitor was ended to make room
+        assertNotEquals(first, sessions.resolve("visitor_0", 10));
+        assertTrue(sessions.size() <= 3);
+    }
+
+    @Test
+    public void testConcurrentEventsShareSession() throws Exception {
+        final SessionManager sessions = new SessionManager(TIMEOUT_MILLIS, 1000);
+        final CountDownLatch start = new CountDownLatch(1);
+        final Set<String> ids = Collections.synchronizedSet(new HashSet<String>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 1000; i++) {
+                        ids.add(sessions.resolve("visitor"));
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, ids.size());
+        assertEquals(1, sessions.size());
+    }
+
+    @Test(timeout = 30000)
+    public void testNewSessionsWhileWheelCatchesUp() throws Exception {
+        final int threads = 4;
+        final int rounds = 200;
+        final SessionManager sessions = new SessionManager(TIMEOUT_MILLIS, 100000, 0);
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        List<Thread> workers = new ArrayList<Thread>();
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int r = 1; r <= rounds; r++) {
+                            // a quiet spell, then a burst of new visitors while the wheel catches up
+                            long now = r * 3 * TIMEOUT;
+                            barrier.await();
+                            for (int i = 0; i < 20; i++) {
+                                sessions.resolve("visitor_" + id + "_" + r + "_" + i, now);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            });
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(Collections.<Throwable>emptyList(), errors);
+        // everything but the last round has expired
+        sessions.resolve("last", (rounds + 1) * 3 * TIMEOUT);
+        assertEquals(1, sessions.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonPositiveTimeout() {
+        new SessionManager(0, 10);
+    }
+}
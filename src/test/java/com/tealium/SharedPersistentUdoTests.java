@@ -0,0 +1,200 @@
+package com.tealium;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test logic related to SharedPersistentUdo
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public class SharedPersistentUdoTests {
+    private static final int WORKERS = 3;
+    private static final int KEYS_PER_WORKER = 25;
+
+    private static SharedPersistentUdo open(Path dir) throws IOException {
+        return new SharedPersistentUdo(new TextStorage(dir.resolve("test.data")),
+                new SharedRegion(dir.resolve("test.shared"), SharedRegion.DEFAULT_CAPACITY));
+    }
+
+    private static void delete(Path dir) throws IOException {
+        DirectoryStream<Path> files = Files.newDirectoryStream(dir);
+        try {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } finally {
+            files.close();
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    @Test
+    public void testSeedsFromTextFile() throws Exception {
+        Path dir = Files.createTempDirectory("tealium");
+        try {
+            Udo stored = new Udo();
+            stored.put("tealium_visitor_id", "visitor");
+            new PersistentUdo(new TextStorage(dir.resolve("test.data"))).writeData(stored);
+
+            Udo loaded = open(dir).readOrCreateUdo(new Udo());
+            assertEquals("visitor", loaded.get("tealium_visitor_id"));
+            assertEquals("visitor", open(dir).readOrCreateUdo(new Udo()).get("tealium_visitor_id"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testAdditionsAreMergedAndSeen() throws Exception {
+        Path dir = Files.createTempDirectory("tealium");
+        try {
+            DataManager first = new DataManager(TestLibraryContext.newInstance(), open(dir));
+            DataManager second = new DataManager(TestLibraryContext.newInstance(), open(dir));
+
+            Udo a = new Udo();
+            a.put("a", "1");
+            first.addPersistentData(a);
+            assertEquals("1", second.getPersistentData().get("a"));
+
+            Udo b = new Udo();
+            b.put("b", "2");
+            second.addPersistentData(b);
+            assertEquals("1", first.getPersistentData().get("a"));
+            assertEquals("2", first.getPersistentData().get("b"));
+
+            // the text file is kept up to date as a backup
+            Udo text = new PersistentUdo(new TextStorage(dir.resolve("test.data"))).readStoredUdo();
+            assertEquals("1", text.get("a"));
+            assertEquals("2", text.get("b"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testNoReadWithoutChanges() throws Exception {
+        Path dir = Files.createTempDirectory("tealium");
+        try {
+            SharedPersistentUdo persistent = open(dir);
+            persistent.readOrCreateUdo(new Udo());
+            assertFalse(persistent.hasNewerData());
+            assertNull(persistent.readNewerData());
+
+            Udo a = new Udo();
+            a.put("a", "1");
+            open(dir).writeData(a);
+            assertTrue(persistent.hasNewerData());
+            assertEquals("1", persistent.readNewerData().get("a"));
+            assertFalse(persistent.hasNewerData());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testCloseReleasesRegion() throws Exception {
+        Path dir = Files.createTempDirectory("tealium");
+        try {
+            SharedRegion region = new SharedRegion(dir.resolve("test.shared"), SharedRegion.DEFAULT_CAPACITY);
+            DataManager dataManager = new DataManager(TestLibraryContext.newInstance(),
+                    new SharedPersistentUdo(new TextStorage(dir.resolve("test.data")), region));
+            dataManager.close();
+            assertFalse(region.isOpen());
+
+            // still kept in the text file
+            Udo a = new Udo();
+            a.put("a", "1");
+            dataManager.addPersistentData(a);
+            assertEquals("1", dataManager.getPersistentData().get("a"));
+            Udo text = new PersistentUdo(new TextStorage(dir.resolve("test.data"))).readStoredUdo();
+            assertEquals("1", text.get("a"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test(timeout = 120000)
+    public void testForkedProcessesShareData() throws Exception {
+        Path dir = Files.createTempDirectory("tealium");
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<Process> processes = new ArrayList<Process>();
+        try {
+            for (int w = 0; w < WORKERS; w++) {
+                processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        Worker.class.getName(), dir.toString(), String.valueOf(w))
+                        .redirectErrorStream(true)
+                        .redirectOutput(dir.resolve("worker" + w + ".log").toFile())
+                        .start());
+            }
+            for (int w = 0; w < WORKERS; w++) {
+                int exit = processes.get(w).waitFor();
+                String log = new String(Files.readAllBytes(dir.resolve("worker" + w + ".log")),
+                        StandardCharsets.UTF_8);
+                assertEquals("Worker " + w + " failed: " + log, 0, exit);
+            }
+
+            Udo shared = open(dir).readOrCreateUdo(new Udo());
+            for (int w = 0; w < WORKERS; w++) {
+                for (int i = 0; i < KEYS_PER_WORKER; i++) {
+                    assertEquals(String.valueOf(i), shared.get(Worker.key(w, i)));
+                }
+            }
+        } finally {
+            for (Process process : processes) {
+                process.destroy();
+            }
+            delete(dir);
+        }
+    }
+
+    /**
+     * Runs in a forked JVM: adds its own keys, then waits until it has seen every worker's.
+     */
+    public static final class Worker {
+        static String key(int worker, int index) {
+            return "worker_" + worker + "_" + index;
+        }
+
+        public static void main(String[] args) throws Exception {
+            Path dir = new File(args[0]).toPath();
+            int id = Integer.parseInt(args[1]);
+            DataManager data = new DataManager(TestLibraryContext.newInstance(), open(dir));
+
+            for (int i = 0; i < KEYS_PER_WORKER; i++) {
+                Udo added = new Udo();
+                added.put(key(id, i), i);
+                data.addPersistentData(added);
+            }
+
+            long deadline = System.currentTimeMillis() + 60000;
+            while (System.currentTimeMillis() < deadline) {
+                Udo persistent = data.getPersistentData();
+                int seen = 0;
+                for (int w = 0; w < WORKERS; w++) {
+                    for (int i = 0; i < KEYS_PER_WORKER; i++) {
+                        if (String.valueOf(i).equals(persistent.get(key(w, i)))) {
+                            seen++;
+                        }
+                    }
+                }
+                if (seen == WORKERS * KEYS_PER_WORKER) {
+                    System.exit(0);
+                }
+                Thread.sleep(10);
+            }
+            System.out.println("Timed out waiting for the other workers' data: " + data.getPersistentData());
+            System.exit(1);
+        }
+    }
+}
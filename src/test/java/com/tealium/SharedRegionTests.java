@@ -0,0 +1,142 @@
+package com.tealium;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test logic related to SharedRegion
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public class SharedRegionTests {
+
+    private static void write(SharedRegion region, byte[] data) throws IOException {
+        SharedRegion.Lock lock = region.lock();
+        try {
+            region.write(data);
+        } finally {
+            lock.release();
+        }
+    }
+
+    @Test
+    public void testWritesAreSeenThroughAnotherMapping() throws Exception {
+        Path path = Files.createTempFile("tealium", ".shared");
+        SharedRegion writer = new SharedRegion(path, 16);
+        SharedRegion reader = new SharedRegion(path, 16);
+        try {
+            assertEquals(0, reader.read().getData().length);
+            long before = reader.sequence();
+
+            write(writer, "hello".getBytes("UTF-8"));
+            assertNotEquals(before, reader.sequence());
+            SharedRegion.Contents contents = reader.read();
+            assertEquals("hello", new String(contents.getData(), "UTF-8"));
+            assertEquals(reader.sequence(), contents.getSequence());
+
+            // outgrows the 16 bytes the file started with
+            byte[] large = new byte[1000];
+            Arrays.fill(large, (byte) 'x');
+            write(writer, large);
+            assertArrayEquals(large, reader.read().getData());
+        } finally {
+            writer.close();
+            reader.close();
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testReadersNeverSeeTornWrites() throws Exception {
+        Path path = Files.createTempFile("tealium", ".shared");
+        final SharedRegion writer = new SharedRegion(path, 4096);
+        SharedRegion reader = new SharedRegion(path, 4096);
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        Thread writing = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; !done.get(); i++) {
+                        byte[] data = new byte[1 + i % 4000];
+                        Arrays.fill(data, (byte) i);
+                        write(writer, data);
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        });
+        writing.start();
+
+        try {
+            long deadline = System.currentTimeMillis() + 500;
+            while (System.currentTimeMillis() < deadline) {
+                byte[] data = reader.read().getData();
+                for (byte b : data) {
+                    if (b != data[0]) {
+                        fail("Read a torn write");
+                    }
+                }
+            }
+        } finally {
+            done.set(true);
+            writing.join();
+            writer.close();
+            reader.close();
+            Files.deleteIfExists(path);
+        }
+        assertNull(failure.get());
+    }
+
+    @Test
+    public void testWriteLeftHalfDoneIsCleared() throws Exception {
+        Path path = Files.createTempFile("tealium", ".shared");
+        SharedRegion region = new SharedRegion(path, 64);
+        try {
+            write(region, "data".getBytes("UTF-8"));
+
+            // a writer that died after making the sequence odd
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                MappedByteBuffer raw = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                raw.putLong(8, region.sequence() + 1);
+            } finally {
+                channel.close();
+            }
+
+            SharedRegion.Contents contents = region.read();
+            assertEquals(0, contents.getData().length);
+            assertEquals(0, contents.getSequence() & 1);
+        } finally {
+            region.close();
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testRejectsOtherFiles() throws Exception {
+        Path path = Files.createTempFile("tealium", ".data");
+        try {
+            new TextStorage(path).writeText("{\"not\":\"a region\"}");
+            new SharedRegion(path, 64);
+            fail("Should not open a file that isn't a shared region");
+        } catch (IOException e) {
+            // expected
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.tealium;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test logic related to TealiumMonitor
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public class TealiumMonitorTests {
+
+    @Test
+    public void testRegisterAndUnregister() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        TealiumMonitor monitor = new TealiumMonitor(TestLibraryContext.newInstance(),
+                new CollectDispatcher(CollectDispatcher.DEFAULT_URL, TestLibraryContext.newInstance(), 3000));
+
+        monitor.register();
+        ObjectName name = monitor.getObjectName();
+
+        assertNotNull(name);
+        assertTrue(server.isRegistered(name));
+        assertEquals(0L, server.getAttribute(name, "QueueDepth"));
+
+        monitor.unregister();
+
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void testInstancesWithSameProfileGetDistinctNames() throws Exception {
+        TealiumMonitor first = new TealiumMonitor(TestLibraryContext.newInstance(),
+                new CollectDispatcher(CollectDispatcher.DEFAULT_URL, TestLibraryContext.newInstance(), 3000));
+        TealiumMonitor second = new TealiumMonitor(TestLibraryContext.newInstance(),
+                new CollectDispatcher(CollectDispatcher.DEFAULT_URL, TestLibraryContext.newInstance(), 3000));
+
+        first.register();
+        second.register();
+
+        assertNotEquals(first.getObjectName(), second.getObjectName());
+
+        first.unregister();
+        second.unregister();
+    }
+
+    @Test
+    public void testTuneLogLevel() throws Exception {
+        LibraryContext context = TestLibraryContext.newInstance();
+        TealiumMonitor monitor = new TealiumMonitor(context,
+                new CollectDispatcher(CollectDispatcher.DEFAULT_URL, context, 3000));
+
+        monitor.register();
+        ManagementFactory.getPlatformMBeanServer()
+                .setAttribute(monitor.getObjectName(), new Attribute("LogLevel", "errors"));
+
+        assertEquals(LogLevel.ERRORS, context.getLogger().getLevel());
+        monitor.unregister();
+    }
+
+    @Test
+    public void testTuneDispatchThreads() throws Exception {
+        LibraryContext context = TestLibraryContext.newInstance();
+        CollectDispatcher dispatcher = new CollectDispatcher(CollectDispatcher.DEFAULT_URL, context, 3000,
+                new UrlConnectionTransport(), DispatchExecutors.newPlatformExecutor(4));
+        TealiumMonitor monitor = new TealiumMonitor(context, dispatcher);
+
+        monitor.setMaxDispatchThreads(16);
+        assertEquals(16, monitor.getMaxDispatchThreads());
+
+        monitor.setMaxDispatchThreads(2);
+        assertEquals(2, monitor.getMaxDispatchThreads());
+    }
+}
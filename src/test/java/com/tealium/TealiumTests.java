@@ -1,14 +1,30 @@
 package com.tealium;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertNotSame;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.junit.Test;
 
+import com.tealium.DataManager.EventType;
 import com.tealium.Tealium.DispatchCallback;
 
 /**
@@ -90,6 +106,310 @@ public class TealiumTests {
         barrier.await(1, TimeUnit.SECONDS);
     }
 
+    @Test
+    public void testTrackUpdatesMetrics() throws Exception {
+        Tealium tealium = new Tealium.Builder("tealiummobile", "demo")
+                .setPersistentData(TestUtils.dummyPersistentUdo())
+                .setCollectDispatcher(new CollectDispatcher("not a url", TestLibraryContext.newInstance(), 1000))
+                .setLogLevel(LogLevel.NONE)
+                .build();
+
+        tealium.track("test", (Udo) null);
+        tealium.track("test", (Udo) null);
+
+        assertEquals(2, tealium.getMetrics().getEventsTracked());
+    }
+
+    @Test
+    public void testTrackLeavesPersistentDataAlone() throws Exception {
+        Tealium tealium = new Tealium.Builder("tealiummobile", "demo")
+                .setPersistentData(TestUtils.dummyPersistentUdo())
+                .setCollectDispatcher(new CollectDispatcher("not a url", TestLibraryContext.newInstance(), 1000))
+                .setLogLevel(LogLevel.NONE)
+                .build();
+        Udo before = tealium.getDataManager().getPersistentSnapshot();
+
+        Udo data = new Udo();
+        data.put("tealium_visitor_id", "visitor");
+        tealium.track("test", data);
+
+        Udo after = tealium.getDataManager().getPersistentSnapshot();
+        assertSame(before, after);
+        assertFalse(after.containsKey(DataManager.Key.TEALIUM_EVENT));
+        assertFalse(after.containsKey("tealium_visitor_id"));
+    }
+
+    @Test(timeout = 10000)
+    public void testLazyInitializationLoadsStoredData() throws Exception {
+        PersistentUdo stored = TestUtils.dummyPersistentUdo();
+        Udo visitor = new Udo();
+        visitor.put("tealium_visitor_id", "visitor");
+        stored.writeData(visitor);
+
+        Tealium tealium = new Tealium.Builder("tealiummobile", "demo")
+                .setPersistentData(stored)
+                .setCollectDispatcher(new CollectDispatcher("not a url", TestLibraryContext.newInstance(), 1000))
+                .setLogLevel(LogLevel.NONE)
+                .setLazyInitialization(true)
+                .build();
+        tealium.track("test");
+
+        Udo added = new Udo();
+        added.put("added", "1");
+        tealium.getDataManager().addPersistentData(added);
+        assertTrue(tealium.getDataManager().isLoaded());
+        assertEquals("visitor", tealium.getDataManager().getPersistentData().get("tealium_visitor_id"));
+        assertEquals("1", tealium.getDataManager().getPersistentData().get("added"));
+    }
+
+    @Test
+    public void testCloseFlushesPendingEvents() throws Exception {
+        CollectTransport slowTransport = new CollectTransport() {
+            @Override
+            public void send(String endpoint, byte[] payload, int timeout, ResponseHandler handler) throws IOException {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                handler.onResponse(200, Collections.<String, List<String>>emptyMap());
+            }
+        };
+
+        final AtomicInteger succeeded = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        DispatchCallback callBack = new DispatchCallback() {
+            @Override
+            public void dispatchComplete(boolean success, Map<String, Object> info, String error) {
+                (success ? succeeded : failed).incrementAndGet();
+            }
+        };
+
+        Tealium tealium = new Tealium.Builder("tealiummobile", "demo")
+                .setPersistentData(TestUtils.dummyPersistentUdo())
+                .setCollectDispatcher(new CollectDispatcher(CollectDispatcher.DEFAULT_URL,
+                        TestLibraryContext.newInstance(), 1000, slowTransport,
+                        DispatchExecutors.newPlatformExecutor(2), new ConcurrencyLimiter(2, 1, 2)))
+                .setLogLevel(LogLevel.NONE)
+                .setJmxEnabled(false)
+                .build();
+
+        for (int i = 0; i < 10; i++) {
+            tealium.track("test", null, callBack);
+        }
+
+        assertEquals(0, tealium.close(5, TimeUnit.SECONDS));
+        assertEquals(10, succeeded.get());
+
+        tealium.track("test", null, callBack);
+        assertEquals(1, failed.get());
+        assertEquals(0, tealium.close(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFlushReportsPendingAtDeadline() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        CollectTransport stuckTransport = new CollectTransport() {
+            @Override
+            public void send(String endpoint, byte[] payload, int timeout, ResponseHandler handler) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                handler.onResponse(200, Collections.<String, List<String>>emptyMap());
+            }
+        };
+
+        Tealium tealium = new Tealium.Builder("tealiummobile", "demo")
+                .setPersistentData(TestUtils.dummyPersistentUdo())
+                .setCollectDispatcher(new CollectDispatcher(CollectDispatcher.DEFAULT_URL,
+                        TestLibraryContext.newInstance(), 1000, stuckTransport,
+                        DispatchExecutors.newPlatformExecutor(1), null))
+                .setLogLevel(LogLevel.NONE)
+                .setJmxEnabled(false)
+                .build();
+
+        tealium.track("test", (Udo) null);
+        tealium.track("test", (Udo) null);
+
+        assertEquals(2, tealium.flush(50, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        assertEquals(0, tealium.flush(5, TimeUnit.SECONDS));
+        tealium.close();
+    }
+
+    @Test
+    public void testSampledOutEventsAreNotDispatched() throws Exception {
+        final AtomicInteger dispatched = new AtomicInteger();
+        CollectTransport countingTransport = new CollectTransport() {
+            @Override
+            public void send(String endpoint, byte[] payload, int timeout, ResponseHandler handler) throws IOException {
+                dispatched.incrementAndGet();
+                handler.onResponse(200, Collections.<String, List<String>>emptyMap());
+            }
+        };
+
+        final AtomicInteger failed = new AtomicInteger();
+        DispatchCallback callBack = new DispatchCallback() {
+            @Override
+            public void dispatchComplete(boolean success, Map<String, Object> info, String error) {
+                if (!success) {
+                    failed.incrementAndGet();
+                }
+            }
+        };
+
+        Tealium tealium = new Tealium.Builder("tealiummobile", "demo")
+                .setPersistentData(TestUtils.dummyPersistentUdo())
+                .setCollectDispatcher(new CollectDispatcher(CollectDispatcher.DEFAULT_URL,
+                        TestLibraryContext.newInstance(), 1000, countingTransport))
+                .setSamplingRate(EventType.VIEW, 0)
+                .setRateLimit(EventType.INTERACTION, 0.001, 1)
+                .setLogLevel(LogLevel.NONE)
+                .setJmxEnabled(false)
+                .build();
+
+        tealium.track(EventType.VIEW, "view", (Udo) null, callBack);
+        tealium.track(EventType.INTERACTION, "click", (Udo) null, callBack);
+        tealium.track(EventType.INTERACTION, "click", (Udo) null, callBack);
+        tealium.track(EventType.CONVERSION, "purchase", (Udo) null, callBack);
+
+        assertEquals(2, dispatched.get());
+        assertEquals(2, failed.get());
+        MetricsSnapshot metrics = tealium.getMetrics();
+        assertEquals(4, metrics.getEventsTracked());
+        assertEquals(1, metrics.getEventsNotSampled());
+        assertEquals(1, metrics.getEventsRateLimited());
+    }
+
+    @Test
+    public void testDiscardedEventsGoThroughCallbackExecutorAndBatcher() throws Exception {
+        CollectTransport transport = new CollectTransport() {
+            @Override
+            public void send(String endpoint, byte[] payload, int timeout, ResponseHandler handler) throws IOException {
+                handler.onResponse(200, Collections.<String, List<String>>emptyMap());
+            }
+        };
+        CollectDispatcher collect = new CollectDispatcher(CollectDispatcher.DEFAULT_URL,
+                TestLibraryContext.newInstance(), 1000, transport);
+        ExecutorService callbacks = Executors.newSingleThreadExecutor(
+                new DispatchExecutors.DaemonThreadFactory("test-callbacks"));
+        collect.setCallbackExecutor(callbacks);
+        final AtomicInteger batchFailed = new AtomicInteger();
+        collect.setCallbackBatcher(new CallbackBatcher(new Tealium.BatchDispatchCallback() {
+            @Override
+            public void batchComplete(int succeeded, int failed, List<String> errors) {
+                batchFailed.addAndGet(failed);
+            }
+        }, 1, 1000, new Logger(LogLevel.NONE)));
+
+        Tealium tealium = new Tealium.Builder("tealiummobile", "demo")
+                .setPersistentData(TestUtils.dummyPersistentUdo())
+                .setCollectDispatcher(collect)
+                .setSamplingRate(EventType.VIEW, 0)
+                .setLogLevel(LogLevel.NONE)
+                .setJmxEnabled(false)
+                .build();
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final Thread[] callbackThread = new Thread[1];
+        tealium.track(EventType.VIEW, "home", (Udo) null, new DispatchCallback() {
+            @Override
+            public void dispatchComplete(boolean success, Map<String, Object> info, String error) {
+                callbackThread[0] = Thread.currentThread();
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), callbackThread[0]);
+        assertEquals(1, batchFailed.get());
+        callbacks.shutdown();
+    }
+
+    @Test
+    public void testRepeatedEventsAreSuppressed() throws Exception {
+        final AtomicInteger dispatched = new AtomicInteger();
+        CollectTransport countingTransport = new CollectTransport() {
+            @Override
+            public void send(String endpoint, byte[] payload, int timeout, ResponseHandler handler) throws IOException {
+                dispatched.incrementAndGet();
+                handler.onResponse(200, Collections.<String, List<String>>emptyMap());
+            }
+        };
+
+        Tealium tealium = new Tealium.Builder("tealiummobile", "demo")
+                .setPersistentData(TestUtils.dummyPersistentUdo())
+                .setCollectDispatcher(new CollectDispatcher(CollectDispatcher.DEFAULT_URL,
+                        TestLibraryContext.newInstance(), 1000, countingTransport))
+                .setDeduplication(60000, 1000, 0.001, "order_id")
+                .setLogLevel(LogLevel.NONE)
+                .setJmxEnabled(false)
+                .build();
+
+        Udo order = new Udo();
+        order.put("order_id", "1234");
+        Udo otherOrder = new Udo();
+        otherOrder.put("order_id", "5678");
+
+        tealium.track(EventType.CONVERSION, "purchase", order, null);
+        tealium.track(EventType.CONVERSION, "purchase", order, null);
+        tealium.track(EventType.CONVERSION, "purchase", otherOrder, null);
+
+        assertEquals(2, dispatched.get());
+        MetricsSnapshot metrics = tealium.getMetrics();
+        assertEquals(1, metrics.getDuplicateHits());
+        assertEquals(2, metrics.getDuplicateMisses());
+    }
+
+    @Test
+    public void testRetryOfFailedEventIsSent() throws Exception {
+        final AtomicInteger dispatched = new AtomicInteger();
+        CollectTransport failingOnceTransport = new CollectTransport() {
+            @Override
+            public void send(String endpoint, byte[] payload, int timeout, ResponseHandler handler) throws IOException {
+                int status = dispatched.incrementAndGet() == 1 ? 400 : 200;
+                handler.onResponse(status, Collections.<String, List<String>>emptyMap());
+            }
+        };
+
+        Tealium tealium = new Tealium.Builder("tealiummobile", "demo")
+                .setPersistentData(TestUtils.dummyPersistentUdo())
+                .setCollectDispatcher(new CollectDispatcher(CollectDispatcher.DEFAULT_URL,
+                        TestLibraryContext.newInstance(), 1000, failingOnceTransport))
+                .setDeduplication(60000, 1000, 0.001, "order_id", "items")
+                .setLogLevel(LogLevel.NONE)
+                .setJmxEnabled(false)
+                .build();
+
+        Udo order = new Udo();
+        order.put("order_id", "1234");
+        order.put("items", Arrays.asList("sku-1", null));
+        final List<Boolean> results = new ArrayList<Boolean>();
+        DispatchCallback callBack = new DispatchCallback() {
+            @Override
+            public void dispatchComplete(boolean success, Map<String, Object> info, String error) {
+                results.add(success);
+            }
+        };
+
+        tealium.track(EventType.CONVERSION, "purchase", order, callBack);
+        tealium.track(EventType.CONVERSION, "purchase", order, callBack);
+        tealium.track(EventType.CONVERSION, "purchase", order, callBack);
+
+        // the failed send isn't remembered, so its retry goes out and only a repeat after that is suppressed
+        assertEquals(Arrays.asList(false, true, false), results);
+        assertEquals(2, dispatched.get());
+        assertEquals(1, tealium.getMetrics().getDuplicateHits());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConversionEventsCannotBeSampled() throws Exception {
+        new Tealium.Builder("tealiummobile", "demo").setSamplingRate(EventType.CONVERSION, 0.5);
+    }
+
     // =========================================================================
     // HELPERS
     // =========================================================================
@@ -110,4 +430,26 @@ public class TealiumTests {
         return true;
     }
 
+
+    @Test
+    public void testJmxIsOptIn() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName names = new ObjectName("com.tealium:type=Tealium,account=\"jmxtest\",*");
+
+        Tealium tealium = new Tealium.Builder("jmxtest", "demo")
+                .setPersistentData(TestUtils.dummyPersistentUdo())
+                .setLogLevel(LogLevel.NONE)
+                .build();
+        assertTrue(server.queryNames(names, null).isEmpty());
+        tealium.close();
+
+        tealium = new Tealium.Builder("jmxtest", "demo")
+                .setPersistentData(TestUtils.dummyPersistentUdo())
+                .setLogLevel(LogLevel.NONE)
+                .setJmxEnabled(true)
+                .build();
+        assertEquals(1, server.queryNames(names, null).size());
+        tealium.close();
+        assertTrue(server.queryNames(names, null).isEmpty());
+    }
 }
@@ -0,0 +1,117 @@
+package com.tealium;
+
+import com.tealium.Tealium.DispatchCallback;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test logic related to HttpClientTransport, run against the multi-release jar
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public class HttpClientTransportTests {
+
+    private static CollectTransport newTransport(Logger logger) {
+        CollectTransport transport = CollectTransports.create(TransportType.HTTP_CLIENT, 3000, logger);
+        assertEquals("HttpClientTransport", transport.getClass().getSimpleName());
+        return transport;
+    }
+
+    @Test
+    public void testDispatchToStub() throws Exception {
+        CollectStubServer stub = new CollectStubServer();
+        try {
+            LibraryContext context = TestLibraryContext.newInstance();
+            CollectDispatcher collect = new CollectDispatcher(stub.getEndpoint(), context, 3000,
+                    newTransport(context.getLogger()));
+
+            final CountDownLatch done = new CountDownLatch(1);
+            final AtomicBoolean success = new AtomicBoolean();
+            Udo data = new Udo();
+            data.put("tealium_account", "tealiummobile");
+            collect.dispatch(data, new DispatchCallback() {
+                @Override
+                public void dispatchComplete(boolean succeeded, Map<String, Object> info, String error) {
+                    success.set(succeeded);
+                    done.countDown();
+                }
+            });
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertTrue(success.get());
+            assertEquals(1, stub.getRequests());
+            assertEquals(data.toJson().length(), stub.getBytesReceived());
+        } finally {
+            stub.close();
+        }
+    }
+
+    @Test
+    public void testConnectionFailure() throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<FailedConnectionException> failure = new AtomicReference<FailedConnectionException>();
+        // nothing listens on port 1, so connections to it are refused
+        newTransport(new Logger(LogLevel.NONE)).send("http://127.0.0.1:1/event", new byte[0], 3000,
+                new CollectTransport.ResponseHandler() {
+                    @Override
+                    public void onResponse(int responseCode, Map<String, List<String>> headers) {
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onFailure(FailedConnectionException e) {
+                        failure.set(e);
+                        done.countDown();
+                    }
+                });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertNotNull(failure.get());
+    }
+
+    @Test
+    public void testHandlerExceptionIsLogged() throws Exception {
+        final CountDownLatch logged = new CountDownLatch(1);
+        final AtomicReference<Throwable> thrown = new AtomicReference<Throwable>();
+        Logger logger = new Logger(LogLevel.ERRORS, new LogHandler() {
+            @Override
+            public void publish(LogLevel level, String message, Throwable t) {
+                thrown.set(t);
+                logged.countDown();
+            }
+        }, false);
+
+        CollectStubServer stub = new CollectStubServer();
+        try {
+            final AtomicInteger responses = new AtomicInteger();
+            newTransport(logger).send(stub.getEndpoint(), "{}".getBytes(StandardCharsets.UTF_8), 3000,
+                    new CollectTransport.ResponseHandler() {
+                        @Override
+                        public void onResponse(int responseCode, Map<String, List<String>> headers) {
+                            responses.incrementAndGet();
+                            throw new IllegalStateException("handler failed");
+                        }
+
+                        @Override
+                        public void onFailure(FailedConnectionException e) {
+                        }
+                    });
+
+            assertTrue(logged.await(10, TimeUnit.SECONDS));
+            assertEquals(1, responses.get());
+            assertEquals("handler failed", thrown.get().getMessage());
+        } finally {
+            stub.close();
+        }
+    }
+}
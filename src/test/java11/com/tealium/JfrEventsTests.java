@@ -0,0 +1,107 @@
+package com.tealium;
+
+import com.tealium.Tealium.DispatchCallback;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test logic related to the JFR events, run against the multi-release jar
+ *
+ * Jason Koo, Chad Hartman, Karen Tamayo, Merritt Tidwell, Chris Anderberg
+ */
+public class JfrEventsTests {
+    private static final String TRACK = "com.tealium.Track";
+    private static final String DISPATCH_PHASE = "com.tealium.DispatchPhase";
+    private static final String PERSISTENT_WRITE = "com.tealium.PersistentWrite";
+
+    private static List<RecordedEvent> events(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> named = new ArrayList<RecordedEvent>();
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                named.add(event);
+            }
+        }
+        return named;
+    }
+
+    @Test
+    public void testTrackIsRecorded() throws Exception {
+        Path data = Files.createTempFile("tealium", ".data");
+        Path dump = Files.createTempFile("tealium", ".jfr");
+        CollectStubServer stub = new CollectStubServer();
+        Recording recording = new Recording();
+        try {
+            recording.enable(TRACK).withThreshold(Duration.ZERO);
+            recording.enable(DISPATCH_PHASE).withThreshold(Duration.ZERO);
+            recording.enable(PERSISTENT_WRITE).withThreshold(Duration.ZERO);
+            recording.start();
+
+            Tealium tealium = new Tealium.Builder("tealiummobile", "demo")
+                    .setPersistentData(new PersistentUdo(new TextStorage(data)))
+                    .setCollectEndpoints(stub.getEndpoint())
+                    .setTransport(TransportType.HTTP_CLIENT)
+                    .setLogLevel(LogLevel.NONE)
+                    .build();
+            try {
+                final CountDownLatch done = new CountDownLatch(1);
+                final boolean[] success = new boolean[1];
+                tealium.track("test", null, new DispatchCallback() {
+                    @Override
+                    public void dispatchComplete(boolean succeeded, Map<String, Object> info, String error) {
+                        success[0] = succeeded;
+                        done.countDown();
+                    }
+                });
+                assertTrue(done.await(10, TimeUnit.SECONDS));
+                assertTrue(success[0]);
+
+                Udo added = new Udo();
+                // two bytes in UTF-8, one char
+                added.put("a", "\u00e9");
+                tealium.getDataManager().addPersistentData(added);
+            } finally {
+                tealium.close();
+            }
+
+            recording.stop();
+            recording.dump(dump);
+            List<RecordedEvent> recorded = RecordingFile.readAllEvents(dump);
+
+            List<RecordedEvent> tracks = events(recorded, TRACK);
+            assertEquals(1, tracks.size());
+            assertEquals(DispatchPhase.OUTCOME_SUCCESS, tracks.get(0).getString("outcome"));
+
+            Set<String> phases = new HashSet<String>();
+            for (RecordedEvent event : events(recorded, DISPATCH_PHASE)) {
+                phases.add(event.getString("phase"));
+            }
+            assertTrue(phases.toString(), phases.contains(DispatchPhase.ASSEMBLE));
+            assertTrue(phases.toString(), phases.contains(DispatchPhase.SERIALIZE));
+            assertTrue(phases.toString(), phases.contains(DispatchPhase.SEND));
+
+            List<RecordedEvent> writes = events(recorded, PERSISTENT_WRITE);
+            assertFalse(writes.isEmpty());
+            assertEquals(Files.size(data), writes.get(writes.size() - 1).getLong("payloadBytes"));
+        } finally {
+            recording.close();
+            stub.close();
+            Files.deleteIfExists(data);
+            Files.deleteIfExists(dump);
+        }
+    }
+}